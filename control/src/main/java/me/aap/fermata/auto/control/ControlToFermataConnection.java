@@ -13,6 +13,7 @@ import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Parcelable;
+import android.os.RemoteException;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
@@ -72,7 +73,12 @@ class ControlToFermataConnection extends ControlServiceConnection implements Sha
 		}
 	}
 
-	void loadChildren(String parentId, MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result) {
+	/**
+	 * Load the children in the range [offset, offset + limit), or all the children, if the limit
+	 * is negative. The children are requested in pages of CHILDREN_PAGE_SIZE items.
+	 */
+	void loadChildren(String parentId, int offset, int limit,
+										MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result) {
 		if (pendingReq != null) {
 			pendingReq.accept(null); // Cancel
 			pendingReq = null;
@@ -87,29 +93,7 @@ class ControlToFermataConnection extends ControlServiceConnection implements Sha
 
 		if (remoteMessenger != null) {
 			try {
-				Message msg = Message.obtain(this, MSG_GET_CHILDREN, stamp, 0);
-				Bundle b = new Bundle();
-				b.putString(KEY, parentId);
-				msg.setData(b);
-				pendingResp = m -> {
-					if (sent[0]) return;
-					sent[0] = true;
-
-					if ((m == null) || (m.arg1 != stamp)) {
-						result.sendResult(Collections.emptyList());
-					} else {
-						Bundle d = m.getData();
-						d.setClassLoader(MediaBrowserCompat.MediaItem.class.getClassLoader());
-						Parcelable[] a = requireNonNull(d.getParcelableArray(KEY));
-						ArrayList<MediaBrowserCompat.MediaItem> items = new ArrayList<>(a.length);
-						for (Parcelable p : a) {
-							items.add((MediaBrowserCompat.MediaItem) p);
-						}
-						result.sendResult(items);
-					}
-				};
-
-				remoteMessenger.send(msg);
+				requestChildren(parentId, offset, limit, stamp, sent, new ArrayList<>(), result);
 				return;
 			} catch (Exception ex) {
 				Log.e(getClass().getName(), "Failed to send MSG_GET_CHILDREN", ex);
@@ -124,13 +108,61 @@ class ControlToFermataConnection extends ControlServiceConnection implements Sha
 				sent[0] = true;
 				result.sendResult(Collections.emptyList());
 			} else {
-				c.loadChildren(parentId, result);
+				c.loadChildren(parentId, offset, limit, result);
 			}
 		};
 
 		reconnect();
 	}
 
+	private void requestChildren(String parentId, int offset, int limit, int stamp, boolean[] sent,
+															 ArrayList<MediaBrowserCompat.MediaItem> items,
+															 MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result)
+			throws RemoteException {
+		int n = ((limit < 0) || (limit > CHILDREN_PAGE_SIZE)) ? CHILDREN_PAGE_SIZE : limit;
+		Message msg = Message.obtain(this, MSG_GET_CHILDREN, stamp, 0);
+		Bundle b = new Bundle();
+		b.putString(KEY, parentId);
+		b.putInt(KEY_OFFSET, offset);
+		b.putInt(KEY_LIMIT, n);
+		msg.setData(b);
+		pendingResp = m -> {
+			if (sent[0]) return;
+
+			if ((m == null) || (m.arg1 != stamp)) {
+				sent[0] = true;
+				result.sendResult(Collections.emptyList());
+				return;
+			}
+
+			Bundle d = m.getData();
+			d.setClassLoader(MediaBrowserCompat.MediaItem.class.getClassLoader());
+			Parcelable[] a = requireNonNull(d.getParcelableArray(KEY));
+			items.ensureCapacity(items.size() + a.length);
+			for (Parcelable p : a) {
+				items.add((MediaBrowserCompat.MediaItem) p);
+			}
+
+			// arg2 == 1 - more pages available
+			int remaining = (limit < 0) ? -1 : limit - a.length;
+
+			if ((m.arg2 == 1) && (remaining != 0) && (remoteMessenger != null)) {
+				try {
+					requestChildren(parentId, offset + a.length, remaining, stamp, sent, items, result);
+					return;
+				} catch (Exception ex) {
+					Log.e(getClass().getName(), "Failed to send MSG_GET_CHILDREN", ex);
+					pendingResp = null;
+				}
+			}
+
+			sent[0] = true;
+			result.sendResult(items);
+		};
+
+		remoteMessenger.send(msg);
+	}
+
 	void send(int msg) {
 		send(Message.obtain(this, msg));
 	}
@@ -63,7 +63,24 @@ public class FermataMediaServiceControl extends MediaBrowserServiceCompat implem
 			result.sendResult(Collections.emptyList());
 		} else {
 			result.detach();
-			connection.loadChildren(parentId, result);
+			connection.loadChildren(parentId, 0, -1, result);
+		}
+	}
+
+	@Override
+	public void onLoadChildren(@NonNull String parentId,
+														 @NonNull Result<List<MediaBrowserCompat.MediaItem>> result,
+														 @NonNull Bundle options) {
+		int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+		int size = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+
+		if ((page < 0) || (size < 1)) {
+			onLoadChildren(parentId, result);
+		} else if (connection == null) {
+			result.sendResult(Collections.emptyList());
+		} else {
+			result.detach();
+			connection.loadChildren(parentId, page * size, size, result);
 		}
 	}
 }
@@ -8,6 +8,7 @@ import java.io.File;
 
 import me.aap.fermata.addon.AddonManager;
 import me.aap.fermata.media.engine.BitmapCache;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.fermata.vfs.FermataVfsManager;
 import me.aap.utils.app.App;
 import me.aap.utils.app.NetSplitCompatApp;
@@ -29,9 +30,17 @@ public class FermataApplication extends NetSplitCompatApp {
 
 	@Override
 	public void onCreate() {
+		StartupTracer.Span span = StartupTracer.begin("FermataApplication.onCreate");
 		super.onCreate();
-		vfsManager = new FermataVfsManager();
-		bitmapCache = new BitmapCache();
+
+		try (StartupTracer.Span ignored = StartupTracer.begin("FermataVfsManager")) {
+			vfsManager = new FermataVfsManager();
+		}
+		try (StartupTracer.Span ignored = StartupTracer.begin("BitmapCache")) {
+			bitmapCache = new BitmapCache();
+		}
+
+		span.end();
 	}
 
 	public FermataVfsManager getVfsManager() {
@@ -18,6 +18,7 @@ import me.aap.fermata.R;
 import me.aap.fermata.media.lib.DefaultMediaLib;
 import me.aap.fermata.media.lib.MediaLib.Item;
 import me.aap.fermata.ui.activity.MainActivity;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.event.BasicEventBroadcaster;
@@ -39,7 +40,7 @@ public class AddonManager extends BasicEventBroadcaster<AddonManager.Listener>
 		for (AddonInfo i : BuildConfig.ADDONS) {
 			if (!store.getBooleanPref(i.enabledPref)) continue;
 
-			try {
+			try (StartupTracer.Span ignored = StartupTracer.begin(i.className)) {
 				FermataAddon a = (FermataAddon) Class.forName(i.className).newInstance();
 				addons.put(i.className, a);
 			} catch (Exception ignore) {
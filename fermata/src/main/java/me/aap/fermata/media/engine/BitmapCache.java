@@ -4,7 +4,7 @@ import static android.content.Context.MODE_PRIVATE;
 import static java.util.Collections.emptyList;
 import static me.aap.utils.async.Completed.completed;
 import static me.aap.utils.async.Completed.completedNull;
-import static me.aap.utils.async.Completed.failed;
+import static me.aap.utils.function.ResultConsumer.Cancel.isCancellation;
 import static me.aap.utils.io.FileUtils.getFileExtension;
 import static me.aap.utils.net.http.HttpFileDownloader.MAX_AGE;
 import static me.aap.utils.security.SecurityUtils.SHA1_DIGEST_LEN;
@@ -34,18 +34,17 @@ import androidx.annotation.Nullable;
 import androidx.core.content.res.ResourcesCompat;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -53,13 +52,13 @@ import me.aap.fermata.FermataApplication;
 import me.aap.fermata.vfs.FermataVfsManager;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
-import me.aap.utils.async.PromiseQueue;
-import me.aap.utils.collection.CollectionUtils;
 import me.aap.utils.function.IntSupplier;
 import me.aap.utils.io.MemOutputStream;
 import me.aap.utils.log.Log;
 import me.aap.utils.net.http.HttpFileDownloader;
 import me.aap.utils.net.http.HttpFileDownloader.Status;
+import me.aap.utils.pref.PreferenceStore;
+import me.aap.utils.pref.PreferenceStore.Pref;
 import me.aap.utils.pref.SharedPreferenceStore;
 import me.aap.utils.resource.Rid;
 import me.aap.utils.text.SharedTextBuilder;
@@ -69,16 +68,27 @@ import me.aap.utils.ui.UiUtils;
 /**
  * @author Andrey Pavlenko
  */
-public class BitmapCache {
+public class BitmapCache implements PreferenceStore.Listener {
+	public static final Pref<IntSupplier> IMAGE_CACHE_SIZE = Pref.i("IMAGE_CACHE_SIZE", 200);
+	public static final Pref<IntSupplier> IMAGE_QUALITY = Pref.i("IMAGE_QUALITY", 80);
+	// The icons and the images are scaled to one of the fixed sizes
+	private static final int[] SIZE_TIERS = {128, 256, 512, 1024};
+	private static final int MAX_IMAGE_SIZE = SIZE_TIERS[SIZE_TIERS.length - 1];
 	private final File iconsCache;
 	private final File imageCache;
 	private final String iconsCacheUri;
 	private final String imageCacheUri;
 	private final SharedPreferences prefs;
-	private final Map<String, Ref> cache = new HashMap<>();
-	private final ReferenceQueue<Bitmap> refQueue = new ReferenceQueue<>();
-	private final PromiseQueue queue = new PromiseQueue(App.get().getExecutor());
+	private final BitmapLru iconMemCache;
+	private final BitmapLru imageMemCache;
+	private final BitmapPool pool;
+	private final DiskCache disk;
+	private final ImageEncoder encoder;
+	private final DecodeQueue queue = new DecodeQueue(App.get().getExecutor(),
+			Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
 	private final Map<String, String> invalidBitmapUris = new ConcurrentHashMap<>();
+	// Striped by the file path - the images are encoded in parallel, unless the files are the same
+	private final Object[] writeLocks = new Object[16];
 
 	public BitmapCache() {
 		File cache = App.get().getExternalCacheDir();
@@ -88,6 +98,63 @@ public class BitmapCache {
 		iconsCacheUri = Uri.fromFile(iconsCache).toString() + '/';
 		imageCacheUri = Uri.fromFile(imageCache).toString() + '/';
 		prefs = getContext().getSharedPreferences("image-cache", MODE_PRIVATE);
+		for (int i = 0; i < writeLocks.length; i++) writeLocks[i] = new Object();
+		long max = Runtime.getRuntime().maxMemory();
+		iconMemCache = new BitmapLru(max / 12);
+		imageMemCache = new BitmapLru(max / 16);
+		pool = new BitmapPool(max / 32);
+		PreferenceStore ps = getContext().getPreferenceStore();
+		// The evicted images, referenced by the metadata hashes, are extracted again on demand
+		disk = new DiskCache(cache.getAbsoluteFile(), toBytes(ps.getIntPref(IMAGE_CACHE_SIZE)),
+				iconsCache, imageCache);
+		encoder = ImageEncoder.webp(toQuality(ps.getIntPref(IMAGE_QUALITY)));
+		ps.addBroadcastListener(this);
+	}
+
+	@Override
+	public void onPreferenceChanged(PreferenceStore store, List<Pref<?>> prefs) {
+		if (prefs.contains(IMAGE_CACHE_SIZE)) {
+			disk.setMaxSize(toBytes(store.getIntPref(IMAGE_CACHE_SIZE)));
+		}
+		if (prefs.contains(IMAGE_QUALITY)) {
+			encoder.setQuality(toQuality(store.getIntPref(IMAGE_QUALITY)));
+		}
+	}
+
+	public long getDiskCacheSize() {
+		return disk.getSize();
+	}
+
+	public long getEncodedImageCount() {
+		return encoder.getCount();
+	}
+
+	public long getDuplicateImageCount() {
+		return encoder.getDuplicateCount();
+	}
+
+	public long getEncodingTimeMillis() {
+		return encoder.getTimeMillis();
+	}
+
+	public long getEncodingBytesSaved() {
+		return encoder.getBytesSaved();
+	}
+
+	public long getMemoryCacheHitCount() {
+		return iconMemCache.getHitCount() + imageMemCache.getHitCount();
+	}
+
+	public long getMemoryCacheMissCount() {
+		return iconMemCache.getMissCount() + imageMemCache.getMissCount();
+	}
+
+	public long getMemoryCacheEvictionCount() {
+		return iconMemCache.getEvictionCount() + imageMemCache.getEvictionCount();
+	}
+
+	public long getMemoryCacheSize() {
+		return iconMemCache.getSize() + imageMemCache.getSize();
 	}
 
 	public boolean isResourceImageAvailable(Uri uri) {
@@ -105,6 +172,7 @@ public class BitmapCache {
 		File iconFile = new File(iconsCache, iconUri.substring(iconsCacheUri.length()));
 
 		if (iconFile.isFile()) {
+			disk.touch(iconFile);
 			return ctx.getContentResolver().openFileDescriptor(Uri.parse(iconUri), "r");
 		} else {
 			return openResource(ctx, uri, 0).getParcelFileDescriptor();
@@ -113,6 +181,15 @@ public class BitmapCache {
 
 	@NonNull
 	public FutureSupplier<Bitmap> getBitmap(Context ctx, String uri, boolean cache, boolean resize) {
+		return getBitmap(ctx, uri, cache, resize, false);
+	}
+
+	/**
+	 * @param priority load before the non-priority requests, e.g. for the currently visible views.
+	 */
+	@NonNull
+	public FutureSupplier<Bitmap> getBitmap(Context ctx, String uri, boolean cache, boolean resize,
+																					boolean priority) {
 		int size;
 		String iconUri;
 		Bitmap bm;
@@ -130,26 +207,28 @@ public class BitmapCache {
 		if (bm != null) return completed(bm);
 
 		if (uri.startsWith("http://") || uri.startsWith("https://")) {
-			return loadHttpBitmap(uri, iconUri, size);
+			return loadHttpBitmap(uri, iconUri, size, priority);
 		}
 
-		return queue.enqueue(() -> loadBitmap(ctx, uri, iconUri, cache, size));
+		String key = (iconUri != null) ? iconUri : uri;
+		return queue.enqueue(key, priority, () -> loadBitmap(ctx, uri, iconUri, cache, size));
 	}
 
+	/**
+	 * Returns the bitmap from the memory cache or null, the bitmap is never loaded.
+	 */
 	@Nullable
-	private Bitmap getCachedBitmap(String uri) {
-		synchronized (cache) {
-			clearRefs();
-			Ref r = cache.get(uri);
+	public Bitmap getCachedBitmap(Context ctx, String uri, boolean resize) {
+		return getCachedBitmap(resize ? toIconUri(uri, getIconSize(ctx)) : uri);
+	}
 
-			if (r != null) {
-				Bitmap bm = r.get();
-				if (bm != null) return bm;
-				else cache.remove(uri);
-			}
+	@Nullable
+	private Bitmap getCachedBitmap(String uri) {
+		return getMemCache(uri).get(uri);
+	}
 
-			return null;
-		}
+	private BitmapLru getMemCache(String uri) {
+		return uri.startsWith(iconsCacheUri) ? iconMemCache : imageMemCache;
 	}
 
 	private Bitmap loadBitmap(Context ctx, String uri, String iconUri, boolean cache, int size) {
@@ -160,7 +239,10 @@ public class BitmapCache {
 			if (bm != null) return bm;
 			File iconFile = new File(iconsCache, iconUri.substring(iconsCacheUri.length()));
 			if (iconFile.isFile()) bm = loadBitmap(ctx, iconUri, cache ? uri : null, 0);
-			if (bm != null) return bm;
+			if (bm != null) {
+				disk.touch(iconFile);
+				return bm;
+			}
 			bm = loadBitmap(ctx, uri, cache ? iconUri : null, size);
 			if (cache && (bm != null)) saveIcon(bm, iconFile);
 		} else {
@@ -182,7 +264,7 @@ public class BitmapCache {
 			switch (scheme) {
 				case "file":
 					try (ParcelFileDescriptor fd = ctx.getContentResolver().openFileDescriptor(u, "r")) {
-						if (fd != null) bm = BitmapFactory.decodeFileDescriptor(fd.getFileDescriptor());
+						if (fd != null) bm = decodeFileDescriptor(fd.getFileDescriptor(), size);
 					}
 					break;
 				case ContentResolver.SCHEME_ANDROID_RESOURCE:
@@ -199,11 +281,11 @@ public class BitmapCache {
 				default:
 					FermataVfsManager vfs = getVfsManager();
 					if (vfs.isSupportedScheme(scheme))
-						bm = loadUriBitmap(vfs.getHttpRid(Rid.create(u)).toString());
+						bm = loadUriBitmap(vfs.getHttpRid(Rid.create(u)).toString(), size);
 			}
 
 			if (bm == null) return null;
-			if (size != 0) bm = resizedBitmap(bm, size);
+			if (size != 0) bm = resize(bm, size);
 			return (cacheUri != null) ? cacheBitmap(cacheUri, bm) : bm;
 		} catch (Exception ex) {
 			Log.d(ex, "Failed to load bitmap: ", uri);
@@ -211,24 +293,33 @@ public class BitmapCache {
 		}
 	}
 
-	private FutureSupplier<Bitmap> loadHttpBitmap(String uri, String cacheUri, int size) {
+	private FutureSupplier<Bitmap> loadHttpBitmap(String uri, String cacheUri, int size,
+																								boolean priority) {
 		return downloadImage(uri).then(s -> {
 			if (s == null) return completedNull();
-			try (InputStream is = s.getFileStream(true)) {
-				Bitmap bm = BitmapFactory.decodeStream(is);
+			String key = (cacheUri != null) ? cacheUri : uri;
+			return queue.enqueue(key, priority, () -> {
+				Bitmap bm = (cacheUri == null) ? null : getCachedBitmap(cacheUri);
+				if (bm != null) return bm;
+				File f = getImageFile(uri);
 
-				if (bm == null) {
-					invalidBitmapUris.put(uri, uri);
-					return failed(new IOException("Failed to decode image"));
+				if (f.isFile()) {
+					try (FileInputStream in = new FileInputStream(f)) {
+						bm = decodeFileDescriptor(in.getFD(), size);
+					}
 				} else {
-					if (size != 0) bm = resizedBitmap(bm, size);
-					if (cacheUri != null) bm = cacheBitmap(cacheUri, bm);
-					return completed(bm);
+					try (InputStream is = s.getFileStream(true)) {
+						bm = decodeStream(is, size);
+					}
 				}
-			} catch (Exception ex) {
-				invalidBitmapUris.put(uri, uri);
-				return failed(ex);
-			}
+
+				if (bm == null) throw new IOException("Failed to decode image");
+
+				if (size != 0) bm = resize(bm, size);
+				return (cacheUri != null) ? cacheBitmap(cacheUri, bm) : bm;
+			}).onFailure(ex -> {
+				if (!isCancellation(ex)) invalidBitmapUris.put(uri, uri);
+			});
 		});
 	}
 
@@ -238,24 +329,35 @@ public class BitmapCache {
 			return completedNull();
 		}
 
-		String path;
+		String path = getImagePath(uri);
+		File dst = new File(imageCache, path);
+		long modified = dst.lastModified();
+		ImagePrefs ip = new ImagePrefs(prefs, path);
+		HttpFileDownloader d = new HttpFileDownloader();
+		d.setReturnExistingOnFail(true);
+		return d.download(uri, dst, ip).onSuccess(s -> {
+			if (s == null) return;
+			File f = s.getLocalFile();
+			if (f.lastModified() != modified) disk.added(f);
+			else disk.touch(f);
+		}).onFailure(ex -> {
+			Log.d(ex, "Failed to download image: ", uri);
+			invalidBitmapUris.put(uri, uri);
+		});
+	}
 
+	private static String getImagePath(String uri) {
 		try (SharedTextBuilder b = SharedTextBuilder.get()) {
 			b.append("/X/");
 			appendHexString(b, sha1(uri));
 			b.setCharAt(1, b.charAt(3));
 			b.append('.').append(getFileExtension(uri, "img"));
-			path = b.toString();
+			return b.toString();
 		}
+	}
 
-		File dst = new File(imageCache, path);
-		ImagePrefs ip = new ImagePrefs(prefs, path);
-		HttpFileDownloader d = new HttpFileDownloader();
-		d.setReturnExistingOnFail(true);
-		return d.download(uri, dst, ip).onFailure(ex -> {
-			Log.d(ex, "Failed to download image: ", uri);
-			invalidBitmapUris.put(uri, uri);
-		});
+	private File getImageFile(String uri) {
+		return new File(imageCache, getImagePath(uri));
 	}
 
 	private Bitmap loadContentBitmap(Context ctx, Uri u, int size) throws IOException {
@@ -265,7 +367,7 @@ public class BitmapCache {
 			return cr.loadThumbnail(u, new Size(size, size), null);
 		} else {
 			try (AssetFileDescriptor afd = openResource(ctx, u, size)) {
-				return (afd == null) ? null : BitmapFactory.decodeFileDescriptor(afd.getFileDescriptor());
+				return (afd == null) ? null : decodeFileDescriptor(afd.getFileDescriptor(), size);
 			}
 		}
 	}
@@ -279,30 +381,104 @@ public class BitmapCache {
 		return cr.openTypedAssetFileDescriptor(u, "image/*", opts, null);
 	}
 
-	private Bitmap loadUriBitmap(String uri) throws IOException {
+	private Bitmap loadUriBitmap(String uri, int size) throws IOException {
 		try (InputStream in = new URL(uri).openStream()) {
-			return BitmapFactory.decodeStream(in);
+			return decodeStream(in, size);
 		}
 	}
 
 	private Bitmap cacheBitmap(String uri, Bitmap bm) {
-		synchronized (cache) {
-			clearRefs();
-			Ref ref = new Ref(uri, bm, refQueue);
-			Ref cachedRef = CollectionUtils.putIfAbsent(cache, uri, ref);
-
-			if (cachedRef != null) {
-				Bitmap cached = cachedRef.get();
-				if (cached != null) return cached;
-				cache.put(uri, ref);
-			}
+		return getMemCache(uri).putIfAbsent(uri, bm);
+	}
+
+	/**
+	 * Two pass decoding - the first pass reads the image bounds, the second one decodes the image,
+	 * subsampled by the largest power of 2, that keeps the size not less than the requested one.
+	 */
+	private Bitmap decodeFileDescriptor(FileDescriptor fd, int size) {
+		BitmapFactory.Options o = new BitmapFactory.Options();
+		o.inJustDecodeBounds = true;
+		BitmapFactory.decodeFileDescriptor(fd, null, o);
+		if (!setDecodeOptions(o, size)) return null;
+
+		try {
+			return BitmapFactory.decodeFileDescriptor(fd, null, o);
+		} catch (IllegalArgumentException ex) {
+			if (o.inBitmap == null) throw ex;
+			o.inBitmap = null;
+			return BitmapFactory.decodeFileDescriptor(fd, null, o);
+		}
+	}
+
+	private Bitmap decodeStream(InputStream in, int size) throws IOException {
+		if (size == 0) return BitmapFactory.decodeStream(in);
 
-			return bm;
+		// Non-seekable stream - read to memory to decode twice
+		MemOutputStream mos = new MemOutputStream(8192);
+		byte[] buf = new byte[8192];
+		for (int i = in.read(buf); i != -1; i = in.read(buf)) {
+			mos.write(buf, 0, i);
 		}
+		return decodeByteArray(mos.trimBuffer(), size);
+	}
+
+	private Bitmap decodeByteArray(byte[] data, int size) {
+		BitmapFactory.Options o = new BitmapFactory.Options();
+		o.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, o);
+		if (!setDecodeOptions(o, size)) return null;
+
+		try {
+			return BitmapFactory.decodeByteArray(data, 0, data.length, o);
+		} catch (IllegalArgumentException ex) {
+			if (o.inBitmap == null) throw ex;
+			o.inBitmap = null;
+			return BitmapFactory.decodeByteArray(data, 0, data.length, o);
+		}
+	}
+
+	private boolean setDecodeOptions(BitmapFactory.Options o, int size) {
+		int w = o.outWidth;
+		int h = o.outHeight;
+		if ((w <= 0) || (h <= 0)) return false;
+
+		if (size != 0) {
+			int sample = 1;
+			while ((w / (sample * 2) >= size) && (h / (sample * 2) >= size)) sample *= 2;
+			o.inSampleSize = sample;
+			w = (w + sample - 1) / sample;
+			h = (h + sample - 1) / sample;
+			// JPEG has no alpha channel, thus the thumbnails could be decoded with 2 bytes per pixel
+			if ("image/jpeg".equals(o.outMimeType)) o.inPreferredConfig = Bitmap.Config.RGB_565;
+		}
+
+		o.inJustDecodeBounds = false;
+		o.inMutable = true;
+		o.inBitmap = pool.get(w, h, o.inPreferredConfig);
+		return true;
+	}
+
+	/**
+	 * The source bitmap is not referenced anywhere else, thus it's returned to the pool
+	 * for reuse by the subsequent decodes. The cached bitmaps are never pooled, because
+	 * they could still be displayed after eviction.
+	 */
+	private Bitmap resize(Bitmap bm, int size) {
+		Bitmap resized = resizedBitmap(bm, size);
+		if (resized != bm) pool.put(bm);
+		return resized;
 	}
 
 	private static int getIconSize(Context ctx) {
-		return 3 * smallIconSize(ctx);
+		return sizeTier(3 * smallIconSize(ctx));
+	}
+
+	// The largest tier, not exceeding the size, e.g. 576 -> 512, to keep the icons compact
+	private static int sizeTier(int size) {
+		for (int i = SIZE_TIERS.length - 1; i > 0; i--) {
+			if (SIZE_TIERS[i] <= size) return SIZE_TIERS[i];
+		}
+		return SIZE_TIERS[0];
 	}
 
 	private static int smallIconSize(Context ctx) {
@@ -322,38 +498,58 @@ public class BitmapCache {
 		}
 	}
 
+	/**
+	 * Uri of an image, saved by the previous versions as JPEG.
+	 */
 	String getImageUri(byte[] hash, TextBuilder tb) {
+		return getImageUri(hash, ".jpg", tb);
+	}
+
+	/**
+	 * Uri of an image, saved by {@link #saveBitmap(Bitmap, TextBuilder)} or
+	 * {@link #saveImage(byte[], TextBuilder)}.
+	 */
+	String getEncodedImageUri(byte[] hash, TextBuilder tb) {
+		return getImageUri(hash, encoder.getExtension(), tb);
+	}
+
+	/**
+	 * Same as {@link #getImageUri(byte[], TextBuilder)} or
+	 * {@link #getEncodedImageUri(byte[], TextBuilder)}, but returns null if the image file has
+	 * been evicted from the disk cache.
+	 */
+	@Nullable
+	String getCachedImageUri(byte[] hash, boolean encoded, TextBuilder tb) {
+		String uri = encoded ? getEncodedImageUri(hash, tb) : getImageUri(hash, tb);
+		File f = new File(imageCache, uri.substring(imageCacheUri.length()));
+		if (!f.isFile()) return null;
+		disk.touch(f);
+		return uri;
+	}
+
+	private String getImageUri(byte[] hash, String ext, TextBuilder tb) {
 		tb.setLength(0);
 		tb.append(imageCacheUri);
 		int len = tb.length();
-		appendHexString(tb.append("X/"), hash, 0, SHA1_DIGEST_LEN).append(".jpg");
+		appendHexString(tb.append("X/"), hash, 0, SHA1_DIGEST_LEN).append(ext);
 		tb.setCharAt(len, tb.charAt(len + 2));
 		return tb.toString().intern();
 	}
 
-	synchronized byte[] saveBitmap(Bitmap bm, TextBuilder tb) {
+	byte[] saveBitmap(Bitmap bm, TextBuilder tb) {
 		if (bm == null) return null;
 
 		try {
-			MemOutputStream mos = new MemOutputStream(bm.getByteCount());
-			if (!bm.compress(Bitmap.CompressFormat.JPEG, 100, mos)) return null;
-
-			byte[] content = mos.trimBuffer();
-			MessageDigest md = MessageDigest.getInstance("sha-1");
-			md.update(content);
-			byte[] digest = md.digest();
-			int pos = tb.length();
-			appendHexString(tb.append("X/"), digest).append(".jpg");
-			tb.setCharAt(pos, tb.charAt(pos + 2));
-			File f = new File(imageCache, tb.substring(pos));
-
-			if (!f.isFile()) {
-				File dir = f.getParentFile();
-				if (dir != null) //noinspection ResultOfMethodCallIgnored
-					dir.mkdirs();
-				try (OutputStream os = new FileOutputStream(f)) {
-					os.write(content);
-				}
+			Bitmap scaled = (Math.max(bm.getWidth(), bm.getHeight()) > MAX_IMAGE_SIZE)
+					? resizedBitmap(bm, MAX_IMAGE_SIZE) : bm;
+			byte[] content = encoder.encode(scaled, 0);
+			if (content == null) return null;
+
+			byte[] digest = digest(content);
+			File f = getImageFile(digest, tb);
+
+			synchronized (writeLock(f)) {
+				if (!f.isFile() && !disk.write(f, out -> out.write(content))) return null;
 			}
 
 			return digest;
@@ -363,18 +559,71 @@ public class BitmapCache {
 		}
 	}
 
-	private synchronized void saveIcon(Bitmap bm, File f) {
-		File p = f.getParentFile();
-		if (p != null) //noinspection ResultOfMethodCallIgnored
-			p.mkdirs();
+	/**
+	 * Save the encoded image, e.g. an embedded picture. The hash is computed from the source
+	 * bytes, thus the image, shared by multiple files, is decoded and encoded only once.
+	 */
+	byte[] saveImage(byte[] data, TextBuilder tb) {
+		try {
+			byte[] digest = digest(data);
+			File f = getImageFile(digest, tb);
+
+			synchronized (writeLock(f)) {
+				if (f.isFile()) {
+					encoder.duplicate(data.length);
+					return digest;
+				}
 
-		try (OutputStream out = new FileOutputStream(f)) {
-			bm.compress(Bitmap.CompressFormat.JPEG, 100, out);
+				Bitmap bm = decodeByteArray(data, MAX_IMAGE_SIZE);
+				if (bm == null) return null;
+				Bitmap scaled = (Math.max(bm.getWidth(), bm.getHeight()) > MAX_IMAGE_SIZE)
+						? resize(bm, MAX_IMAGE_SIZE) : bm;
+				byte[] content = encoder.encode(scaled, data.length);
+				pool.put(scaled);
+				if ((content == null) || !disk.write(f, out -> out.write(content))) return null;
+				return digest;
+			}
 		} catch (Exception ex) {
-			Log.e(ex, "Failed to save icon: ", f);
+			Log.e(ex, "Failed to save image");
+			return null;
 		}
 	}
 
+	private static byte[] digest(byte[] content) throws NoSuchAlgorithmException {
+		MessageDigest md = MessageDigest.getInstance("sha-1");
+		md.update(content);
+		return md.digest();
+	}
+
+	private File getImageFile(byte[] digest, TextBuilder tb) {
+		int pos = tb.length();
+		appendHexString(tb.append("X/"), digest).append(encoder.getExtension());
+		tb.setCharAt(pos, tb.charAt(pos + 2));
+		File f = new File(imageCache, tb.substring(pos));
+		tb.setLength(pos);
+		return f;
+	}
+
+	private void saveIcon(Bitmap bm, File f) {
+		byte[] content = encoder.encode(bm, 0);
+		if (content == null) return;
+		synchronized (writeLock(f)) {
+			disk.write(f, out -> out.write(content));
+		}
+	}
+
+	private Object writeLock(File f) {
+		return writeLocks[(f.getPath().hashCode() & Integer.MAX_VALUE) % writeLocks.length];
+	}
+
+	private static int toQuality(int q) {
+		return Math.max(10, Math.min(100, q));
+	}
+
+	private static long toBytes(int mb) {
+		return Math.max(mb, 10) * 1024L * 1024L;
+	}
+
 	private String toIconUri(String imageUri, int size) {
 		try (SharedTextBuilder tb = SharedTextBuilder.get()) {
 			tb.append(iconsCacheUri).append(size).append("/X/");
@@ -385,7 +634,7 @@ public class BitmapCache {
 			} else if (imageUri.startsWith(iconsCacheUri)) {
 				tb.append(imageUri.substring(iconsCacheUri.length()));
 			} else {
-				appendHexString(tb, sha1(imageUri)).append(".jpg");
+				appendHexString(tb, sha1(imageUri)).append(encoder.getExtension());
 			}
 
 			tb.setCharAt(len - 2, tb.charAt(len));
@@ -393,21 +642,6 @@ public class BitmapCache {
 		}
 	}
 
-	private void clearRefs() {
-		for (Ref r = (Ref) refQueue.poll(); r != null; r = (Ref) refQueue.poll()) {
-			CollectionUtils.remove(cache, r.key, r);
-		}
-	}
-
-	private static final class Ref extends SoftReference<Bitmap> {
-		final Object key;
-
-		public Ref(String key, Bitmap value, ReferenceQueue<Bitmap> q) {
-			super(value, q);
-			this.key = key;
-		}
-	}
-
 	public void cleanUpPrefs() {
 		SharedPreferences.Editor edit = prefs.edit();
 		boolean removed = false;
@@ -0,0 +1,123 @@
+package me.aap.fermata.media.engine;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budgeted LRU cache of bitmaps. The lookups are lock free, the eviction is performed
+ * under lock by the thread, that has exceeded the budget.
+ *
+ * @author Andrey Pavlenko
+ */
+final class BitmapLru {
+	private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final long maxSize;
+
+	BitmapLru(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Nullable
+	Bitmap get(String key) {
+		Entry e = map.get(key);
+
+		if (e == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		e.access = clock.incrementAndGet();
+		hits.incrementAndGet();
+		return e.bitmap;
+	}
+
+	/**
+	 * Returns the already cached bitmap or the specified one, if there is no cached bitmap.
+	 */
+	@NonNull
+	Bitmap putIfAbsent(String key, Bitmap bm) {
+		Entry e = new Entry(bm, clock.incrementAndGet());
+		Entry cached = map.putIfAbsent(key, e);
+
+		if (cached != null) {
+			cached.access = clock.incrementAndGet();
+			return cached.bitmap;
+		}
+
+		if (size.addAndGet(e.size) > maxSize) trim();
+		return bm;
+	}
+
+	long getSize() {
+		return size.get();
+	}
+
+	long getMaxSize() {
+		return maxSize;
+	}
+
+	long getHitCount() {
+		return hits.get();
+	}
+
+	long getMissCount() {
+		return misses.get();
+	}
+
+	long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private synchronized void trim() {
+		if (size.get() <= maxSize) return;
+
+		// Trim to 90% to avoid eviction on each insertion
+		long target = maxSize - maxSize / 10;
+		List<String> keys = new ArrayList<>(map.keySet());
+		List<Entry> entries = new ArrayList<>(keys.size());
+
+		for (String k : keys) {
+			Entry e = map.get(k);
+			if (e == null) continue;
+			e.key = k;
+			e.stamp = e.access;
+			entries.add(e);
+		}
+
+		Collections.sort(entries, (e1, e2) -> Long.compare(e1.stamp, e2.stamp));
+
+		for (Entry e : entries) {
+			if (size.get() <= target) break;
+			if (!map.remove(e.key, e)) continue;
+			size.addAndGet(-e.size);
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static final class Entry {
+		final Bitmap bitmap;
+		final int size;
+		volatile long access;
+		String key;
+		long stamp;
+
+		Entry(Bitmap bitmap, long access) {
+			this.bitmap = bitmap;
+			this.size = bitmap.getAllocationByteCount();
+			this.access = access;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package me.aap.fermata.media.engine;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of mutable bitmaps, that are not referenced anymore and could be reused by the
+ * decoder via {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ *
+ * @author Andrey Pavlenko
+ */
+final class BitmapPool {
+	private final List<Bitmap> pool = new ArrayList<>();
+	private final long maxSize;
+	private long size;
+
+	BitmapPool(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	synchronized void put(Bitmap bm) {
+		if (!bm.isMutable() || bm.isRecycled()) return;
+		int bytes = bm.getAllocationByteCount();
+		if (bytes > maxSize) return;
+
+		pool.add(bm);
+		size += bytes;
+
+		while (size > maxSize) {
+			size -= pool.remove(0).getAllocationByteCount();
+		}
+	}
+
+	/**
+	 * Returns the smallest pooled bitmap, that could be reused for decoding of an image
+	 * of the specified dimensions.
+	 */
+	@Nullable
+	synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		long needed = (long) width * height * bytesPerPixel(config);
+		int idx = -1;
+		int min = Integer.MAX_VALUE;
+
+		for (int i = 0, n = pool.size(); i < n; i++) {
+			int bytes = pool.get(i).getAllocationByteCount();
+
+			if ((bytes >= needed) && (bytes < min)) {
+				min = bytes;
+				idx = i;
+			}
+		}
+
+		if (idx == -1) return null;
+		Bitmap bm = pool.remove(idx);
+		size -= min;
+		return bm;
+	}
+
+	private static int bytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.RGB_565) return 2;
+		if (config == Bitmap.Config.ALPHA_8) return 1;
+		return 4;
+	}
+}
@@ -0,0 +1,104 @@
+package me.aap.fermata.media.engine;
+
+import static me.aap.fermata.vfs.FermataVfsManager.SFTP_ID;
+import static me.aap.fermata.vfs.FermataVfsManager.SMB_ID;
+
+import androidx.annotation.NonNull;
+
+import me.aap.fermata.media.lib.MediaLib.PlayableItem;
+import me.aap.fermata.media.pref.MediaLibPrefs;
+import me.aap.utils.function.IntSupplier;
+import me.aap.utils.pref.PreferenceStore;
+
+/**
+ * Buffering parameters, depending on the source type. The maximum buffer and the buffer, required
+ * to start the playback, are configurable, the other parameters are derived from them.
+ *
+ * @author Andrey Pavlenko
+ */
+public final class BufferingProfile {
+	public static final int TYPE_LOCAL = 0;
+	public static final int TYPE_LAN = 1;
+	public static final int TYPE_INTERNET = 2;
+	public static final int TYPE_STREAM = 3;
+	public final int type;
+	public final int minBufferMs;
+	public final int maxBufferMs;
+	public final int playbackBufferMs;
+	public final int rebufferMs;
+
+	private BufferingProfile(int type, int maxBufferMs, int playbackBufferMs) {
+		this.type = type;
+		this.maxBufferMs = Math.max(maxBufferMs, 1000);
+		this.playbackBufferMs = Math.min(Math.max(playbackBufferMs, 100), this.maxBufferMs);
+		this.rebufferMs = Math.min(this.playbackBufferMs * 2, this.maxBufferMs);
+		// ExoPlayer requires minBufferMs >= rebufferMs >= playbackBufferMs
+		this.minBufferMs = Math.max(this.maxBufferMs / 2, this.rebufferMs);
+	}
+
+	public static BufferingProfile get(PlayableItem i) {
+		int type = getType(i);
+		MediaLibPrefs prefs = i.getLib().getPrefs();
+		PreferenceStore.Pref<IntSupplier> max;
+		PreferenceStore.Pref<IntSupplier> start;
+
+		switch (type) {
+			case TYPE_LOCAL:
+				max = MediaLibPrefs.BUF_LOCAL_MAX;
+				start = MediaLibPrefs.BUF_LOCAL_START;
+				break;
+			case TYPE_LAN:
+				max = MediaLibPrefs.BUF_LAN_MAX;
+				start = MediaLibPrefs.BUF_LAN_START;
+				break;
+			case TYPE_INTERNET:
+				max = MediaLibPrefs.BUF_INTERNET_MAX;
+				start = MediaLibPrefs.BUF_INTERNET_START;
+				break;
+			default:
+				max = MediaLibPrefs.BUF_STREAM_MAX;
+				start = MediaLibPrefs.BUF_STREAM_START;
+				break;
+		}
+
+		return new BufferingProfile(type, prefs.getIntPref(max) * 1000, prefs.getIntPref(start));
+	}
+
+	public static int getType(PlayableItem i) {
+		if (i.isStream()) return TYPE_STREAM;
+		String scheme = i.getResource().getRid().getScheme();
+		if (scheme == null) return TYPE_LOCAL;
+
+		switch (scheme) {
+			case "file":
+			case "content":
+				return TYPE_LOCAL;
+			case SFTP_ID:
+			case SMB_ID:
+				return TYPE_LAN;
+			default:
+				return TYPE_INTERNET;
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BufferingProfile)) return false;
+		BufferingProfile p = (BufferingProfile) o;
+		return (type == p.type) && (maxBufferMs == p.maxBufferMs)
+				&& (playbackBufferMs == p.playbackBufferMs);
+	}
+
+	@Override
+	public int hashCode() {
+		return (type * 31 + maxBufferMs) * 31 + playbackBufferMs;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "BufferingProfile{type=" + type + ", minBufferMs=" + minBufferMs + ", maxBufferMs="
+				+ maxBufferMs + ", playbackBufferMs=" + playbackBufferMs + ", rebufferMs=" + rebufferMs + '}';
+	}
+}
@@ -0,0 +1,126 @@
+package me.aap.fermata.media.engine;
+
+import static me.aap.utils.function.ResultConsumer.Cancel.isCancellation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import me.aap.utils.async.FutureSupplier;
+import me.aap.utils.async.Promise;
+
+/**
+ * A small pool of workers, executing the bitmap decoding tasks. The tasks with the same key
+ * are coalesced - the subsequent requests share the result of the first one. The high priority
+ * tasks are executed before the low priority ones, a queued task is promoted to high priority,
+ * if requested again with a high priority. Each request gets its own future, when all the
+ * futures of a queued task are cancelled, the task is removed from the queue.
+ *
+ * @author Andrey Pavlenko
+ */
+final class DecodeQueue {
+	private final Executor executor;
+	private final int maxWorkers;
+	private final ConcurrentHashMap<String, Task<?>> tasks = new ConcurrentHashMap<>();
+	private final Deque<Task<?>> high = new ArrayDeque<>();
+	private final Deque<Task<?>> low = new ArrayDeque<>();
+	private int workers;
+
+	DecodeQueue(Executor executor, int maxWorkers) {
+		this.executor = executor;
+		this.maxWorkers = maxWorkers;
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> FutureSupplier<T> enqueue(String key, boolean priority, Callable<T> task) {
+		Task<T> t = new Task<>(key, task, priority);
+
+		for (; ; ) {
+			Task<T> pending = (Task<T>) tasks.putIfAbsent(key, t);
+			if (pending == null) break;
+
+			synchronized (this) {
+				if (!pending.promise.isDone()) {
+					pending.refs++;
+					if (priority) promote(pending);
+					return fork(pending);
+				}
+			}
+
+			tasks.remove(key, pending);
+		}
+
+		FutureSupplier<T> f;
+
+		synchronized (this) {
+			(priority ? high : low).add(t);
+			f = fork(t);
+			if (workers == maxWorkers) return f;
+			workers++;
+		}
+
+		executor.execute(this::run);
+		return f;
+	}
+
+	private <T> FutureSupplier<T> fork(Task<T> t) {
+		FutureSupplier<T> f = t.promise.fork();
+		f.onCompletion((r, err) -> {
+			if ((err != null) && isCancellation(err)) release(t);
+		});
+		return f;
+	}
+
+	private void promote(Task<?> t) {
+		if (t.priority || !low.remove(t)) return;
+		t.priority = true;
+		high.add(t);
+	}
+
+	// A running task is not interrupted, the result is cached and could be reused
+	private synchronized void release(Task<?> t) {
+		if ((--t.refs > 0) || !(high.remove(t) || low.remove(t))) return;
+		tasks.remove(t.key, t);
+		t.promise.cancel();
+	}
+
+	private void run() {
+		for (Task<?> t = next(); t != null; t = next()) {
+			t.run();
+			tasks.remove(t.key, t);
+		}
+	}
+
+	private synchronized Task<?> next() {
+		Task<?> t = high.poll();
+		if (t == null) t = low.poll();
+		if (t == null) workers--;
+		return t;
+	}
+
+	private static final class Task<T> {
+		final String key;
+		final Callable<T> task;
+		final Promise<T> promise = new Promise<>();
+		boolean priority;
+		int refs = 1;
+
+		Task(String key, Callable<T> task, boolean priority) {
+			this.key = key;
+			this.task = task;
+			this.priority = priority;
+		}
+
+		void run() {
+			if (promise.isDone()) return;
+
+			try {
+				promise.complete(task.call());
+			} catch (Throwable ex) {
+				promise.completeExceptionally(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package me.aap.fermata.media.engine;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.aap.utils.app.App;
+import me.aap.utils.io.IoUtils;
+import me.aap.utils.log.Log;
+
+/**
+ * Size limited LRU cache of the files in the specified directories. The entries are tracked
+ * in a journal, thus the directories are listed only once, when the journal does not exist.
+ * <p>
+ * Journal line format: {@code <A|D> <size> <access time> <path relative to the root>}.
+ * The first line lists the tracked directories, the journal of a different set of directories
+ * is discarded.
+ *
+ * @author Andrey Pavlenko
+ */
+final class DiskCache {
+	private static final String JOURNAL = "disk-cache.journal";
+	private static final long ACCESS_UPDATE_INTERVAL = 3600000;
+	private final File root;
+	private final File[] dirs;
+	private final String rootPath;
+	private final String[] dirPaths;
+	private final String header;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private long maxSize;
+	private long size;
+	private int journalLines;
+	private Writer journal;
+	private boolean loaded;
+	private boolean trimScheduled;
+
+	DiskCache(File root, long maxSize, File... dirs) {
+		this.root = root;
+		this.dirs = dirs;
+		this.maxSize = maxSize;
+		rootPath = root.getAbsolutePath() + '/';
+		dirPaths = new String[dirs.length];
+		StringBuilder h = new StringBuilder("#");
+
+		for (int i = 0; i < dirs.length; i++) {
+			dirPaths[i] = dirs[i].getAbsolutePath() + '/';
+			h.append(' ').append(dirPaths[i].substring(rootPath.length()));
+		}
+
+		header = h.toString();
+		App.get().execute(this::load);
+	}
+
+	synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		if (loaded && (size > maxSize)) scheduleTrim();
+	}
+
+	synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Record access to the file.
+	 */
+	void touch(File f) {
+		String path = path(f);
+		if (path == null) return;
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			Entry e = entries.get(path);
+
+			if (e == null) {
+				if (!loaded) entries.put(path, new Entry(-1, now));
+				return;
+			}
+
+			long prev = e.recorded;
+			e.access = now;
+			if ((now - prev) < ACCESS_UPDATE_INTERVAL) return;
+			e.recorded = now;
+			append('A', e.size, now, path);
+		}
+	}
+
+	/**
+	 * Record a new or modified file, written by a third party.
+	 */
+	void added(File f) {
+		String path = path(f);
+		if (path == null) return;
+		long len = f.length();
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			Entry e = entries.get(path);
+
+			if (e == null) {
+				entries.put(path, e = new Entry(len, now));
+				if (loaded) size += len;
+			} else {
+				if (loaded && (e.size > 0)) size += len - e.size;
+				e.size = len;
+				e.access = e.recorded = now;
+			}
+
+			if (!loaded) return;
+			append('A', len, now, path);
+			if (size > maxSize) scheduleTrim();
+		}
+	}
+
+	/**
+	 * Atomically write the file - the content is written to a temporary file, that is renamed
+	 * on success. Thus, the readers never see a partially written file.
+	 */
+	boolean write(File f, ContentWriter writer) {
+		File dir = f.getParentFile();
+		if (dir != null) //noinspection ResultOfMethodCallIgnored
+			dir.mkdirs();
+		File tmp = new File(f.getPath() + ".tmp");
+
+		try {
+			try (OutputStream out = new FileOutputStream(tmp)) {
+				writer.write(out);
+			}
+
+			if (!tmp.renameTo(f)) throw new IOException("Failed to rename " + tmp + " to " + f);
+			added(f);
+			return true;
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to write file ", f);
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			return false;
+		}
+	}
+
+	private Void load() {
+		File jf = new File(root, JOURNAL);
+		Map<String, Entry> m = new HashMap<>();
+		int lines = 0;
+		boolean rescan = false;
+
+		if (jf.isFile()) {
+			try (BufferedReader r = new BufferedReader(new FileReader(jf))) {
+				if (!header.equals(r.readLine())) throw new IOException("Tracked directories changed");
+				for (String l = r.readLine(); l != null; l = r.readLine(), lines++) {
+					parse(l, m);
+				}
+			} catch (Exception ex) {
+				Log.e(ex, "Failed to read journal ", jf, " - rescanning");
+				m.clear();
+				for (File d : dirs) scan(d, m);
+				rescan = true;
+			}
+		} else {
+			for (File d : dirs) scan(d, m);
+			rescan = true;
+		}
+
+		synchronized (this) {
+			for (Map.Entry<String, Entry> e : m.entrySet()) {
+				Entry pending = entries.get(e.getKey());
+				if (pending == null) entries.put(e.getKey(), e.getValue());
+				else if (pending.size < 0) pending.size = e.getValue().size;
+			}
+
+			long s = 0;
+
+			for (Map.Entry<String, Entry> e : new ArrayList<>(entries.entrySet())) {
+				Entry v = e.getValue();
+
+				if (v.size < 0) {
+					long len = new File(rootPath + e.getKey()).length();
+					if (len == 0) entries.remove(e.getKey());
+					else v.size = len;
+				}
+
+				s += Math.max(v.size, 0);
+			}
+
+			size = s;
+			journalLines = lines;
+			loaded = true;
+
+			if (rescan) {
+				compact(true);
+			} else {
+				// Record the entries, added before the journal has been loaded
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					if (!m.containsKey(e.getKey())) append('A', e.getValue().size, e.getValue().access, e.getKey());
+				}
+				compact(false);
+			}
+
+			if (size > maxSize) scheduleTrim();
+		}
+
+		return null;
+	}
+
+	private void parse(String l, Map<String, Entry> m) {
+		int i1 = l.indexOf(' ', 2);
+		int i2 = (i1 < 0) ? -1 : l.indexOf(' ', i1 + 1);
+		if ((l.length() < 2) || (i2 < 0)) return;
+		String path = l.substring(i2 + 1);
+		// The journal could contain the entries of a directory, that is not tracked anymore
+		if (!isTracked(rootPath + path)) return;
+
+		if (l.charAt(0) == 'D') {
+			m.remove(path);
+		} else {
+			long len = Long.parseLong(l.substring(2, i1));
+			long time = Long.parseLong(l.substring(i1 + 1, i2));
+			m.put(path, new Entry(len, time));
+		}
+	}
+
+	private void scan(File dir, Map<String, Entry> m) {
+		File[] ls = dir.listFiles();
+		if (ls == null) return;
+
+		for (File f : ls) {
+			if (f.isDirectory()) {
+				scan(f, m);
+			} else if (f.getName().endsWith(".tmp")) {
+				//noinspection ResultOfMethodCallIgnored
+				f.delete();
+			} else {
+				String path = path(f);
+				if (path != null) m.put(path, new Entry(f.length(), f.lastModified()));
+			}
+		}
+	}
+
+	private void scheduleTrim() {
+		if (trimScheduled) return;
+		trimScheduled = true;
+		App.get().execute(this::trim);
+	}
+
+	private Void trim() {
+		List<String> remove;
+
+		synchronized (this) {
+			trimScheduled = false;
+			if (size <= maxSize) return null;
+
+			List<Map.Entry<String, Entry>> ls = new ArrayList<>(entries.entrySet());
+			Collections.sort(ls, (e1, e2) -> Long.compare(e1.getValue().access, e2.getValue().access));
+			long target = maxSize - maxSize / 10;
+			remove = new ArrayList<>();
+
+			for (Map.Entry<String, Entry> e : ls) {
+				if (size <= target) break;
+				remove.add(e.getKey());
+				size -= Math.max(e.getValue().size, 0);
+				entries.remove(e.getKey());
+				append('D', 0, 0, e.getKey());
+			}
+
+			compact(false);
+		}
+
+		Log.d("Evicting ", remove.size(), " files from the disk cache");
+
+		for (String path : remove) {
+			//noinspection ResultOfMethodCallIgnored
+			new File(rootPath + path).delete();
+		}
+
+		return null;
+	}
+
+	private void append(char op, long len, long time, String path) {
+		try {
+			if (journal == null) journal = new FileWriter(new File(root, JOURNAL), true);
+			journal.append(op).append(' ').append(String.valueOf(len)).append(' ')
+					.append(String.valueOf(time)).append(' ').append(path).append('\n');
+			journal.flush();
+			journalLines++;
+		} catch (IOException ex) {
+			Log.e(ex, "Failed to write journal");
+			IoUtils.close(journal);
+			journal = null;
+		}
+	}
+
+	private void compact(boolean force) {
+		if (!force && (journalLines <= 2 * entries.size() + 100)) return;
+		IoUtils.close(journal);
+		journal = null;
+		File jf = new File(root, JOURNAL);
+		File tmp = new File(root, JOURNAL + ".tmp");
+
+		try (Writer w = new FileWriter(tmp)) {
+			w.append(header).append('\n');
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+				Entry v = e.getValue();
+				w.append("A ").append(String.valueOf(Math.max(v.size, 0))).append(' ')
+						.append(String.valueOf(v.access)).append(' ').append(e.getKey()).append('\n');
+			}
+		} catch (IOException ex) {
+			Log.e(ex, "Failed to compact journal");
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+			return;
+		}
+
+		if (tmp.renameTo(jf)) journalLines = entries.size();
+	}
+
+	@Nullable
+	private String path(File f) {
+		String p = f.getAbsolutePath();
+		return isTracked(p) ? p.substring(rootPath.length()) : null;
+	}
+
+	private boolean isTracked(String absPath) {
+		for (String d : dirPaths) {
+			if (absPath.startsWith(d)) return true;
+		}
+		return false;
+	}
+
+	interface ContentWriter {
+		void write(OutputStream out) throws Exception;
+	}
+
+	private static final class Entry {
+		long size;
+		long access;
+		long recorded;
+
+		Entry(long size, long access) {
+			this.size = size;
+			this.access = access;
+			this.recorded = access;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package me.aap.fermata.media.engine;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.aap.utils.io.MemOutputStream;
+
+/**
+ * Encodes the cached images and icons and collects the encoding statistics.
+ *
+ * @author Andrey Pavlenko
+ */
+final class ImageEncoder {
+	private final Bitmap.CompressFormat format;
+	private volatile int quality;
+	private final String ext;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong time = new AtomicLong();
+	private final AtomicLong inBytes = new AtomicLong();
+	private final AtomicLong outBytes = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+
+	private ImageEncoder(Bitmap.CompressFormat format, int quality, String ext) {
+		this.format = format;
+		this.quality = quality;
+		this.ext = ext;
+	}
+
+	@SuppressWarnings("deprecation")
+	static ImageEncoder webp(int quality) {
+		Bitmap.CompressFormat f = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
+				? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+		return new ImageEncoder(f, quality, ".webp");
+	}
+
+	void setQuality(int quality) {
+		this.quality = quality;
+	}
+
+	/**
+	 * File extension, including the leading dot.
+	 */
+	String getExtension() {
+		return ext;
+	}
+
+	/**
+	 * @param srcLen the length of the source, e.g. the embedded picture, or 0 if unknown.
+	 */
+	@Nullable
+	byte[] encode(Bitmap bm, long srcLen) {
+		long start = System.nanoTime();
+		MemOutputStream mos = new MemOutputStream(Math.max(8192, bm.getByteCount() / 16));
+		if (!bm.compress(format, quality, mos)) return null;
+		byte[] content = mos.trimBuffer();
+		time.addAndGet(System.nanoTime() - start);
+		count.incrementAndGet();
+		inBytes.addAndGet((srcLen > 0) ? srcLen : bm.getByteCount());
+		outBytes.addAndGet(content.length);
+		return content;
+	}
+
+	void duplicate(long srcLen) {
+		duplicates.incrementAndGet();
+		inBytes.addAndGet(srcLen);
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	long getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	long getTimeMillis() {
+		return time.get() / 1000000;
+	}
+
+	/**
+	 * The difference between the size of the source images (or the raw bitmaps, if the source
+	 * is unknown) and the size of the encoded images. The duplicates are not encoded, thus the
+	 * whole source is counted.
+	 */
+	long getBytesSaved() {
+		return inBytes.get() - outBytes.get();
+	}
+}
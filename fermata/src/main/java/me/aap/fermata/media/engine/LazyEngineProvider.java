@@ -0,0 +1,79 @@
+package me.aap.fermata.media.engine;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import me.aap.utils.app.App;
+import me.aap.utils.async.FutureSupplier;
+import me.aap.utils.log.Log;
+
+/**
+ * Loads and initializes the provider on first use. The initialization of some providers,
+ * i.e. LibVLC, is expensive, thus it should not be performed on startup, unless required.
+ * If the initialization fails, the provider is marked as failed and never retried.
+ *
+ * @author Andrey Pavlenko
+ */
+final class LazyEngineProvider {
+	private final Context ctx;
+	private final String providerClass;
+	private volatile MediaEngineProvider provider;
+	private volatile boolean failed;
+	private FutureSupplier<MediaEngineProvider> warmUp;
+
+	LazyEngineProvider(Context ctx, String providerClass) {
+		this.ctx = ctx;
+		this.providerClass = providerClass;
+	}
+
+	static boolean isAvailable(String providerClass) {
+		try {
+			Class.forName(providerClass, false, LazyEngineProvider.class.getClassLoader());
+			return true;
+		} catch (Throwable ex) {
+			return false;
+		}
+	}
+
+	boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * Initialize the provider in background.
+	 */
+	synchronized FutureSupplier<MediaEngineProvider> warmUp() {
+		if (warmUp == null) {
+			warmUp = App.get().execute(this::get).onFailure(ex ->
+					Log.e(ex, "Failed to warm up ", providerClass));
+		}
+		return warmUp;
+	}
+
+	/**
+	 * Returns the initialized provider or null, if the initialization failed.
+	 */
+	@Nullable
+	MediaEngineProvider get() {
+		MediaEngineProvider p = provider;
+		if ((p != null) || failed) return p;
+
+		synchronized (this) {
+			if (((p = provider) != null) || failed) return p;
+			long start = System.currentTimeMillis();
+
+			try {
+				p = (MediaEngineProvider) Class.forName(providerClass).newInstance();
+				p.init(ctx);
+			} catch (Throwable ex) {
+				Log.e(ex, "Failed to initialize ", providerClass);
+				failed = true;
+				return null;
+			}
+
+			Log.d(providerClass, " initialized in ", System.currentTimeMillis() - start, " ms");
+			return provider = p;
+		}
+	}
+}
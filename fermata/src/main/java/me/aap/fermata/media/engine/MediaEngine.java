@@ -43,6 +43,28 @@ public interface MediaEngine extends Closeable {
 
 	PlayableItem getSource();
 
+	/**
+	 * Preload the item, that should be played after the current one. If the engine supports
+	 * gapless playback, the playback continues with the next item, when the current one ends,
+	 * and the listener is notified with {@link Listener#onEngineSourceChanged}.
+	 *
+	 * @param next the next item or null to cancel the previous request.
+	 * @return false if not supported for the specified item.
+	 */
+	default boolean setNextSource(@Nullable PlayableItem next) {
+		return false;
+	}
+
+	/**
+	 * Switch to the next item, located in the same file, as the current one, e.g. to the next
+	 * track of a cue sheet. The playback is not interrupted.
+	 *
+	 * @return false if the file is different or not supported by the engine.
+	 */
+	default boolean continueWith(PlayableItem next) {
+		return false;
+	}
+
 	FutureSupplier<Long> getDuration();
 
 	FutureSupplier<Long> getPosition();
@@ -111,6 +133,14 @@ public interface MediaEngine extends Closeable {
 	default void setSubtitleDelay(int milliseconds) {
 	}
 
+	/**
+	 * The number of times the playback of the current source has been stalled to refill the
+	 * buffer. The buffering, caused by seeking, is not counted.
+	 */
+	default int getRebufferCount() {
+		return 0;
+	}
+
 	default boolean setSurfaceSize(VideoView view) {
 		return false;
 	}
@@ -139,6 +169,9 @@ public interface MediaEngine extends Closeable {
 		default void onEngineEnded(MediaEngine engine) {
 		}
 
+		default void onEngineSourceChanged(MediaEngine engine, PlayableItem prev) {
+		}
+
 		default void onEngineBuffering(MediaEngine engine, int percent) {
 		}
 
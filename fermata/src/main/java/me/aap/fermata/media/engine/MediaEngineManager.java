@@ -11,6 +11,7 @@ import android.content.Context;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 
 import com.google.android.play.core.splitinstall.SplitInstallManager;
@@ -42,19 +43,19 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 	private static final String MODULE_VLC = "vlc";
 	final MediaLib lib;
 	final MediaPlayerEngineProvider mediaPlayer;
-	MediaEngineProvider exoPlayer;
-	MediaEngineProvider vlcPlayer;
+	LazyEngineProvider exoPlayer;
+	LazyEngineProvider vlcPlayer;
 
 	public MediaEngineManager(MediaLib lib) {
 		MediaLibPrefs prefs = lib.getPrefs();
 
-		if (!prefs.hasPref(EXO_ENABLED) && isProviderAvailable(EXO_PROV_CLASS)) {
+		if (!prefs.hasPref(EXO_ENABLED) && LazyEngineProvider.isAvailable(EXO_PROV_CLASS)) {
 			prefs.applyBooleanPref(EXO_ENABLED, true);
 		}
-		if (!prefs.hasPref(VLC_ENABLED) && isProviderAvailable(VLC_PROV_CLASS)) {
+		if (!prefs.hasPref(VLC_ENABLED) && LazyEngineProvider.isAvailable(VLC_PROV_CLASS)) {
 			prefs.applyBooleanPref(VLC_ENABLED, true);
 		}
-		if (!prefs.hasPref(VIDEO_ENGINE) && isProviderAvailable(VLC_PROV_CLASS)) {
+		if (!prefs.hasPref(VIDEO_ENGINE) && LazyEngineProvider.isAvailable(VLC_PROV_CLASS)) {
 			prefs.setVideoEnginePref(MEDIA_ENG_VLC);
 		}
 
@@ -64,14 +65,41 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 		lib.getPrefs().addBroadcastListener(this);
 		setExoPlayer(true);
 		setVlcPlayer(true);
+
+		// The providers are initialized on first use, warm up the default audio engine only
+		switch (prefs.getAudioEnginePref()) {
+			case MEDIA_ENG_EXO:
+				if (exoPlayer != null) exoPlayer.warmUp();
+				break;
+			case MEDIA_ENG_VLC:
+				if (vlcPlayer != null) vlcPlayer.warmUp();
+				break;
+		}
 	}
 
 	public boolean isExoPlayerSupported() {
-		return exoPlayer != null;
+		LazyEngineProvider p = exoPlayer;
+		return (p != null) && !p.isFailed();
 	}
 
 	public boolean isVlcPlayerSupported() {
-		return vlcPlayer != null;
+		LazyEngineProvider p = vlcPlayer;
+		return (p != null) && !p.isFailed();
+	}
+
+	/**
+	 * Initializes the provider on first call, returns null if not available.
+	 */
+	@Nullable
+	MediaEngineProvider getExoProvider() {
+		LazyEngineProvider p = exoPlayer;
+		return (p == null) ? null : p.get();
+	}
+
+	@Nullable
+	MediaEngineProvider getVlcProvider() {
+		LazyEngineProvider p = vlcPlayer;
+		return (p == null) ? null : p.get();
 	}
 
 	public boolean isAdditionalPlayerSupported() {
@@ -99,16 +127,27 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 		return create(getProvider(id), null, i, listener);
 	}
 
+	/**
+	 * Returns true if the current engine would be used to play the specified item.
+	 */
+	public boolean isCurrentEngine(@NonNull MediaEngine current, PlayableItem i) {
+		if (!isAdditionalPlayerSupported()) return current.getId() == MEDIA_ENG_MP;
+		PlayableItemPrefs pref = i.getPrefs();
+		int id = i.isVideo() ? pref.getVideoEnginePref() : pref.getAudioEnginePref();
+		return current.getId() == id;
+	}
+
 	public MediaEngine createAnotherEngine(@NonNull MediaEngine current, Listener listener) {
 		int id = current.getId();
 		PlayableItem i = current.getSource();
+		MediaEngineProvider p;
 		current.close();
 
-		if ((vlcPlayer != null) && (id != MEDIA_ENG_VLC)) {
-			return create(vlcPlayer, null, i, listener);
+		if ((id != MEDIA_ENG_VLC) && ((p = getVlcProvider()) != null)) {
+			return create(p, null, i, listener);
 		}
-		if ((exoPlayer != null) && (id != MEDIA_ENG_EXO)) {
-			return create(exoPlayer, null, i, listener);
+		if ((id != MEDIA_ENG_EXO) && ((p = getExoProvider()) != null)) {
+			return create(p, null, i, listener);
 		}
 		if (id != MEDIA_ENG_MP) {
 			return create(mediaPlayer, null, i, listener);
@@ -118,14 +157,16 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 	}
 
 	private MediaEngineProvider getProvider(int id) {
+		MediaEngineProvider p = null;
+
 		switch (id) {
 			case MEDIA_ENG_EXO:
-				if (exoPlayer != null) return exoPlayer;
+				if ((p = getExoProvider()) != null) break;
 			case MEDIA_ENG_VLC:
-				if (vlcPlayer != null) return vlcPlayer;
-			default:
-				return mediaPlayer;
+				p = getVlcProvider();
 		}
+
+		return (p != null) ? p : mediaPlayer;
 	}
 
 	public MediaEngine create(MediaEngineProvider p, MediaEngine c, PlayableItem i, Listener l) {
@@ -151,28 +192,18 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 		return i.isStream() && i.isSeekable();
 	}
 
-	private boolean isProviderAvailable(String providerClass) {
-		try {
-			Class.forName(providerClass).newInstance();
-			return true;
-		} catch (Throwable ex) {
-			return false;
-		}
-	}
-
 	private void setExoPlayer(boolean install) {
 		if (lib.getPrefs().getExoEnabledPref()) {
-			try {
-				exoPlayer = (MediaEngineProvider) Class.forName(EXO_PROV_CLASS).newInstance();
-				exoPlayer.init(lib.getContext());
+			if (LazyEngineProvider.isAvailable(EXO_PROV_CLASS)) {
+				exoPlayer = new LazyEngineProvider(lib.getContext(), EXO_PROV_CLASS);
 				return;
-			} catch (Throwable ex) {
-				Log.e(ex, "ExoPlayer not found");
-				if (install) {
-					exoPlayer = null;
-					FutureSupplier<Void> i = installPlayer(MODULE_EXO, R.string.engine_exo_name);
-					i.main().onSuccess(v -> setExoPlayer(false)).onFailure(this::installExoFailed);
-				}
+			}
+
+			Log.e("ExoPlayer not found");
+			if (install) {
+				exoPlayer = null;
+				FutureSupplier<Void> i = installPlayer(MODULE_EXO, R.string.engine_exo_name);
+				i.main().onSuccess(v -> setExoPlayer(false)).onFailure(this::installExoFailed);
 			}
 		}
 
@@ -181,17 +212,16 @@ public class MediaEngineManager implements PreferenceStore.Listener {
 
 	private void setVlcPlayer(boolean install) {
 		if (lib.getPrefs().getVlcEnabledPref()) {
-			try {
-				vlcPlayer = (MediaEngineProvider) Class.forName(VLC_PROV_CLASS).newInstance();
-				vlcPlayer.init(lib.getContext());
+			if (LazyEngineProvider.isAvailable(VLC_PROV_CLASS)) {
+				vlcPlayer = new LazyEngineProvider(lib.getContext(), VLC_PROV_CLASS);
 				return;
-			} catch (Throwable ex) {
-				Log.e(ex, "VlcPlayer not found");
-				if (install) {
-					vlcPlayer = null;
-					FutureSupplier<Void> i = installPlayer(MODULE_VLC, R.string.engine_vlc_name);
-					i.main().onSuccess(v -> setVlcPlayer(false)).onFailure(this::installVlcFailed);
-				}
+			}
+
+			Log.e("VlcPlayer not found");
+			if (install) {
+				vlcPlayer = null;
+				FutureSupplier<Void> i = installPlayer(MODULE_VLC, R.string.engine_vlc_name);
+				i.main().onSuccess(v -> setVlcPlayer(false)).onFailure(this::installVlcFailed);
 			}
 		}
 
@@ -2,6 +2,7 @@ package me.aap.fermata.media.engine;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 
 import me.aap.fermata.media.engine.MediaEngine.Listener;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
@@ -34,4 +35,22 @@ public interface MediaEngineProvider {
 
 		return false;
 	}
+
+	/**
+	 * Validate the encoded image by decoding a small preview of it.
+	 */
+	default boolean isValidImage(byte[] data) {
+		BitmapFactory.Options o = new BitmapFactory.Options();
+		o.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, o);
+		if ((o.outWidth <= 0) || (o.outHeight <= 0)) return false;
+
+		o.inJustDecodeBounds = false;
+		o.inSampleSize = 1;
+		while (Math.min(o.outWidth, o.outHeight) / (o.inSampleSize * 2) >= 64) o.inSampleSize *= 2;
+		Bitmap bm = BitmapFactory.decodeByteArray(data, 0, data.length, o);
+		boolean valid = isValidBitmap(bm);
+		if (bm != null) bm.recycle();
+		return valid;
+	}
 }
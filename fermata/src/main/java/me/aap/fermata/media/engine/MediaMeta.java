@@ -0,0 +1,232 @@
+package me.aap.fermata.media.engine;
+
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ARTIST;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ARTIST;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_COMPOSER;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DISPLAY_TITLE;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DURATION;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_GENRE;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_TITLE;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_WRITER;
+
+import android.graphics.Bitmap;
+import android.support.v4.media.MediaMetadataCompat;
+
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable media metadata of a playable item. Unlike the Bundle based MediaMetadataCompat,
+ * the fields are fixed and the strings, that are usually shared by many items, i.e. artist,
+ * album and genre, are pooled. MediaMetadataCompat is only created for the media session.
+ *
+ * @author Andrey Pavlenko
+ */
+public final class MediaMeta {
+	private static final Map<String, WeakReference<String>> pool = new WeakHashMap<>();
+	private final String title;
+	private final String displayTitle;
+	private final String displaySubtitle;
+	private final String displayDescription;
+	private final String displayIconUri;
+	private final String artist;
+	private final String albumArtist;
+	private final String album;
+	private final String composer;
+	private final String writer;
+	private final String genre;
+	private final String imageUri;
+	private final Bitmap art;
+	private final long duration;
+
+	MediaMeta(MetadataBuilder b) {
+		title = b.title;
+		displayTitle = b.displayTitle;
+		displaySubtitle = b.displaySubtitle;
+		displayDescription = b.displayDescription;
+		displayIconUri = b.displayIconUri;
+		artist = pool(b.artist);
+		albumArtist = pool(b.albumArtist);
+		album = pool(b.album);
+		composer = pool(b.composer);
+		writer = pool(b.writer);
+		genre = pool(b.genre);
+		imageUri = b.getImageUri();
+		art = b.art;
+		duration = b.getDuration();
+	}
+
+	private MediaMeta(MediaMeta m, long duration) {
+		title = m.title;
+		displayTitle = m.displayTitle;
+		displaySubtitle = m.displaySubtitle;
+		displayDescription = m.displayDescription;
+		displayIconUri = m.displayIconUri;
+		artist = m.artist;
+		albumArtist = m.albumArtist;
+		album = m.album;
+		composer = m.composer;
+		writer = m.writer;
+		genre = m.genre;
+		imageUri = m.imageUri;
+		art = m.art;
+		this.duration = duration;
+	}
+
+	public MediaMeta withDuration(long duration) {
+		return (duration == this.duration) ? this : new MediaMeta(this, duration);
+	}
+
+	@Nullable
+	public String getTitle() {
+		return title;
+	}
+
+	@Nullable
+	public String getDisplayTitle() {
+		return displayTitle;
+	}
+
+	@Nullable
+	public String getDisplaySubtitle() {
+		return displaySubtitle;
+	}
+
+	@Nullable
+	public String getDisplayDescription() {
+		return displayDescription;
+	}
+
+	@Nullable
+	public String getDisplayIconUri() {
+		return displayIconUri;
+	}
+
+	@Nullable
+	public String getArtist() {
+		return artist;
+	}
+
+	@Nullable
+	public String getAlbumArtist() {
+		return albumArtist;
+	}
+
+	@Nullable
+	public String getAlbum() {
+		return album;
+	}
+
+	@Nullable
+	public String getComposer() {
+		return composer;
+	}
+
+	@Nullable
+	public String getWriter() {
+		return writer;
+	}
+
+	@Nullable
+	public String getGenre() {
+		return genre;
+	}
+
+	@Nullable
+	public String getImageUri() {
+		return imageUri;
+	}
+
+	@Nullable
+	public Bitmap getArt() {
+		return art;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the string value by the MediaMetadataCompat key.
+	 */
+	@Nullable
+	public String getString(String key) {
+		switch (key) {
+			case METADATA_KEY_TITLE:
+				return title;
+			case METADATA_KEY_DISPLAY_TITLE:
+				return displayTitle;
+			case METADATA_KEY_DISPLAY_SUBTITLE:
+				return displaySubtitle;
+			case METADATA_KEY_DISPLAY_DESCRIPTION:
+				return displayDescription;
+			case METADATA_KEY_DISPLAY_ICON_URI:
+				return displayIconUri;
+			case METADATA_KEY_ARTIST:
+				return artist;
+			case METADATA_KEY_ALBUM_ARTIST:
+				return albumArtist;
+			case METADATA_KEY_ALBUM:
+				return album;
+			case METADATA_KEY_COMPOSER:
+				return composer;
+			case METADATA_KEY_WRITER:
+				return writer;
+			case METADATA_KEY_GENRE:
+				return genre;
+			case METADATA_KEY_ALBUM_ART_URI:
+				return imageUri;
+			default:
+				return null;
+		}
+	}
+
+	public MediaMetadataCompat.Builder toBuilder() {
+		MediaMetadataCompat.Builder b = new MediaMetadataCompat.Builder();
+		put(b, METADATA_KEY_TITLE, title);
+		put(b, METADATA_KEY_DISPLAY_TITLE, displayTitle);
+		put(b, METADATA_KEY_DISPLAY_SUBTITLE, displaySubtitle);
+		put(b, METADATA_KEY_DISPLAY_DESCRIPTION, displayDescription);
+		put(b, METADATA_KEY_DISPLAY_ICON_URI, displayIconUri);
+		put(b, METADATA_KEY_ARTIST, artist);
+		put(b, METADATA_KEY_ALBUM_ARTIST, albumArtist);
+		put(b, METADATA_KEY_ALBUM, album);
+		put(b, METADATA_KEY_COMPOSER, composer);
+		put(b, METADATA_KEY_WRITER, writer);
+		put(b, METADATA_KEY_GENRE, genre);
+		put(b, METADATA_KEY_ALBUM_ART_URI, imageUri);
+		if (art != null) b.putBitmap(METADATA_KEY_ALBUM_ART, art);
+		b.putLong(METADATA_KEY_DURATION, duration);
+		return b;
+	}
+
+	public MediaMetadataCompat toMediaMetadata() {
+		return toBuilder().build();
+	}
+
+	private static void put(MediaMetadataCompat.Builder b, String key, @Nullable String value) {
+		if (value != null) b.putString(key, value);
+	}
+
+	@Nullable
+	private static String pool(@Nullable String s) {
+		if (s == null) return null;
+
+		synchronized (pool) {
+			WeakReference<String> ref = pool.get(s);
+			String p = (ref != null) ? ref.get() : null;
+			if (p != null) return p;
+			pool.put(s, new WeakReference<>(s));
+			return s;
+		}
+	}
+}
@@ -10,7 +10,9 @@ import android.media.PlaybackParams;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.io.IOException;
 import java.util.Collections;
 
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
@@ -28,24 +30,33 @@ public class MediaPlayerEngine implements MediaEngine,
 		MediaPlayer.OnErrorListener {
 	private final Context ctx;
 	private final Listener listener;
-	private final MediaPlayer player;
 	private final AudioEffects audioEffects;
+	private MediaPlayer player;
 	private PlayableItem source;
+	// The player of the next item, that shares the audio session with the current one
+	private MediaPlayer nextPlayer;
+	private PlayableItem nextSource;
+	private boolean nextPrepared;
 
 	public MediaPlayerEngine(Context ctx, Listener listener) {
 		this.ctx = ctx;
 		this.listener = listener;
-		player = new MediaPlayer();
+		player = createPlayer();
 		int sessionId = player.getAudioSessionId();
 		audioEffects = AudioEffects.create(0, sessionId);
+	}
+
+	private MediaPlayer createPlayer() {
+		MediaPlayer mp = new MediaPlayer();
 		AudioAttributes attrs = new AudioAttributes.Builder()
 				.setUsage(AudioAttributes.USAGE_MEDIA)
 				.setContentType(AudioAttributes.CONTENT_TYPE_MUSIC).build();
-		player.setAudioAttributes(attrs);
-		player.setOnPreparedListener(this);
-		player.setOnCompletionListener(this);
-		player.setOnErrorListener(this);
-		player.setOnVideoSizeChangedListener(this);
+		mp.setAudioAttributes(attrs);
+		mp.setOnPreparedListener(this);
+		mp.setOnCompletionListener(this);
+		mp.setOnErrorListener(this);
+		mp.setOnVideoSizeChangedListener(this);
+		return mp;
 	}
 
 	@Override
@@ -56,23 +67,11 @@ public class MediaPlayerEngine implements MediaEngine,
 	@Override
 	public void prepare(PlayableItem source) {
 		this.source = source;
-		Uri u = source.getLocation();
+		releaseNext();
 
 		try {
 			player.reset();
-			String scheme = u.getScheme();
-			if (SCHEME_CONTENT.equals(scheme)) {
-				player.setDataSource(ctx, u);
-			} else if ((scheme != null) && scheme.startsWith("http")) {
-				String agent = source.getUserAgent();
-				if (agent != null) {
-					player.setDataSource(ctx, u, Collections.singletonMap("User-Agent", agent));
-				} else {
-					player.setDataSource(u.toString());
-				}
-			} else {
-				player.setDataSource(ctx, u);
-			}
+			setDataSource(player, source);
 			player.prepareAsync();
 		} catch (Exception ex) {
 			listener.onEngineError(this, ex);
@@ -80,6 +79,76 @@ public class MediaPlayerEngine implements MediaEngine,
 		}
 	}
 
+	/**
+	 * The next item is prepared by another player instance, that is attached to the current one
+	 * with {@link MediaPlayer#setNextMediaPlayer(MediaPlayer)}. Only audio items without offsets
+	 * are supported.
+	 */
+	@Override
+	public boolean setNextSource(@Nullable PlayableItem next) {
+		if (nextPlayer != null) {
+			try {
+				player.setNextMediaPlayer(null);
+			} catch (IllegalStateException ex) {
+				Log.d(ex);
+			}
+			releaseNext();
+		}
+
+		if ((next == null) || (source == null) || source.isVideo() || next.isVideo()
+				|| (next.getOffset() > 0)) {
+			return false;
+		}
+
+		MediaPlayer mp = createPlayer();
+
+		try {
+			mp.setAudioSessionId(player.getAudioSessionId());
+			setDataSource(mp, next);
+			mp.prepareAsync();
+		} catch (Exception ex) {
+			Log.d(ex, "Failed to prepare next source: ", next);
+			mp.release();
+			return false;
+		}
+
+		nextPlayer = mp;
+		nextSource = next;
+		return true;
+	}
+
+	@Override
+	public boolean continueWith(PlayableItem next) {
+		if ((source == null) || !source.getLocation().equals(next.getLocation())) return false;
+		source = next;
+		return true;
+	}
+
+	private void setDataSource(MediaPlayer mp, PlayableItem source) throws IOException {
+		Uri u = source.getLocation();
+		String scheme = u.getScheme();
+		if (SCHEME_CONTENT.equals(scheme)) {
+			mp.setDataSource(ctx, u);
+		} else if ((scheme != null) && scheme.startsWith("http")) {
+			String agent = source.getUserAgent();
+			if (agent != null) {
+				mp.setDataSource(ctx, u, Collections.singletonMap("User-Agent", agent));
+			} else {
+				mp.setDataSource(u.toString());
+			}
+		} else {
+			mp.setDataSource(ctx, u);
+		}
+	}
+
+	private void releaseNext() {
+		if (nextPlayer == null) return;
+		nextPlayer.release();
+		nextPlayer = null;
+		nextSource = null;
+		nextPrepared = false;
+	}
+
 	@Override
 	public void start() {
 		player.start();
@@ -88,6 +157,7 @@ public class MediaPlayerEngine implements MediaEngine,
 
 	@Override
 	public void stop() {
+		releaseNext();
 		player.stop();
 		player.reset();
 		source = null;
@@ -171,6 +241,7 @@ public class MediaPlayerEngine implements MediaEngine,
 		} catch (IllegalStateException ignore) {
 		}
 
+		releaseNext();
 		if (audioEffects != null) audioEffects.release();
 		player.release();
 		source = null;
@@ -178,7 +249,18 @@ public class MediaPlayerEngine implements MediaEngine,
 
 	@Override
 	public void onPrepared(MediaPlayer mp) {
-		if (source == null) return;
+		if (mp == nextPlayer) {
+			try {
+				player.setNextMediaPlayer(mp);
+				nextPrepared = true;
+			} catch (IllegalStateException ex) {
+				Log.d(ex, "Failed to set next player");
+				releaseNext();
+			}
+			return;
+		}
+
+		if ((mp != player) || (source == null)) return;
 		long off = source.getOffset();
 		if (off > 0) player.seekTo((int) off);
 		listener.onEnginePrepared(this);
@@ -186,17 +268,42 @@ public class MediaPlayerEngine implements MediaEngine,
 
 	@Override
 	public void onCompletion(MediaPlayer mp) {
+		if (mp != player) return;
+
+		if (nextPrepared) {
+			// The next player has been started automatically
+			PlayableItem prev = source;
+			player = nextPlayer;
+			source = nextSource;
+			nextPlayer = null;
+			nextSource = null;
+			nextPrepared = false;
+			mp.release();
+			listener.onEngineSourceChanged(this, prev);
+			return;
+		}
+
 		player.reset();
 		listener.onEngineEnded(this);
 	}
 
 	@Override
 	public void onVideoSizeChanged(MediaPlayer mp, int width, int height) {
+		if (mp != player) return;
 		listener.onVideoSizeChanged(this, width, height);
 	}
 
 	@Override
 	public boolean onError(MediaPlayer mp, int what, int extra) {
+		if (mp == nextPlayer) {
+			Log.d("Failed to prepare next source: ", nextSource, ", what=", what, ", extra=", extra);
+			if (nextPrepared) player.setNextMediaPlayer(null);
+			releaseNext();
+			return true;
+		} else if (mp != player) {
+			return true;
+		}
+
 		MediaEngineException err;
 
 		switch (extra) {
@@ -2,7 +2,6 @@ package me.aap.fermata.media.engine;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.MediaMetadataRetriever;
 import android.media.MediaPlayer;
 import android.net.Uri;
@@ -78,19 +77,15 @@ public class MediaPlayerEngineProvider implements MediaEngineProvider {
 			}
 
 			byte[] pic = mmr.getEmbeddedPicture();
-			Bitmap bm = null;
 
-			if (pic != null) {
-				bm = BitmapFactory.decodeByteArray(pic, 0, pic.length);
-			}
-
-			if ((bm == null) && item.isVideo()) {
+			if ((pic != null) && isValidImage(pic)) {
+				meta.putImageData(pic);
+			} else if (item.isVideo()) {
 				dur = MICROSECONDS.convert(dur, MILLISECONDS);
-				bm = mmr.getFrameAtTime(dur / 2);
+				Bitmap bm = mmr.getFrameAtTime(dur / 2);
+				if (isValidBitmap(bm)) meta.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bm);
 			}
 
-			if (isValidBitmap(bm)) meta.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bm);
-
 			return true;
 		} catch (Throwable ex) {
 			Log.d(ex, "Failed to retrieve media metadata of ", item.getLocation());
@@ -1,18 +1,29 @@
 package me.aap.fermata.media.engine;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.support.v4.media.MediaMetadataCompat;
 
-import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI;
-
 /**
+ * The keys are the MediaMetadataCompat keys, the unsupported keys are ignored.
+ *
  * @author Andrey Pavlenko
  */
 public class MetadataBuilder {
-	private final MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder();
+	String title;
+	String displayTitle;
+	String displaySubtitle;
+	String displayDescription;
+	String displayIconUri;
+	String artist;
+	String albumArtist;
+	String album;
+	String composer;
+	String writer;
+	String genre;
+	Bitmap art;
 	private String imageUri;
 	private long duration;
-	private boolean hasBitmap;
 
 	public String getImageUri() {
 		return imageUri;
@@ -20,11 +31,10 @@ public class MetadataBuilder {
 
 	public void setImageUri(String imageUri) {
 		this.imageUri = imageUri;
-		builder.putString(METADATA_KEY_ALBUM_ART_URI, imageUri);
 	}
 
 	public boolean hasImage() {
-		return hasBitmap || (imageUri != null);
+		return (art != null) || (imageUri != null);
 	}
 
 	public long getDuration() {
@@ -32,21 +42,63 @@ public class MetadataBuilder {
 	}
 
 	public void putString(String key, String value) {
-		if (key.equals(METADATA_KEY_ALBUM_ART_URI)) imageUri = value;
-		builder.putString(key, value);
+		switch (key) {
+			case MediaMetadataCompat.METADATA_KEY_TITLE:
+				title = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_DISPLAY_TITLE:
+				displayTitle = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE:
+				displaySubtitle = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION:
+				displayDescription = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI:
+				displayIconUri = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_ARTIST:
+				artist = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_ALBUM_ARTIST:
+				albumArtist = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_ALBUM:
+				album = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_COMPOSER:
+				composer = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_WRITER:
+				writer = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_GENRE:
+				genre = value;
+				break;
+			case MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI:
+				imageUri = value;
+				break;
+		}
 	}
 
 	public void putLong(String key, long value) {
 		if (MediaMetadataCompat.METADATA_KEY_DURATION.equals(key)) duration = value;
-		builder.putLong(key, value);
 	}
 
 	public void putBitmap(String key, Bitmap value) {
-		builder.putBitmap(key, value);
-		hasBitmap = true;
+		if (MediaMetadataCompat.METADATA_KEY_ALBUM_ART.equals(key)) art = value;
+	}
+
+	/**
+	 * Put the encoded album art, e.g. an embedded picture.
+	 */
+	public void putImageData(byte[] data) {
+		Bitmap bm = BitmapFactory.decodeByteArray(data, 0, data.length);
+		if (bm != null) putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bm);
 	}
 
-	public MediaMetadataCompat build() {
-		return builder.build();
+	public MediaMeta build() {
+		return new MediaMeta(this);
 	}
 }
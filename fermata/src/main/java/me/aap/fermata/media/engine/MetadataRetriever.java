@@ -7,6 +7,10 @@ import static java.util.Collections.emptyMap;
 import static me.aap.fermata.media.pref.MediaPrefs.MEDIA_SCANNER_DEFAULT;
 import static me.aap.fermata.media.pref.MediaPrefs.MEDIA_SCANNER_SYSTEM;
 import static me.aap.fermata.media.pref.MediaPrefs.MEDIA_SCANNER_VLC;
+import static me.aap.fermata.vfs.FermataVfsManager.GDRIVE_ID;
+import static me.aap.fermata.vfs.FermataVfsManager.SFTP_ID;
+import static me.aap.fermata.vfs.FermataVfsManager.SMB_ID;
+import static me.aap.utils.async.Completed.completed;
 import static me.aap.utils.async.Completed.completedEmptyList;
 import static me.aap.utils.async.Completed.completedVoid;
 import static me.aap.utils.security.SecurityUtils.SHA1_DIGEST_LEN;
@@ -17,6 +21,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.media.MediaMetadata;
 import android.net.Uri;
@@ -33,17 +38,21 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import me.aap.fermata.BuildConfig;
 import me.aap.fermata.FermataApplication;
 import me.aap.fermata.media.lib.FileItem;
 import me.aap.fermata.media.lib.FolderItem;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
+import me.aap.fermata.media.lib.MediaLib.Item;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.async.PromiseQueue;
 import me.aap.utils.function.IntSupplier;
+import me.aap.utils.function.Supplier;
 import me.aap.utils.log.Log;
 import me.aap.utils.pref.PreferenceStore;
 import me.aap.utils.pref.PreferenceStore.Pref;
@@ -70,11 +79,31 @@ public class MetadataRetriever implements Closeable {
 	private static final String COL_GENRE = "Genre";
 	private static final String COL_ART = "Art";
 	private static final String COL_DURATION = "Duration";
+	private static final String COL_DIR = "Dir";
+	private static final String DIR_INDEX = "MetadataDirIdx";
+	private static final String FTS_TABLE = "MetadataFts";
+	private static final String[] FTS_COLUMNS = {COL_TITLE, COL_ARTIST, COL_ALBUM,
+			COL_ALBUM_ARTIST, COL_COMPOSER, COL_GENRE};
+	private static final String[] INSERT_COLUMNS = {COL_ID, COL_TITLE, COL_ALBUM, COL_ARTIST,
+			COL_ALBUM_ARTIST, COL_COMPOSER, COL_WRITER, COL_GENRE, COL_DURATION, COL_ART, COL_DIR};
+	private static final String INDEX_TABLE = "LibIndex";
+	private static final String INDEX_FTS_TABLE = "LibIndexFts";
+	private static final String INDEX_PARENT_INDEX = "LibIndexParentIdx";
+	private static final String COL_PARENT = "Parent";
+	private static final String[] INDEX_COLUMNS = {COL_ID, COL_PARENT, COL_TITLE, COL_ARTIST, COL_ALBUM};
+	private static final String[] INDEX_FTS_COLUMNS = {COL_TITLE, COL_ARTIST, COL_ALBUM};
+	private static final int SCHEMA_VERSION = 178;
+	private static final byte FTS_NONE = 0;
+	private static final byte FTS_4 = 4;
+	private static final byte FTS_5 = 5;
+	private static final int FLUSH_SIZE = 128;
+	private static final long FLUSH_DELAY = 2000;
 	private static final String COL_ID_PATTERN = COL_ID + " LIKE ? AND NOT " + COL_ID + " LIKE ?";
 	private static final String[] QUERY_COLUMNS = {COL_ID, COL_TITLE, COL_ALBUM, COL_ARTIST,
 			COL_DURATION, COL_ART};
 	private static final byte ART_URI = 0;
 	private static final byte ART_HASH = 1;
+	private static final byte ART_ENCODED_HASH = 2;
 	private static final String[] CONTENT_COLUMNS;
 	private static final String[] CONTENT_COLUMNS_DATA;
 
@@ -108,7 +137,17 @@ public class MetadataRetriever implements Closeable {
 	private final BitmapCache bitmapCache;
 	@Nullable
 	private final SQLiteDatabase db;
-	private final PromiseQueue queue = new PromiseQueue(App.get().getExecutor());
+	// Interactive lookups are served by a dedicated queue, thus never wait for the extraction
+	private final PromiseQueue queryQueue = new PromiseQueue(App.get().getExecutor());
+	private final PromiseQueue writeQueue = new PromiseQueue(App.get().getExecutor());
+	private final Map<String, ScanQueue> scanQueues = new ConcurrentHashMap<>();
+	private final Map<String, MetaBuilder> pending = new ConcurrentHashMap<>();
+	private List<MetaBuilder> writeBuffer = new ArrayList<>(FLUSH_SIZE);
+	private boolean flushScheduled;
+	private boolean closed;
+	private SQLiteStatement insertStmt;
+	private byte fts;
+	private byte indexFts;
 
 	public MetadataRetriever(MediaEngineManager mgr) {
 		this.mgr = mgr;
@@ -131,6 +170,14 @@ public class MetadataRetriever implements Closeable {
 			}
 		}
 
+		if (db != null) {
+			try {
+				db.enableWriteAheadLogging();
+			} catch (Exception ex) {
+				Log.w(ex, "Failed to enable WAL: ", dbFile);
+			}
+		}
+
 		this.db = db;
 		createTable();
 	}
@@ -141,11 +188,50 @@ public class MetadataRetriever implements Closeable {
 
 	@Override
 	public void close() {
-		if (db != null) db.close();
+		if (db == null) return;
+
+		synchronized (this) {
+			if (closed) return;
+			flush();
+			// The scheduled flush does nothing after this
+			closed = true;
+		}
+
+		// Closed by the write queue, after the pending tasks are completed
+		writeQueue.enqueue(() -> {
+			if (insertStmt != null) insertStmt.close();
+			db.close();
+			return null;
+		}).get(null);
 	}
 
 	public FutureSupplier<MetadataBuilder> getMediaMetadata(PlayableItem item) {
-		return queue.enqueue(() -> load(item));
+		return queryQueue.enqueue(() -> queryMetadata(item)).then(meta -> (meta != null)
+				? completed(meta) : getScanQueue(item).enqueue(() -> load(item)));
+	}
+
+	private ScanQueue getScanQueue(PlayableItem item) {
+		String scheme = item.getResource().getRid().getScheme();
+		if (scheme == null) scheme = "";
+		ScanQueue q = scanQueues.get(scheme);
+		if (q != null) return q;
+		q = new ScanQueue(getScanConcurrency(scheme));
+		ScanQueue prev = scanQueues.putIfAbsent(scheme, q);
+		return (prev == null) ? q : prev;
+	}
+
+	private static int getScanConcurrency(String scheme) {
+		switch (scheme) {
+			case "file":
+			case "content":
+				return 4;
+			case GDRIVE_ID:
+				return 3;
+			case SFTP_ID:
+			case SMB_ID:
+			default:
+				return 2;
+		}
 	}
 
 	private MetadataBuilder load(PlayableItem item) {
@@ -176,7 +262,7 @@ public class MetadataRetriever implements Closeable {
 			}
 		}
 
-		int scanner = (mgr.vlcPlayer == null) ? MEDIA_SCANNER_DEFAULT
+		int scanner = !mgr.isVlcPlayerSupported() ? MEDIA_SCANNER_DEFAULT
 				: item.getLib().getPrefs().getMediaScannerPref();
 
 		switch (scanner) {
@@ -185,7 +271,8 @@ public class MetadataRetriever implements Closeable {
 				if (mgr.mediaPlayer.getMediaMetadata(mb, item)) break;
 				if ((scanner == MEDIA_SCANNER_SYSTEM) && mgr.mediaPlayer.getDuration(mb, item)) break;
 			case MEDIA_SCANNER_VLC:
-				if (mgr.vlcPlayer != null) mgr.vlcPlayer.getMediaMetadata(mb, item);
+				MediaEngineProvider vlc = mgr.getVlcProvider();
+				if (vlc != null) vlc.getMediaMetadata(mb, item);
 		}
 
 		try {
@@ -331,8 +418,8 @@ public class MetadataRetriever implements Closeable {
 	}
 
 	public FutureSupplier<Map<String, MetadataBuilder>> queryMetadata(String idPattern, BrowsableItem br) {
-		if (db == null) return queue.enqueue(() -> queryMediaStore(br));
-		return queue.enqueue(() -> {
+		if (db == null) return queryQueue.enqueue(() -> queryMediaStore(br));
+		return queryQueue.enqueue(() -> {
 			Map<String, MetadataBuilder> m = query(idPattern);
 			return m.isEmpty() ? queryMediaStore(br) : m;
 		});
@@ -343,55 +430,228 @@ public class MetadataRetriever implements Closeable {
 	}
 
 	public FutureSupplier<List<String>> queryIds(String pattern, int max) {
-		return (db != null) ? queue.enqueue(() -> {
-			List<String> ids = new ArrayList<>(max);
-			try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_TITLE + " = ? OR " +
-							COL_ARTIST + " = ? OR " + COL_ALBUM + " = ? LIMIT " + max,
-					new String[]{pattern, pattern, pattern}, null, null, null)) {
-				while (c.moveToNext()) ids.add(c.getString(0));
+		return (db != null) ? queryQueue.enqueue(() -> {
+			List<String> ids = queryMetadataIds(pattern, max);
+			if (ids.size() >= max) return ids;
+			List<String> idx = queryIndexIds(pattern, max - ids.size());
+			if (idx.isEmpty()) return ids;
+			if (ids.isEmpty()) return idx;
+			List<String> all = new ArrayList<>(ids.size() + idx.size());
+			all.addAll(ids);
+			all.addAll(idx);
+			return all;
+		}) : completedEmptyList();
+	}
+
+	/**
+	 * Search the library index only, i.e. the items, that are not files of a folder.
+	 */
+	public FutureSupplier<List<String>> queryIndex(String pattern, int max) {
+		return (db != null) ? queryQueue.enqueue(() -> queryIndexIds(pattern, max))
+				: completedEmptyList();
+	}
+
+	private List<String> queryMetadataIds(String pattern, int max) {
+		assert db != null;
+		if (fts != FTS_NONE) {
+			try {
+				return searchIds(pattern, max);
+			} catch (Throwable ex) {
+				Log.e(ex, "Full text search failed: ", pattern);
 			}
-			if (!ids.isEmpty()) return ids;
+		}
+
+		List<String> ids = new ArrayList<>(max);
+		try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_TITLE + " = ? OR " +
+						COL_ARTIST + " = ? OR " + COL_ALBUM + " = ? LIMIT " + max,
+				new String[]{pattern, pattern, pattern}, null, null, null)) {
+			while (c.moveToNext()) ids.add(c.getString(0));
+		}
+		if (!ids.isEmpty()) return ids;
+
+		String[] p = {'%' + pattern + '%'};
+		try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_TITLE + " LIKE ?  LIMIT " + max,
+				p, null, null, null)) {
+			while (c.moveToNext()) ids.add(c.getString(0));
+		}
+		if (!ids.isEmpty()) return ids;
+		try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_ARTIST + " LIKE ?  LIMIT + " + max,
+				p, null, null, null)) {
+			while (c.moveToNext()) ids.add(c.getString(0));
+		}
+		if (!ids.isEmpty()) return ids;
+		try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_ALBUM + " LIKE ?  LIMIT " + max,
+				p, null, null, null)) {
+			while (c.moveToNext()) ids.add(c.getString(0));
+		}
+		return ids.isEmpty() ? emptyList() : ids;
+	}
+
+	private List<String> queryIndexIds(String pattern, int max) {
+		try {
+			return searchIndexIds(pattern, max);
+		} catch (Throwable ex) {
+			Log.e(ex, "Library index search failed: ", pattern);
+			return emptyList();
+		}
+	}
 
-			String[] p = {'%' + pattern + '%'};
-			try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_TITLE + " LIKE ?  LIMIT " + max,
-					p, null, null, null)) {
-				while (c.moveToNext()) ids.add(c.getString(0));
+	/**
+	 * Replace the indexed children of the specified parent. The playable children of folders
+	 * are not indexed, they are searched in the metadata table.
+	 */
+	public void indexChildren(BrowsableItem parent, List<Item> children) {
+		if ((db == null) || (indexFts == FTS_NONE)) return;
+		boolean folder = parent instanceof FolderItem;
+		List<ContentValues> rows = new ArrayList<>(children.size());
+		String parentId = parent.getId();
+
+		for (Item c : children) {
+			if (folder && (c instanceof PlayableItem)) continue;
+			ContentValues v = new ContentValues(5);
+			v.put(COL_ID, c.getId());
+			v.put(COL_PARENT, parentId);
+
+			if (c instanceof PlayableItem) {
+				MediaMeta md = ((PlayableItem) c).getMediaData().peek();
+				String title = (md != null) ? md.getTitle() : null;
+				v.put(COL_TITLE, (title != null) ? title : c.getName());
+				if (md != null) {
+					v.put(COL_ARTIST, md.getArtist());
+					v.put(COL_ALBUM, md.getAlbum());
+				}
+			} else {
+				v.put(COL_TITLE, c.getName());
 			}
-			if (!ids.isEmpty()) return ids;
-			try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_ARTIST + " LIKE ?  LIMIT + " + max,
-					p, null, null, null)) {
-				while (c.moveToNext()) ids.add(c.getString(0));
+
+			rows.add(v);
+		}
+
+		synchronized (this) {
+			if (closed) return;
+			writeQueue.enqueue(() -> indexChildren(parentId, rows));
+		}
+	}
+
+	private Void indexChildren(String parentId, List<ContentValues> rows) {
+		try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + INDEX_TABLE +
+				" (" + COL_ID + ", " + COL_PARENT + ", " + COL_TITLE + ", " + COL_ARTIST + ", " +
+				COL_ALBUM + ") VALUES (?, ?, ?, ?, ?)")) {
+			db.beginTransaction();
+
+			try {
+				db.delete(INDEX_TABLE, COL_PARENT + " = ?", new String[]{parentId});
+
+				for (ContentValues v : rows) {
+					for (int i = 0; i < INDEX_COLUMNS.length; i++) {
+						String s = v.getAsString(INDEX_COLUMNS[i]);
+						if (s == null) insert.bindNull(i + 1);
+						else insert.bindString(i + 1, s);
+					}
+					insert.executeInsert();
+				}
+
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
 			}
-			if (!ids.isEmpty()) return ids;
-			try (Cursor c = db.query(TABLE, new String[]{COL_ID}, COL_ALBUM + " LIKE ?  LIMIT " + max,
-					p, null, null, null)) {
-				while (c.moveToNext()) ids.add(c.getString(0));
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to index children of ", parentId);
+		}
+		return null;
+	}
+
+	private List<String> searchIds(String pattern, int max) {
+		// Title matches weigh more than the other columns
+		return searchIds(pattern, max, TABLE, FTS_TABLE, fts, "10.0, 5.0, 5.0, 2.0, 1.0, 1.0");
+	}
+
+	private List<String> searchIndexIds(String pattern, int max) {
+		return searchIds(pattern, max, INDEX_TABLE, INDEX_FTS_TABLE, indexFts, "10.0, 5.0, 5.0");
+	}
+
+	private List<String> searchIds(String pattern, int max, String table, String ftsTable, byte fts,
+																 String weights) {
+		assert db != null;
+		if (fts == FTS_NONE) return emptyList();
+		// Each word of the pattern is converted to a prefix query: 'foo bar' -> 'foo* bar*'
+		StringBuilder sb = new StringBuilder(pattern.length() + 8);
+		boolean word = false;
+
+		for (int i = 0, n = pattern.length(); i < n; ) {
+			int cp = pattern.codePointAt(i);
+			i += Character.charCount(cp);
+
+			if (Character.isLetterOrDigit(cp)) {
+				if (!word && (sb.length() != 0)) sb.append(' ');
+				sb.appendCodePoint(Character.toLowerCase(cp));
+				word = true;
+			} else if (word) {
+				sb.append('*');
+				word = false;
 			}
-			return ids.isEmpty() ? emptyList() : ids;
-		}) : completedEmptyList();
+		}
+
+		if (sb.length() == 0) return emptyList();
+		if (word) sb.append('*');
+		String match = sb.toString();
+
+		String sql = (fts == FTS_5)
+				? "SELECT m." + COL_ID + " FROM " + ftsTable + " f JOIN " + table +
+				" m ON m.rowid = f.rowid WHERE " + ftsTable + " MATCH ? ORDER BY bm25(" + ftsTable +
+				", " + weights + ") LIMIT " + max
+				: "SELECT m." + COL_ID + " FROM " + ftsTable + " f JOIN " + table +
+				" m ON m.rowid = f.docid WHERE " + ftsTable + " MATCH ? LIMIT " + max;
+
+		try (Cursor c = db.rawQuery(sql, new String[]{match})) {
+			if (!c.moveToNext()) return emptyList();
+			List<String> ids = new ArrayList<>(Math.min(c.getCount(), max));
+			do {
+				ids.add(c.getString(0));
+			} while (c.moveToNext());
+			return ids;
+		}
 	}
 
 	public FutureSupplier<Void> clearMetadata(String idPattern) {
-		return (db != null) ? queue.enqueue(() -> clear(idPattern)) : completedVoid();
+		if (db == null) return completedVoid();
+		flush();
+
+		synchronized (this) {
+			if (closed) return completedVoid();
+			return writeQueue.enqueue(() -> clear(idPattern));
+		}
 	}
 
 	public void updateDuration(PlayableItem item, long duration) {
 		if (db == null) return;
-
-		queue.enqueue(() -> {
-			ContentValues values = new ContentValues(1);
-			values.put(COL_DURATION, duration);
-			db.update(TABLE, values, COL_ID + " = ?", new String[]{item.getId()});
-			return null;
-		});
+		flush();
+
+		synchronized (this) {
+			if (closed) return;
+			writeQueue.enqueue(() -> {
+				try {
+					ContentValues values = new ContentValues(1);
+					values.put(COL_DURATION, duration);
+					db.update(TABLE, values, COL_ID + " = ?", new String[]{item.getId()});
+				} catch (Throwable ex) {
+					Log.e(ex, "Failed to update duration of ", item.getId());
+				}
+				return null;
+			});
+		}
 	}
 
 	private Map<String, MetadataBuilder> query(String idPattern) {
 		assert db != null;
-
-		try (SharedTextBuilder tb = SharedTextBuilder.get().append(idPattern).append("%/%");
-				 Cursor c = db.query(TABLE, QUERY_COLUMNS, COL_ID_PATTERN,
-						 new String[]{idPattern, tb.toString()}, null, null, null)) {
+		String dir = patternToDir(idPattern);
+
+		try (SharedTextBuilder tb = SharedTextBuilder.get();
+				 Cursor c = (dir != null)
+						 ? db.query(TABLE, QUERY_COLUMNS, COL_DIR + " = ?", new String[]{dir}, null, null, null)
+						 : db.query(TABLE, QUERY_COLUMNS, COL_ID_PATTERN,
+						 new String[]{idPattern, tb.append(idPattern).append("%/%").toString()},
+						 null, null, null)) {
 			int count = c.getCount();
 			if (count == 0) return emptyMap();
 
@@ -400,8 +660,7 @@ public class MetadataRetriever implements Closeable {
 			while (c.moveToNext()) {
 				String id = c.getString(0);
 				MetadataBuilder meta = new MetadataBuilder();
-				readMetadata(meta, c, tb);
-				result.put(id, meta);
+				if (readMetadata(meta, c, tb)) result.put(id, meta);
 			}
 
 			return result;
@@ -413,40 +672,71 @@ public class MetadataRetriever implements Closeable {
 
 	private Void clear(String idPattern) {
 		try {
-			String not = SharedTextBuilder.get().append(idPattern).append("%/%").releaseString();
 			assert db != null;
-			db.delete(TABLE, COL_ID_PATTERN, new String[]{idPattern, not});
+			String dir = patternToDir(idPattern);
+
+			if (dir != null) {
+				db.delete(TABLE, COL_DIR + " = ?", new String[]{dir});
+			} else {
+				String not = SharedTextBuilder.get().append(idPattern).append("%/%").releaseString();
+				db.delete(TABLE, COL_ID_PATTERN, new String[]{idPattern, not});
+			}
 		} catch (Throwable ex) {
 			Log.d(ex, "Failed to clear media metadata");
 		}
 		return null;
 	}
 
+	/**
+	 * Folder children patterns have the form %:path/% and match exactly the ids
+	 * whose directory is :path. Returns null for any other pattern.
+	 */
+	@Nullable
+	private static String patternToDir(String idPattern) {
+		int len = idPattern.length();
+		if ((len < 4) || (idPattern.charAt(0) != '%') || (idPattern.charAt(1) != ':')) return null;
+		if ((idPattern.charAt(len - 1) != '%') || (idPattern.charAt(len - 2) != '/')) return null;
+		String dir = idPattern.substring(1, len - 2);
+		return (dir.indexOf('%') < 0) && (dir.indexOf('_') < 0) ? dir : null;
+	}
+
+	@Nullable
+	private static String idToDir(String id) {
+		int start = id.indexOf(':');
+		int end = id.lastIndexOf('/');
+		return ((start < 0) || (end <= start)) ? null : id.substring(start, end);
+	}
+
 	private MetadataBuilder queryMetadata(PlayableItem item) {
 		if (db == null) return null;
+		MetaBuilder p = pending.get(item.getOrigId());
+		if (p != null) return p;
 
 		try (Cursor c = db.query(TABLE, QUERY_COLUMNS, COL_ID + " = ?",
 				new String[]{item.getOrigId()}, null, null, null);
 				 SharedTextBuilder tb = SharedTextBuilder.get()) {
 			if (!c.moveToNext()) return null;
 			MetadataBuilder meta = new MetaBuilder();
-			readMetadata(meta, c, tb);
-			return meta;
+			// The image has been evicted - extract the metadata again
+			return readMetadata(meta, c, tb) ? meta : null;
 		} catch (Throwable ex) {
 			Log.d(ex, "Failed to query media metadata");
 			return null;
 		}
 	}
 
-	private void readMetadata(MetadataBuilder meta, Cursor c, TextBuilder tb) {
+	/**
+	 * Returns false if the image, referenced by the hash, has been evicted from the disk cache.
+	 */
+	private boolean readMetadata(MetadataBuilder meta, Cursor c, TextBuilder tb) {
 		String m = c.getString(1);
 		if (m != null) meta.putString(MediaMetadataCompat.METADATA_KEY_TITLE, m);
 
 		m = c.getString(2);
-		if (m != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ALBUM, m.intern());
+		if (m != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ALBUM, m);
 
 		m = c.getString(3);
-		if (m != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ARTIST, m.intern());
+		if (m != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ARTIST, m);
 
 		meta.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, c.getLong(4));
 
@@ -454,14 +744,21 @@ public class MetadataRetriever implements Closeable {
 		if (art != null) {
 			String uri = null;
 			if (art.length == SHA1_DIGEST_LEN) { // Old format in pure sha1
-				uri = bitmapCache.getImageUri(art, tb);
+				uri = bitmapCache.getCachedImageUri(art, false, tb);
+				if (uri == null) return false;
 			} else if ((art.length == SHA1_DIGEST_LEN + 1) && (art[art.length - 1] == ART_HASH)) {
-				uri = bitmapCache.getImageUri(art, tb);
+				uri = bitmapCache.getCachedImageUri(art, false, tb);
+				if (uri == null) return false;
+			} else if ((art.length == SHA1_DIGEST_LEN + 1) && (art[art.length - 1] == ART_ENCODED_HASH)) {
+				uri = bitmapCache.getCachedImageUri(art, true, tb);
+				if (uri == null) return false;
 			} else if ((art.length > 1) && (art[art.length - 1] == ART_URI)) {
 				uri = new String(art, 0, art.length - 1, UTF_8);
 			}
 			if (uri != null) meta.setImageUri(uri);
 		}
+
+		return true;
 	}
 
 	private void insertMetadata(MetaBuilder meta, PlayableItem item) {
@@ -471,18 +768,23 @@ public class MetadataRetriever implements Closeable {
 	private void insertMetadata(MetaBuilder meta, String id) {
 		if ((db == null) || !meta.durationSet) return;
 		Bitmap bm = meta.image;
+		byte[] data = meta.imageData;
 
-		if (bm != null) {
+		if ((bm != null) || (data != null)) {
 			try (SharedTextBuilder tb = SharedTextBuilder.get()) {
-				byte[] hash = bitmapCache.saveBitmap(bm, tb);
+				byte[] hash = (data != null) ? bitmapCache.saveImage(data, tb) : bitmapCache.saveBitmap(bm, tb);
 
 				if (hash != null) {
-					meta.setImageUri(bitmapCache.getImageUri(hash, tb));
+					meta.setImageUri(bitmapCache.getEncodedImageUri(hash, tb));
 					byte[] art = Arrays.copyOf(hash, hash.length + 1);
-					art[hash.length] = ART_HASH;
+					art[hash.length] = ART_ENCODED_HASH;
 					meta.setArt(art);
 				}
 			}
+
+			// Not needed anymore, do not hold it in the write buffer
+			meta.image = null;
+			meta.imageData = null;
 		} else {
 			String uri = meta.getImageUri();
 
@@ -495,7 +797,74 @@ public class MetadataRetriever implements Closeable {
 		}
 
 		meta.setId(id);
-		meta.insert(db);
+		pending.put(id, meta);
+		boolean flush;
+
+		synchronized (this) {
+			writeBuffer.add(meta);
+
+			if (writeBuffer.size() >= FLUSH_SIZE) {
+				flush = true;
+			} else if (!flushScheduled) {
+				flushScheduled = true;
+				App.get().getScheduler().schedule(this::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+				flush = false;
+			} else {
+				flush = false;
+			}
+		}
+
+		if (flush) flush();
+	}
+
+	private FutureSupplier<Void> flush() {
+		List<MetaBuilder> rows;
+
+		synchronized (this) {
+			flushScheduled = false;
+			if (closed || writeBuffer.isEmpty()) return completedVoid();
+			rows = writeBuffer;
+			writeBuffer = new ArrayList<>(FLUSH_SIZE);
+		}
+
+		return writeQueue.enqueue(() -> insert(rows));
+	}
+
+	private Void insert(List<MetaBuilder> rows) {
+		assert db != null;
+
+		try {
+			if (insertStmt == null) {
+				try (SharedTextBuilder tb = SharedTextBuilder.get()) {
+					tb.append("INSERT OR REPLACE INTO ").append(TABLE).append(" (");
+					for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+						if (i != 0) tb.append(", ");
+						tb.append(INSERT_COLUMNS[i]);
+					}
+					tb.append(") VALUES (?");
+					for (int i = 1; i < INSERT_COLUMNS.length; i++) tb.append(", ?");
+					insertStmt = db.compileStatement(tb.append(')').toString());
+				}
+			}
+
+			db.beginTransaction();
+
+			try {
+				for (MetaBuilder mb : rows) {
+					mb.bind(insertStmt);
+					insertStmt.executeInsert();
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to insert media metadata");
+		} finally {
+			for (MetaBuilder mb : rows) pending.remove(mb.getId(), mb);
+		}
+
+		return null;
 	}
 
 	private void createTable() {
@@ -503,10 +872,11 @@ public class MetadataRetriever implements Closeable {
 
 		PreferenceStore ps = FermataApplication.get().getPreferenceStore();
 		Pref<IntSupplier> version = Pref.i("METADATA_VERSION", 0);
+		int v = ps.getIntPref(version);
 
-		if (ps.getIntPref(version) < 70) {
+		if (v < 70) {
 			db.execSQL("DROP TABLE IF EXISTS " + TABLE);
-			ps.applyIntPref(version, BuildConfig.VERSION_CODE);
+			v = 0;
 		}
 
 		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + "(" +
@@ -519,14 +889,223 @@ public class MetadataRetriever implements Closeable {
 				COL_WRITER + " VARCHAR, " +
 				COL_GENRE + " VARCHAR, " +
 				COL_DURATION + " INTEGER, " +
-				COL_ART + " BLOB " +
+				COL_ART + " BLOB, " +
+				COL_DIR + " VARCHAR " +
 				");");
+
+		if (v < SCHEMA_VERSION) {
+			try {
+				if (v < 176) upgradeTable();
+				else if ((v < 178) && (detectFts(FTS_TABLE) == FTS_4)) recreateFts();
+				createIndexTable();
+				ps.applyIntPref(version, SCHEMA_VERSION);
+			} catch (Throwable ex) {
+				Log.e(ex, "Failed to upgrade metadata table - recreating");
+				db.execSQL("DROP TABLE IF EXISTS " + INDEX_FTS_TABLE);
+				db.execSQL("DROP TABLE IF EXISTS " + INDEX_TABLE);
+				db.execSQL("DROP TABLE IF EXISTS " + FTS_TABLE);
+				db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+				ps.applyIntPref(version, 0);
+				createTable();
+				return;
+			}
+		}
+
+		fts = detectFts(FTS_TABLE);
+		indexFts = detectFts(INDEX_FTS_TABLE);
+	}
+
+	private void upgradeTable() {
+		assert db != null;
+		boolean hasDir = false;
+
+		try (Cursor c = db.rawQuery("PRAGMA table_info(" + TABLE + ")", null)) {
+			while (c.moveToNext()) {
+				if (COL_DIR.equals(c.getString(1))) {
+					hasDir = true;
+					break;
+				}
+			}
+		}
+
+		db.beginTransaction();
+
+		try {
+			if (!hasDir) {
+				db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_DIR + " VARCHAR");
+
+				try (Cursor c = db.query(TABLE, new String[]{"rowid", COL_ID}, null, null, null, null, null);
+						 SQLiteStatement update = db.compileStatement("UPDATE " + TABLE + " SET " +
+								 COL_DIR + " = ? WHERE rowid = ?")) {
+					while (c.moveToNext()) {
+						String dir = idToDir(c.getString(1));
+						if (dir == null) continue;
+						update.bindString(1, dir);
+						update.bindLong(2, c.getLong(0));
+						update.executeUpdateDelete();
+					}
+				}
+			}
+
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + DIR_INDEX + " ON " + TABLE + "(" + COL_DIR + ")");
+			createFts(TABLE, FTS_TABLE, FTS_COLUMNS);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	// The FTS4 tables, created before version 178, use the ASCII only tokenizer
+	private void recreateFts() {
+		assert db != null;
+		db.beginTransaction();
+
+		try {
+			createFts(TABLE, FTS_TABLE, FTS_COLUMNS);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	private void createIndexTable() {
+		assert db != null;
+		db.beginTransaction();
+
+		try {
+			db.execSQL("DROP TABLE IF EXISTS " + INDEX_TABLE);
+			db.execSQL("CREATE TABLE " + INDEX_TABLE + "(" +
+					COL_ID + " VARCHAR NOT NULL UNIQUE, " +
+					COL_PARENT + " VARCHAR NOT NULL, " +
+					COL_TITLE + " VARCHAR, " +
+					COL_ARTIST + " VARCHAR, " +
+					COL_ALBUM + " VARCHAR " +
+					");");
+			db.execSQL("CREATE INDEX " + INDEX_PARENT_INDEX + " ON " + INDEX_TABLE + "(" + COL_PARENT + ")");
+			createFts(INDEX_TABLE, INDEX_FTS_TABLE, INDEX_FTS_COLUMNS);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	// FTS5 is not compiled into the platform SQLite on all devices, FTS4 is used as a fallback
+	private void createFts(String table, String ftsTable, String[] columns) {
+		assert db != null;
+		String cols = ftsColumns(columns, "");
+		db.execSQL("DROP TABLE IF EXISTS " + ftsTable);
+
+		try {
+			db.execSQL("CREATE VIRTUAL TABLE " + ftsTable + " USING fts5(" + cols +
+					", content='" + table + "')");
+			createFtsTriggers(FTS_5, table, ftsTable, columns);
+		} catch (Exception ex) {
+			Log.i("FTS5 is not available, using FTS4: ", ex);
+			// The default tokenizer folds the case of the ASCII characters only
+			db.execSQL("CREATE VIRTUAL TABLE " + ftsTable + " USING fts4(" + cols +
+					", content='" + table + "', tokenize=unicode61)");
+			createFtsTriggers(FTS_4, table, ftsTable, columns);
+		}
+
+		db.execSQL("INSERT INTO " + ftsTable + "(" + ftsTable + ") VALUES('rebuild')");
+	}
+
+	private void createFtsTriggers(byte fts, String table, String ftsTable, String[] columns) {
+		assert db != null;
+		String cols = ftsColumns(columns, "");
+		String newCols = ftsColumns(columns, "new.");
+		String oldCols = ftsColumns(columns, "old.");
+		String insert = "INSERT INTO " + ftsTable + "(rowid, " + cols + ") VALUES(new.rowid, " +
+				newCols + ");";
+		String delete = (fts == FTS_5)
+				? "INSERT INTO " + ftsTable + "(" + ftsTable + ", rowid, " + cols +
+				") VALUES('delete', old.rowid, " + oldCols + ");"
+				: "DELETE FROM " + ftsTable + " WHERE docid = old.rowid;";
+		// INSERT OR REPLACE does not fire the delete triggers, thus the replaced row is
+		// removed from the index before the insertion
+		String replace = (fts == FTS_5)
+				? "INSERT INTO " + ftsTable + "(" + ftsTable + ", rowid, " + cols + ") SELECT 'delete', rowid, " +
+				cols + " FROM " + table + " WHERE " + COL_ID + " = new." + COL_ID + ";"
+				: "DELETE FROM " + ftsTable + " WHERE docid IN (SELECT rowid FROM " + table +
+				" WHERE " + COL_ID + " = new." + COL_ID + ");";
+
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "Bi BEFORE INSERT ON " + table +
+				" BEGIN " + replace + " END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "Ai AFTER INSERT ON " + table +
+				" BEGIN " + insert + " END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "Bd BEFORE DELETE ON " + table +
+				" BEGIN " + delete + " END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "Bu BEFORE UPDATE OF " + cols +
+				" ON " + table + " BEGIN " + delete + " END");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "Au AFTER UPDATE OF " + cols +
+				" ON " + table + " BEGIN " + insert + " END");
+	}
+
+	private static String ftsColumns(String[] columns, String prefix) {
+		StringBuilder sb = new StringBuilder(128);
+		for (String c : columns) {
+			if (sb.length() != 0) sb.append(", ");
+			sb.append(prefix).append(c);
+		}
+		return sb.toString();
+	}
+
+	private byte detectFts(String ftsTable) {
+		assert db != null;
+
+		try (Cursor c = db.rawQuery("SELECT sql FROM sqlite_master WHERE name = ?",
+				new String[]{ftsTable})) {
+			if (!c.moveToFirst()) return FTS_NONE;
+			String sql = c.getString(0);
+			if (sql == null) return FTS_NONE;
+			sql = sql.toLowerCase();
+			return sql.contains("fts5") ? FTS_5 : sql.contains("fts4") ? FTS_4 : FTS_NONE;
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to detect full text search table");
+			return FTS_NONE;
+		}
+	}
+
+	/**
+	 * A set of serial queues sharing the extraction of a single file system. Each task is
+	 * assigned to the least loaded queue, thus one slow resource does not stall the others.
+	 */
+	private static final class ScanQueue {
+		private final PromiseQueue[] queues;
+		private final AtomicInteger[] load;
+
+		ScanQueue(int concurrency) {
+			queues = new PromiseQueue[concurrency];
+			load = new AtomicInteger[concurrency];
+
+			for (int i = 0; i < concurrency; i++) {
+				queues[i] = new PromiseQueue(App.get().getExecutor());
+				load[i] = new AtomicInteger();
+			}
+		}
+
+		FutureSupplier<MetadataBuilder> enqueue(Supplier<MetadataBuilder> task) {
+			int idx = 0;
+
+			for (int i = 1, min = load[0].get(); i < load.length; i++) {
+				int l = load[i].get();
+				if (l < min) {
+					min = l;
+					idx = i;
+				}
+			}
+
+			AtomicInteger l = load[idx];
+			l.incrementAndGet();
+			return queues[idx].enqueue(task::get).onCompletion((r, err) -> l.decrementAndGet());
+		}
 	}
 
 	private static final class MetaBuilder extends MetadataBuilder {
 		private final ContentValues values = new ContentValues(10);
 		boolean durationSet;
 		Bitmap image;
+		byte[] imageData;
 
 		@Override
 		public void putString(String k, String v) {
@@ -576,16 +1155,35 @@ public class MetadataRetriever implements Closeable {
 			else super.putBitmap(key, value);
 		}
 
+		@Override
+		public void putImageData(byte[] data) {
+			imageData = data;
+		}
+
 		void setId(String id) {
 			values.put(COL_ID, id);
+			values.put(COL_DIR, idToDir(id));
+		}
+
+		String getId() {
+			return values.getAsString(COL_ID);
 		}
 
 		void setArt(byte[] art) {
 			values.put(COL_ART, art);
 		}
 
-		void insert(SQLiteDatabase db) {
-			db.insert(TABLE, null, values);
+		void bind(SQLiteStatement stmt) {
+			stmt.clearBindings();
+
+			for (int i = 0; i < INSERT_COLUMNS.length; i++) {
+				Object v = values.get(INSERT_COLUMNS[i]);
+				if (v == null) stmt.bindNull(i + 1);
+				else if (v instanceof String) stmt.bindString(i + 1, (String) v);
+				else if (v instanceof Long) stmt.bindLong(i + 1, (Long) v);
+				else if (v instanceof byte[]) stmt.bindBlob(i + 1, (byte[]) v);
+				else stmt.bindString(i + 1, v.toString());
+			}
 		}
 	}
 }
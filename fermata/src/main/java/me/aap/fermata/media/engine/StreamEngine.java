@@ -331,6 +331,11 @@ public class StreamEngine implements MediaEngine, MediaEngine.Listener {
 		return eng.getId();
 	}
 
+	@Override
+	public int getRebufferCount() {
+		return eng.getRebufferCount();
+	}
+
 	@Override
 	public void setVideoView(VideoView view) {
 		eng.setVideoView(videoView = view);
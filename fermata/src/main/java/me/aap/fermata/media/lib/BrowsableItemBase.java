@@ -7,7 +7,6 @@ import static me.aap.utils.async.Completed.completedVoid;
 import static me.aap.utils.collection.CollectionUtils.filterMap;
 import static me.aap.utils.collection.NaturalOrderComparator.compareNatural;
 
-import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
@@ -16,12 +15,15 @@ import androidx.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import me.aap.fermata.R;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -96,7 +98,10 @@ public abstract class BrowsableItemBase extends ItemBase implements BrowsableIte
 			if (list.isEmpty()) return completedEmptyList();
 
 			load.setProgress(list, 1, 2);
-			return loadMetadata(list).then(v -> sortChildren(list));
+			return loadMetadata(list).then(v -> {
+				if (isChildrenIndexed()) getLib().getMetadataRetriever().indexChildren(this, list);
+				return sortChildren(list);
+			});
 		}).thenReplaceOrClear(CHILDREN, this, load);
 
 		c = CHILDREN.get(this);
@@ -189,6 +194,13 @@ public abstract class BrowsableItemBase extends ItemBase implements BrowsableIte
 		return null;
 	}
 
+	/**
+	 * Whether the children are added to the library search index.
+	 */
+	protected boolean isChildrenIndexed() {
+		return true;
+	}
+
 	@NonNull
 	@Override
 	public FutureSupplier<Void> updateTitles() {
@@ -370,8 +382,8 @@ public abstract class BrowsableItemBase extends ItemBase implements BrowsableIte
 		if (i instanceof BrowsableItem) {
 			return i.getName();
 		} else if (i instanceof PlayableItem) {
-			MediaMetadataCompat md = ((PlayableItem) i).getMediaData().peek();
-			String title = (md != null) ? md.getString(MediaMetadataCompat.METADATA_KEY_TITLE) : null;
+			MediaMeta md = ((PlayableItem) i).getMediaData().peek();
+			String title = (md != null) ? md.getTitle() : null;
 			if (title != null) return title;
 		}
 
@@ -381,9 +393,40 @@ public abstract class BrowsableItemBase extends ItemBase implements BrowsableIte
 	private static final class LoadChildren extends Promise<List<Item>> {
 	}
 
+	/**
+	 * The item to index map is built on the first lookup and rebuilt if the list is modified.
+	 */
 	private static final class SortedItems extends ArrayList<Item> {
+		private Map<Object, Integer> index;
+		private int indexModCount;
+
 		public SortedItems(@NonNull Collection<? extends Item> c) {
 			super(c);
 		}
+
+		@Override
+		public int indexOf(@Nullable Object o) {
+			if (o == null) return super.indexOf(null);
+			Integer i;
+
+			synchronized (this) {
+				if ((index == null) || (indexModCount != modCount)) {
+					Map<Object, Integer> m = new HashMap<>((int) (size() / 0.75f) + 1);
+					// Reverse order - the first occurrence wins
+					for (int n = size() - 1; n >= 0; n--) m.put(get(n), n);
+					index = m;
+					indexModCount = modCount;
+				}
+
+				i = index.get(o);
+			}
+
+			return (i == null) ? -1 : i;
+		}
+
+		@Override
+		public boolean contains(@Nullable Object o) {
+			return indexOf(o) != -1;
+		}
 	}
 }
@@ -4,6 +4,7 @@ import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.NonNull;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -72,7 +73,7 @@ class CueTrackItem extends PlayableItemBase {
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> buildMeta(MetadataBuilder meta) {
+	protected FutureSupplier<MediaMeta> buildMeta(MetadataBuilder meta) {
 		meta.putString(MediaMetadataCompat.METADATA_KEY_TITLE, title);
 		meta.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration);
 
@@ -25,6 +25,7 @@ import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Folders;
 import me.aap.fermata.media.lib.MediaLib.Item;
 import me.aap.fermata.media.pref.FoldersPrefs;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.fermata.vfs.FermataVfsManager;
 import me.aap.fermata.vfs.m3u.M3uFile;
 import me.aap.fermata.vfs.m3u.M3uFileSystem;
@@ -127,6 +128,7 @@ class DefaultFolders extends BrowsableItemBase implements Folders, FoldersPrefs
 		String[] pref = getFoldersPref();
 		List<Item> children = new ArrayList<>(pref.length);
 		Set<String> names = new HashSet<>((int) (pref.length * 1.5));
+		StartupTracer.Span span = StartupTracer.beginAsync("DefaultFolders.listChildren");
 
 		return Async.forEach(rid -> vfsManager.getResource(rid)
 				.ifFail(fail -> {
@@ -155,7 +157,7 @@ class DefaultFolders extends BrowsableItemBase implements Folders, FoldersPrefs
 					if (i != null) children.add(i);
 					else Log.e("Unsupported resource: ", r);
 					return completedVoid();
-				}), pref).then(v -> completed(children));
+				}), pref).then(v -> completed(children)).onCompletion((r, f) -> span.end());
 	}
 
 	@Override
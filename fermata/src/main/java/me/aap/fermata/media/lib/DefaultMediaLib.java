@@ -50,6 +50,7 @@ import me.aap.utils.vfs.VirtualResource;
 public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Listener>
 		implements MediaLib, MediaLibPrefs, SharedPreferenceStore, PreferenceStore.Listener {
 	private static final String ID = "Root";
+	private static final int MAX_SEARCH_RESULTS = 50;
 	private final Context ctx;
 	private final SharedPreferences sharedPreferences;
 	private final DefaultFolders folders;
@@ -58,11 +59,13 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 	private final MediaEngineManager mediaEngineManager;
 	private final MetadataRetriever metadataRetriever;
 	private final Map<String, WeakRef<Item>> itemCache = new HashMap<>();
+	private final Map<String, FutureSupplier<? extends Item>> loading = new HashMap<>();
 	private final ReferenceQueue<Item> itemRefQueue = new ReferenceQueue<>();
+	private volatile RidCache ridCache;
 
 	public DefaultMediaLib(Context ctx) {
 		this.ctx = ctx;
-		sharedPreferences = ctx.getSharedPreferences("medialib", Context.MODE_PRIVATE);
+		sharedPreferences = SqlitePreferences.open(ctx, "medialib");
 		mediaEngineManager = new MediaEngineManager(this);
 		metadataRetriever = new MetadataRetriever(mediaEngineManager);
 		folders = new DefaultFolders(this);
@@ -101,6 +104,29 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 		Item i = getFromCache(id);
 		if (i != null) return completed(i);
 
+		// The concurrent requests of the same item, i.e. the common parents, share the same future
+		synchronized (loading) {
+			FutureSupplier<? extends Item> f = loading.get(id);
+			if (f != null) return f;
+		}
+
+		FutureSupplier<? extends Item> f = loadItem(id);
+		if (f.isDone()) return f;
+
+		synchronized (loading) {
+			loading.put(id, f);
+		}
+
+		f.onCompletion((r, err) -> {
+			synchronized (loading) {
+				if (loading.get(id) == f) loading.remove(id);
+			}
+		});
+
+		return f;
+	}
+
+	private FutureSupplier<? extends Item> loadItem(String id) {
 		int idx = id.indexOf(':');
 
 		if (idx == -1) {
@@ -170,7 +196,8 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 	}
 
 	@Override
-	public void getChildren(String parentMediaId, MediaLibResult<List<MediaItem>> result) {
+	public void getChildren(String parentMediaId, int offset, int limit,
+													MediaLibResult<List<MediaItem>> result) {
 		result.detach();
 
 		if (getRootId().equals(parentMediaId)) {
@@ -182,11 +209,13 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 					.then(v -> getFolders().asMediaItem()).onSuccess(items::add)
 					.then(v -> getFavorites().asMediaItem()).onSuccess(items::add)
 					.then(v -> getPlaylists().asMediaItem()).onSuccess(items::add)
-					.onCompletion((r, f) -> result.sendResult(items, null)).onFailure(this::log);
+					.onCompletion((r, f) -> result.sendResult(page(items, offset, limit), null))
+					.onFailure(this::log);
 		} else {
 			getItem(parentMediaId).then(i -> {
 				if (i instanceof BrowsableItem) {
-					return ((BrowsableItem) i).getChildren().then(children -> {
+					return ((BrowsableItem) i).getChildren().then(all -> {
+						List<Item> children = page(all, offset, limit);
 						if (children.isEmpty()) return completedEmptyList();
 						List<MediaItem> items = new ArrayList<>(children.size());
 						return Async.forEach(c -> c.asMediaItem().map(items::add), children).map(r -> items);
@@ -198,6 +227,13 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 		}
 	}
 
+	private static <T> List<T> page(List<T> list, int offset, int limit) {
+		int size = list.size();
+		if ((offset <= 0) && (limit >= size)) return list;
+		if (offset >= size) return Collections.emptyList();
+		return list.subList(Math.max(offset, 0), (int) Math.min(size, (long) offset + limit));
+	}
+
 	@Override
 	public void getItem(String itemId, MediaLibResult<MediaItem> result) {
 		result.detach();
@@ -209,18 +245,15 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 
 	@Override
 	public void search(String query, MediaLibResult<List<MediaItem>> result) {
-		getMetadataRetriever().queryId(query).onCompletion((id, err) -> {
-			if (id != null) {
-				getItem(id).onCompletion((i, err1) -> {
-					if (i == null) result.sendResult(Collections.emptyList(), null);
-					else i.asMediaItem().onCompletion((mi, err2) ->
-							result.sendResult((mi == null) ? Collections.emptyList()
-									: Collections.singletonList(mi), null));
-				});
-			} else {
-				result.sendResult(Collections.emptyList(), null);
-			}
-		});
+		result.detach();
+		getMetadataRetriever().queryIds(query, MAX_SEARCH_RESULTS).then(ids -> {
+			if (ids.isEmpty()) return completedEmptyList();
+			List<MediaItem> items = new ArrayList<>(ids.size());
+			// The ids are ranked by relevance, preserve the order
+			return Async.forEach(id -> getItem(id).then(i -> (i != null) ? i.asMediaItem() : completedNull())
+					.ifNotNull(items::add), ids).map(v -> items);
+		}).onFailure(this::log).onCompletion((r, err) ->
+				result.sendResult((r == null) ? Collections.emptyList() : r, null));
 	}
 
 	@NonNull
@@ -373,6 +406,18 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 		}
 	}
 
+	RidCache getRidCache() {
+		RidCache c = ridCache;
+
+		if (c == null) {
+			synchronized (this) {
+				if ((c = ridCache) == null) ridCache = c = new RidCache(this);
+			}
+		}
+
+		return c;
+	}
+
 	public Item getFromCache(String id) {
 		synchronized (itemCache) {
 			clearRefs(itemCache, itemRefQueue);
@@ -398,7 +443,8 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 	public void cleanUpPrefs() {
 		metadataRetriever.getBitmapCache().cleanUpPrefs();
 		SharedPreferences prefs = getSharedPreferences();
-		List<String> keys = new ArrayList<>(prefs.getAll().keySet());
+		List<String> keys = new ArrayList<>((prefs instanceof SqlitePreferences)
+				? ((SqlitePreferences) prefs).getKeys() : prefs.getAll().keySet());
 		Set<String> names = new HashSet<>();
 		getPrefNames(PlayableItemPrefs.class, names);
 		getPrefNames(BrowsableItemPrefs.class, names);
@@ -431,6 +477,24 @@ public class DefaultMediaLib extends BasicEventBroadcaster<PreferenceStore.Liste
 		}, keys);
 	}
 
+	/**
+	 * Write the preferences to the shared preferences XML file, so it could be exported.
+	 */
+	public void exportPrefs() {
+		if (sharedPreferences instanceof SqlitePreferences) {
+			((SqlitePreferences) sharedPreferences).exportToXml();
+		}
+	}
+
+	/**
+	 * Remove the XML file, written by {@link #exportPrefs()}.
+	 */
+	public void exportPrefsDone() {
+		if (sharedPreferences instanceof SqlitePreferences) {
+			((SqlitePreferences) sharedPreferences).clearXml();
+		}
+	}
+
 	private static void getPrefNames(Class<?> c, Set<String> names) {
 		try {
 			for (Field f : c.getDeclaredFields()) {
@@ -5,7 +5,6 @@ import static me.aap.utils.concurrent.ConcurrentUtils.ensureMainThread;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
@@ -15,6 +14,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -90,7 +90,7 @@ public class ExportedItem extends PlayableItemBase {
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> loadMeta() {
+	protected FutureSupplier<MediaMeta> loadMeta() {
 		return orig.getMediaData();
 	}
 
@@ -100,7 +100,7 @@ public class ExportedItem extends PlayableItemBase {
 	}
 
 	@Override
-	protected String buildSubtitle(MediaMetadataCompat md, SharedTextBuilder tb) {
+	protected String buildSubtitle(MediaMeta md, SharedTextBuilder tb) {
 		return orig.buildSubtitle(md, tb);
 	}
 
@@ -111,12 +111,12 @@ public class ExportedItem extends PlayableItemBase {
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> buildMeta(MetadataBuilder meta) {
+	protected FutureSupplier<MediaMeta> buildMeta(MetadataBuilder meta) {
 		return orig.buildMeta(meta);
 	}
 
 	@Override
-	protected boolean isMediaDataValid(FutureSupplier<MediaMetadataCompat> d) {
+	protected boolean isMediaDataValid(FutureSupplier<MediaMeta> d) {
 		return orig.isMediaDataValid(d);
 	}
 
@@ -12,6 +12,7 @@ import me.aap.utils.text.SharedTextBuilder;
 import me.aap.utils.vfs.VirtualResource;
 
 import static me.aap.fermata.util.Utils.isVideoFile;
+import static me.aap.utils.async.Completed.completed;
 import static me.aap.utils.async.Completed.completedNull;
 import static me.aap.utils.security.SecurityUtils.md5;
 import static me.aap.utils.text.TextUtils.appendHexString;
@@ -62,12 +63,19 @@ public class FileItem extends PlayableItemBase {
 		SharedTextBuilder tb = SharedTextBuilder.get();
 		tb.append(FolderItem.SCHEME).append(id, SCHEME.length(), idx);
 
+		RidCache rids = lib.getRidCache();
+		FutureSupplier<VirtualResource> cached = rids.get(id, name);
+
 		return lib.getItem(tb.releaseString()).then(i -> {
 			FolderItem parent = (FolderItem) i;
 			if (parent == null) return completedNull();
 
-			return parent.getResource().getChild(name).map(file -> (file != null) ?
-					create(id, parent, file, lib, isVideoFile(file.getName())) : null);
+			return cached.then(r -> (r != null) ? completed(r) : parent.getResource().getChild(name))
+					.map(file -> {
+						if (file == null) return null;
+						rids.put(id, file);
+						return create(id, parent, file, lib, isVideoFile(file.getName()));
+					});
 		});
 	}
 
@@ -65,14 +65,19 @@ public class FolderItem extends BrowsableItemBase implements FolderItemPrefs {
 		}
 
 		String name = id.substring(idx + 1);
+		RidCache rids = lib.getRidCache();
+		FutureSupplier<VirtualResource> cached = rids.get(id, name);
 
 		return lib.getItem(id.substring(0, idx)).then(i -> {
 			FolderItem parent = (FolderItem) i;
 			if (parent == null) return completedNull();
 
-			return parent.getResource().getChild(name).map(folder -> (folder instanceof VirtualFolder)
-					? FolderItem.create(id, parent, (VirtualFolder) folder, lib) : null
-			);
+			return cached.then(r -> (r instanceof VirtualFolder) ? completed(r)
+					: parent.getResource().getChild(name)).map(folder -> {
+				if (!(folder instanceof VirtualFolder)) return null;
+				rids.put(id, folder);
+				return FolderItem.create(id, parent, (VirtualFolder) folder, lib);
+			});
 		});
 	}
 
@@ -12,6 +12,7 @@ import me.aap.fermata.media.lib.MediaLib.Item;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.collection.CollectionUtils;
+import me.aap.utils.holder.IntHolder;
 import me.aap.utils.log.Log;
 import me.aap.utils.text.SharedTextBuilder;
 import me.aap.utils.vfs.VirtualResource;
@@ -47,18 +48,28 @@ public abstract class ItemContainer<C extends Item> extends BrowsableItemBase {
 		});
 	}
 
+	/**
+	 * All the items are requested at once, thus the items are resolved in parallel and the
+	 * requests of the common parents are shared. The order of the items is preserved.
+	 */
 	@SuppressWarnings({"rawtypes", "unchecked"})
 	FutureSupplier<List<Item>> listChildren(String[] ids) {
 		MediaLib lib = getLib();
+		List<FutureSupplier<? extends Item>> items = new ArrayList<>(ids.length);
+		for (String id : ids) items.add(lib.getItem(id));
+
 		List children = new ArrayList<>(ids.length);
-		return forEach(id -> lib.getItem(id)
-				.ifFail(err -> {
-					Log.e(err, "Failed to get item: ", id);
-					return null;
-				}).map(c -> {
-					if (c != null) children.add(toChildItem(c));
-					return null;
-				}), ids).map(v -> children);
+		IntHolder idx = new IntHolder();
+		return forEach(f -> {
+			String id = ids[idx.value++];
+			return f.ifFail(err -> {
+				Log.e(err, "Failed to get item: ", id);
+				return null;
+			}).map(c -> {
+				if (c != null) children.add(toChildItem(c));
+				return null;
+			});
+		}, items).map(v -> children);
 	}
 
 	public FutureSupplier<Void> addItem(C item) {
@@ -157,6 +168,12 @@ public abstract class ItemContainer<C extends Item> extends BrowsableItemBase {
 		return false;
 	}
 
+	// The children are copies of the items, already indexed elsewhere
+	@Override
+	protected boolean isChildrenIndexed() {
+		return false;
+	}
+
 	public boolean isChildItemId(String id) {
 		return id.startsWith(getScheme());
 	}
@@ -43,6 +43,7 @@ import me.aap.utils.vfs.VirtualResource;
  */
 public class M3uItem extends BrowsableItemBase {
 	public static final String SCHEME = "m3u";
+	private static final int RESOLVE_BATCH = 256;
 	private FutureSupplier<Uri> iconUri;
 	private final FutureRef<Data> data = new FutureRef<Data>() {
 		@Override
@@ -67,7 +68,75 @@ public class M3uItem extends BrowsableItemBase {
 		List<M3uTrackItem> tracks = new ArrayList<>();
 		String idPath = id.substring(getScheme().length());
 		VfsManager vfs = getLib().getVfsManager();
+		byte m3uType = isVideo(m3uFile) ? M3uTrackItem.TYPE_VIDEO : M3uTrackItem.TYPE_UNKNOWN;
+		PlaylistCache cache = new PlaylistCache(id, m3uFile, m3uType);
+		Playlist pl = cache.load();
+
+		if (pl == null) {
+			pl = readPlaylist(m3uFile, m3uType);
+			if (pl.complete) cache.save(pl);
+		}
+
+		List<Entry> entries = pl.entries;
+		if (pl.tvgUrl != null) setTvgUrl(pl.tvgUrl);
+
+		// Resolve the locations in parallel, preserving the order of the tracks
+		List<FutureSupplier<? extends VirtualResource>> resolved = new ArrayList<>(RESOLVE_BATCH);
+
+		for (int off = 0, n = entries.size(); off < n; off += RESOLVE_BATCH) {
+			int end = Math.min(n, off + RESOLVE_BATCH);
+			resolved.clear();
+
+			for (int i = off; i < end; i++) {
+				resolved.add(vfs.resolve(entries.get(i).location, dir));
+			}
+
+			for (int i = off; i < end; i++) {
+				VirtualResource file = resolved.get(i - off).get(null);
+				if (file == null) continue;
+				Entry e = entries.get(i);
+
+				if (e.group == null) {
+					tracks.add(createTrack(this, -1, tracks.size(), idPath, file, e.name, e.album,
+							e.artist, e.genre, e.logo, e.tvgId, e.tvgName, e.duration, e.type, e.catchup,
+							e.catchupDays, e.catchupSource));
+				} else {
+					M3uGroupItem g = groups.get(e.group);
+
+					if (g == null) {
+						g = createGroup(idPath, e.group, groups.size());
+						groups.put(e.group, g);
+					}
+
+					g.tracks.add(createTrack(g, g.getGroupId(), g.tracks.size(), idPath, file, e.name,
+							e.album, e.artist, e.genre, e.logo, e.tvgId, e.tvgName, e.duration, e.type,
+							e.catchup, e.catchupDays, e.catchupSource));
+				}
+			}
+		}
 
+		int ngroups = groups.size();
+		int ntracks = tracks.size();
+		List<Item> children = new ArrayList<>(ngroups + ntracks);
+
+		if (ngroups > 0) {
+			for (M3uGroupItem g : groups.values()) {
+				g.init();
+				children.add(g);
+			}
+		}
+
+		if (ntracks > 0) {
+			children.addAll(tracks);
+		}
+
+		String title = (pl.name == null) ? m3uFile.getName() : pl.name;
+		String subtitle = createSubtitle(ngroups, ntracks);
+		return new Data(title, subtitle, children, pl.cover);
+	}
+
+	private Playlist readPlaylist(VirtualFile m3uFile, byte m3uType) {
+		List<Entry> entries = new ArrayList<>();
 		String m3uName = null;
 		String m3uAlbum = null;
 		String m3uArtist = null;
@@ -77,7 +146,7 @@ public class M3uItem extends BrowsableItemBase {
 		String catchup = null;
 		String catchupDays = null;
 		String catchupSource = null;
-		byte m3uType = isVideo(m3uFile) ? M3uTrackItem.TYPE_VIDEO : M3uTrackItem.TYPE_UNKNOWN;
+		String tvgUrl = null;
 
 		String name = null;
 		String group = null;
@@ -93,6 +162,7 @@ public class M3uItem extends BrowsableItemBase {
 		long duration = 0;
 		byte type = M3uTrackItem.TYPE_UNKNOWN;
 		boolean first = true;
+		boolean complete = false;
 
 		try (BufferedReader r = new BufferedReader(createReader(m3uFile))) {
 			read:
@@ -126,7 +196,7 @@ public class M3uItem extends BrowsableItemBase {
 							case "url-tvg":
 							case "tvg-url":
 							case "x-tvg-url":
-								setTvgUrl(trim(l.substring(off, i)));
+								tvgUrl = trim(l.substring(off, i));
 								break;
 							case "catchup":
 								catchup = trackCatchup = trim(l.substring(off, i));
@@ -236,33 +306,14 @@ public class M3uItem extends BrowsableItemBase {
 					continue;
 				}
 
-				VirtualResource file = vfs.resolve(l, dir).get(null);
-
-				if (file != null) {
-					if (album == null) album = m3uAlbum;
-					if (artist == null) artist = m3uArtist;
-					if (genre == null) genre = m3uGenre;
-					if (type == 0) type = m3uType;
-					if (logo == null) logo = cover;
-					else if ((logoUrlBase != null) && !logo.contains("://")) logo = logoUrlBase + '/' + logo;
-
-					if (group == null) {
-						tracks.add(createTrack(this, -1, tracks.size(), idPath, file, name, album, artist,
-								genre, logo, tvgId, tvgName, duration, type, trackCatchup, trackCatchupDays,
-								trackCatchupSource));
-					} else {
-						M3uGroupItem g = groups.get(group);
-
-						if (g == null) {
-							g = createGroup(idPath, group, groups.size());
-							groups.put(group, g);
-						}
-
-						g.tracks.add(createTrack(g, g.getGroupId(), g.tracks.size(), idPath, file, name, album,
-								artist, genre, logo, tvgId, tvgName, duration, type, trackCatchup,
-								trackCatchupDays, trackCatchupSource));
-					}
-				}
+				if (album == null) album = m3uAlbum;
+				if (artist == null) artist = m3uArtist;
+				if (genre == null) genre = m3uGenre;
+				if (type == 0) type = m3uType;
+				if (logo == null) logo = cover;
+				else if ((logoUrlBase != null) && !logo.contains("://")) logo = logoUrlBase + '/' + logo;
+				entries.add(new Entry(l, name, group, album, artist, genre, logo, tvgId, tvgName,
+						duration, type, trackCatchup, trackCatchupDays, trackCatchupSource));
 
 				name = group = album = artist = genre = logo = tvgId = tvgName = null;
 				trackCatchup = catchup;
@@ -271,28 +322,13 @@ public class M3uItem extends BrowsableItemBase {
 				duration = 0;
 				type = 0;
 			}
+
+			complete = true;
 		} catch (Exception ex) {
 			Log.e(ex, "Failed to parse m3u file: ", m3uFile);
 		}
 
-		int ngroups = groups.size();
-		int ntracks = tracks.size();
-		List<Item> children = new ArrayList<>(ngroups + ntracks);
-
-		if (ngroups > 0) {
-			for (M3uGroupItem g : groups.values()) {
-				g.init();
-				children.add(g);
-			}
-		}
-
-		if (ntracks > 0) {
-			children.addAll(tracks);
-		}
-
-		String title = (m3uName == null) ? m3uFile.getName() : m3uName;
-		String subtitle = createSubtitle(ngroups, ntracks);
-		return new Data(title, subtitle, children, cover);
+		return new Playlist(m3uName, cover, tvgUrl, entries, complete);
 	}
 
 	@NonNull
@@ -515,6 +551,58 @@ public class M3uItem extends BrowsableItemBase {
 		return (s = s.trim()).isEmpty() ? null : s;
 	}
 
+	static final class Playlist {
+		final String name;
+		final String cover;
+		final String tvgUrl;
+		final List<Entry> entries;
+		final boolean complete;
+
+		Playlist(String name, String cover, String tvgUrl, List<Entry> entries, boolean complete) {
+			this.name = name;
+			this.cover = cover;
+			this.tvgUrl = tvgUrl;
+			this.entries = entries;
+			this.complete = complete;
+		}
+	}
+
+	static final class Entry {
+		final String location;
+		final String name;
+		final String group;
+		final String album;
+		final String artist;
+		final String genre;
+		final String logo;
+		final String tvgId;
+		final String tvgName;
+		final long duration;
+		final byte type;
+		final String catchup;
+		final String catchupDays;
+		final String catchupSource;
+
+		Entry(String location, String name, String group, String album, String artist, String genre,
+					String logo, String tvgId, String tvgName, long duration, byte type, String catchup,
+					String catchupDays, String catchupSource) {
+			this.location = location;
+			this.name = name;
+			this.group = group;
+			this.album = album;
+			this.artist = artist;
+			this.genre = genre;
+			this.logo = logo;
+			this.tvgId = tvgId;
+			this.tvgName = tvgName;
+			this.duration = duration;
+			this.type = type;
+			this.catchup = catchup;
+			this.catchupDays = catchupDays;
+			this.catchupSource = catchupSource;
+		}
+	}
+
 	protected static final class Data {
 		protected final String name;
 		protected final String subtitle;
@@ -10,6 +10,7 @@ import android.support.v4.media.MediaMetadataCompat;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -125,14 +126,14 @@ public class M3uTrackItem extends PlayableItemBase {
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> loadMeta() {
+	protected FutureSupplier<MediaMeta> loadMeta() {
 		if (getResource().isLocalFile()) return super.loadMeta();
 		return buildMeta(new MetadataBuilder());
 	}
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> buildMeta(MetadataBuilder meta) {
+	protected FutureSupplier<MediaMeta> buildMeta(MetadataBuilder meta) {
 		meta.putString(MediaMetadataCompat.METADATA_KEY_TITLE, getName());
 		if (album != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ALBUM, album);
 		if (artist != null) meta.putString(MediaMetadataCompat.METADATA_KEY_ARTIST, artist);
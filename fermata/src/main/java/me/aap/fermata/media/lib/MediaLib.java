@@ -1,6 +1,5 @@
 package me.aap.fermata.media.lib;
 
-import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI;
 import static java.util.Objects.requireNonNull;
 import static me.aap.fermata.media.pref.BrowsableItemPrefs.SORT_MASK_ALL;
 import static me.aap.fermata.media.pref.BrowsableItemPrefs.SORT_MASK_NAME_RND;
@@ -16,7 +15,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.media.MediaBrowserCompat.MediaItem;
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 
 import androidx.annotation.DrawableRes;
@@ -34,6 +32,7 @@ import java.util.Queue;
 import me.aap.fermata.R;
 import me.aap.fermata.media.engine.BitmapCache;
 import me.aap.fermata.media.engine.MediaEngineManager;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataRetriever;
 import me.aap.fermata.media.pref.BrowsableItemPrefs;
 import me.aap.fermata.media.pref.MediaLibPrefs;
@@ -95,11 +94,22 @@ public interface MediaLib {
 		return getBitmapCache().getBitmap(getContext(), uri, cache, resize);
 	}
 
+	@NonNull
+	default FutureSupplier<Bitmap> getBitmap(String uri, boolean cache, boolean resize,
+																					 boolean priority) {
+		return getBitmapCache().getBitmap(getContext(), uri, cache, resize, priority);
+	}
+
 	@NonNull
 	default FutureSupplier<Bitmap> getBitmap(String uri) {
 		return getBitmap(uri, true, false);
 	}
 
+	@Nullable
+	default Bitmap getCachedBitmap(String uri, boolean resize) {
+		return getBitmapCache().getCachedBitmap(getContext(), uri, resize);
+	}
+
 	@NonNull
 	FutureSupplier<? extends Item> getItem(CharSequence id);
 
@@ -116,12 +126,26 @@ public interface MediaLib {
 
 	void setLastPlayed(PlayableItem i, long position);
 
-	void getChildren(String parentMediaId, MediaLibResult<List<MediaItem>> result);
+	/**
+	 * Returns the children in the range [offset, offset + limit). Only the items in the range are
+	 * converted to MediaItem.
+	 */
+	void getChildren(String parentMediaId, int offset, int limit,
+									 MediaLibResult<List<MediaItem>> result);
+
+	default void getChildren(String parentMediaId, MediaLibResult<List<MediaItem>> result) {
+		getChildren(parentMediaId, 0, Integer.MAX_VALUE, result);
+	}
 
 	default void getChildren(String parentMediaId, MediaBrowserServiceCompat.Result<List<MediaItem>> result) {
 		getChildren(parentMediaId, new MediaLibResult.Wrapper<>(result));
 	}
 
+	default void getChildren(String parentMediaId, int offset, int limit,
+													 MediaBrowserServiceCompat.Result<List<MediaItem>> result) {
+		getChildren(parentMediaId, offset, limit, new MediaLibResult.Wrapper<>(result));
+	}
+
 	void getItem(String itemId, MediaLibResult<MediaItem> result);
 
 	default void getItem(String itemId, MediaBrowserServiceCompat.Result<MediaItem> result) {
@@ -318,7 +342,7 @@ public interface MediaLib {
 		}
 
 		@NonNull
-		FutureSupplier<MediaMetadataCompat> getMediaData();
+		FutureSupplier<MediaMeta> getMediaData();
 
 		@NonNull
 		@Override
@@ -347,7 +371,7 @@ public interface MediaLib {
 
 		@NonNull
 		default FutureSupplier<Long> getDuration() {
-			return getMediaData().map(md -> md.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+			return getMediaData().map(MediaMeta::getDuration);
 		}
 
 		@NonNull
@@ -372,7 +396,7 @@ public interface MediaLib {
 			if (!p.getPrefs().getShowTrackIconsPref()) return completedNull();
 
 			return getMediaData().then(md -> {
-				String u = md.getString(METADATA_KEY_ALBUM_ART_URI);
+				String u = md.getImageUri();
 				return (u != null) ? completed(Uri.parse(u)) : p.getIconUri();
 			});
 		}
@@ -543,6 +567,7 @@ public interface MediaLib {
 	}
 
 	interface BrowsableItem extends Item {
+		int QUEUE_WINDOW = 100;
 
 		@NonNull
 		BrowsableItemPrefs getPrefs();
@@ -619,14 +644,30 @@ public interface MediaLib {
 
 		@NonNull
 		default FutureSupplier<List<QueueItem>> getQueue() {
+			return getQueue(null);
+		}
+
+		/**
+		 * Returns a window of QUEUE_WINDOW items around the current item, or from the beginning
+		 * of the list, if the current item is null or not found. The queue ids are the indexes of
+		 * the children.
+		 */
+		@NonNull
+		default FutureSupplier<List<QueueItem>> getQueue(@Nullable Item current) {
 			return getChildren().then(list -> {
-				if (list.isEmpty()) return Completed.completedEmptyList();
+				int size = list.size();
+				if (size == 0) return Completed.completedEmptyList();
+				int idx = (current == null) ? -1 : list.indexOf(current);
+				int start = (idx == -1) ? 0 : Math.max(0, idx - QUEUE_WINDOW / 2);
+				int end = Math.min(size, start + QUEUE_WINDOW);
+				start = Math.max(0, end - QUEUE_WINDOW);
 				IntHolder i = new IntHolder();
-				List<QueueItem> items = new ArrayList<>(list.size());
+				i.value = start;
+				List<QueueItem> items = new ArrayList<>(end - start);
 				return Async.forEach(c -> c.getMediaItemDescription().then(d -> {
 					items.add(new QueueItem(d, i.value++));
 					return completedVoid();
-				}), list).map(v -> items);
+				}), list.subList(start, end)).map(v -> items);
 			});
 		}
 
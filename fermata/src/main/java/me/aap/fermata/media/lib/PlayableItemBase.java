@@ -4,13 +4,12 @@ import static java.util.Objects.requireNonNull;
 import static me.aap.utils.async.Completed.completed;
 import static me.aap.utils.async.Completed.completedVoid;
 
-import android.support.v4.media.MediaMetadataCompat;
-
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
 
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
@@ -28,12 +27,12 @@ import me.aap.utils.vfs.VirtualResource;
  */
 public abstract class PlayableItemBase extends ItemBase implements PlayableItem, PlayableItemPrefs {
 	@SuppressWarnings({"unchecked", "rawtypes"})
-	private static final AtomicReferenceFieldUpdater<PlayableItemBase, FutureSupplier<MediaMetadataCompat>> META =
+	private static final AtomicReferenceFieldUpdater<PlayableItemBase, FutureSupplier<MediaMeta>> META =
 			(AtomicReferenceFieldUpdater) AtomicReferenceFieldUpdater.newUpdater(PlayableItemBase.class, FutureSupplier.class, "meta");
 
 	@Keep
 	@SuppressWarnings({"unused", "FieldCanBeLocal"})
-	private volatile FutureSupplier<MediaMetadataCompat> meta;
+	private volatile FutureSupplier<MediaMeta> meta;
 
 	public PlayableItemBase(String id, @NonNull BrowsableItem parent, @NonNull VirtualResource file) {
 		super(id, parent, file);
@@ -53,11 +52,11 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 
 	@NonNull
 	@Override
-	public FutureSupplier<MediaMetadataCompat> getMediaData() {
-		FutureSupplier<MediaMetadataCompat> m = META.get(this);
+	public FutureSupplier<MediaMeta> getMediaData() {
+		FutureSupplier<MediaMeta> m = META.get(this);
 		if (isMediaDataValid(m)) return m.fork();
 
-		Promise<MediaMetadataCompat> load = new Promise<>();
+		Promise<MediaMeta> load = new Promise<>();
 
 		for (; !META.compareAndSet(this, m, load); m = META.get(this)) {
 			if (m != null) return m.fork();
@@ -68,7 +67,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		return ((m != null) ? m : load).fork();
 	}
 
-	protected boolean isMediaDataValid(FutureSupplier<MediaMetadataCompat> d) {
+	protected boolean isMediaDataValid(FutureSupplier<MediaMeta> d) {
 		return d != null;
 	}
 
@@ -76,9 +75,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 	@Override
 	public FutureSupplier<Void> setDuration(long duration) {
 		return getMediaData().then(md -> {
-			MediaMetadataCompat.Builder b = new MediaMetadataCompat.Builder(md);
-			b.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration);
-			setMeta(completed(b.build()));
+			setMeta(completed(md.withDuration(duration)));
 			updateTitles();
 			getLib().getMetadataRetriever().updateDuration(this, duration);
 			return completedVoid();
@@ -92,12 +89,12 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 	}
 
 	@NonNull
-	protected FutureSupplier<MediaMetadataCompat> loadMeta() {
+	protected FutureSupplier<MediaMeta> loadMeta() {
 		return getLib().getMetadataRetriever().getMediaMetadata(this).then(this::buildMeta);
 	}
 
 	@NonNull
-	protected FutureSupplier<MediaMetadataCompat> buildMeta(MetadataBuilder meta) {
+	protected FutureSupplier<MediaMeta> buildMeta(MetadataBuilder meta) {
 		if (meta.getImageUri() == null) {
 			return getParent().getIconUri().then(icon -> {
 				if (icon != null) meta.setImageUri(icon.toString());
@@ -108,7 +105,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		}
 	}
 
-	protected void setMeta(FutureSupplier<MediaMetadataCompat> m) {
+	protected void setMeta(FutureSupplier<MediaMeta> m) {
 		reset();
 		META.set(this, m);
 		m.thenReplaceOrClear(META, this);
@@ -116,15 +113,15 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 
 	@SuppressWarnings("unchecked")
 	protected void setMeta(MetadataBuilder mb) {
-		FutureSupplier<MediaMetadataCompat> old = META.get(this);
+		FutureSupplier<MediaMeta> old = META.get(this);
 		if (isMediaDataValid(old)) return;
 
-		FutureSupplier<MediaMetadataCompat> m = buildMeta(mb);
+		FutureSupplier<MediaMeta> m = buildMeta(mb);
 
 		if (META.compareAndSet(this, old, m)) {
 			m.onSuccess(md -> {
 				if (!META.compareAndSet(this, m, completed(md))) return;
-				if (old instanceof Completable<?>) ((Completable<MediaMetadataCompat>) old).complete(md);
+				if (old instanceof Completable<?>) ((Completable<MediaMeta>) old).complete(md);
 			});
 		} else {
 			m.cancel();
@@ -165,7 +162,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		}
 	}
 
-	protected String buildSubtitle(MediaMetadataCompat md, SharedTextBuilder tb) {
+	protected String buildSubtitle(MediaMeta md, SharedTextBuilder tb) {
 		BrowsableItemPrefs prefs = requireNonNull(getParent()).getPrefs();
 		String s;
 
@@ -179,7 +176,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		}
 
 		if (prefs.getSubtitleAlbumPref()) {
-			s = md.getString(MediaMetadataCompat.METADATA_KEY_ALBUM);
+			s = md.getAlbum();
 			if ((s != null) && !s.isEmpty()) {
 				if (tb.length() != 0) tb.append(" - ");
 				tb.append(s);
@@ -187,8 +184,8 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		}
 
 		if (prefs.getSubtitleArtistPref()) {
-			s = md.getString(MediaMetadataCompat.METADATA_KEY_ARTIST);
-			if (s == null) s = md.getString(MediaMetadataCompat.METADATA_KEY_ALBUM_ARTIST);
+			s = md.getArtist();
+			if (s == null) s = md.getAlbumArtist();
 			if ((s != null) && !s.isEmpty()) {
 				if (tb.length() != 0) tb.append(" - ");
 				tb.append(s);
@@ -196,7 +193,7 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		}
 
 		if (prefs.getSubtitleDurationPref()) {
-			long dur = md.getLong(MediaMetadataCompat.METADATA_KEY_DURATION);
+			long dur = md.getDuration();
 			if (tb.length() != 0) tb.append(" - ");
 			TextUtils.timeToString(tb, (int) (dur / 1000));
 		}
@@ -204,10 +201,10 @@ public abstract class PlayableItemBase extends ItemBase implements PlayableItem,
 		return tb.toString();
 	}
 
-	private String getTitle(MediaMetadataCompat md) {
-		String title = md.getString(MediaMetadataCompat.METADATA_KEY_TITLE);
+	private String getTitle(MediaMeta md) {
+		String title = md.getTitle();
 		if ((title == null) || (title = title.trim()).isEmpty()) {
-			title = md.getString(MediaMetadataCompat.METADATA_KEY_DISPLAY_TITLE);
+			title = md.getDisplayTitle();
 			return ((title == null) || (title = title.trim()).isEmpty()) ? getResource().getName() : title;
 		}
 		return title;
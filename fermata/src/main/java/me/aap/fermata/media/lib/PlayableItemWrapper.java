@@ -3,12 +3,12 @@ package me.aap.fermata.media.lib;
 import android.net.Uri;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.fermata.media.pref.PlayableItemPrefs;
 import me.aap.utils.async.FutureSupplier;
@@ -137,7 +137,7 @@ public class PlayableItemWrapper implements PlayableItem {
 
 	@Override
 	@NonNull
-	public FutureSupplier<MediaMetadataCompat> getMediaData() {
+	public FutureSupplier<MediaMeta> getMediaData() {
 		return getItem().getMediaData();
 	}
 
@@ -0,0 +1,240 @@
+package me.aap.fermata.media.lib;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.aap.fermata.media.lib.M3uItem.Entry;
+import me.aap.fermata.media.lib.M3uItem.Playlist;
+import me.aap.fermata.vfs.m3u.M3uFile;
+import me.aap.utils.app.App;
+import me.aap.utils.log.Log;
+import me.aap.utils.vfs.VirtualFile;
+
+/**
+ * Binary snapshot of a parsed playlist. The snapshot is keyed by the length and the modification
+ * time of the source file and by the charset and the content encoding, used for parsing. Thus,
+ * it's invalidated automatically, when the file is modified or re-downloaded, or the encoding
+ * is changed. The strings are stored once in a string table and referenced by index.
+ * <p>
+ * File format: {@code <magic> <version> <id> <length> <mtime> <type> <charset> <encoding>
+ * <strings> <header> <entries>}
+ *
+ * @author Andrey Pavlenko
+ */
+public final class PlaylistCache {
+	private static final int MAGIC = 0x4D335543;
+	private static final int VERSION = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private final String id;
+	private final byte type;
+	private final long length;
+	private final long mtime;
+	private final String charset;
+	private final String encoding;
+	@Nullable
+	private final File file;
+
+	PlaylistCache(String id, VirtualFile src, byte type) {
+		this.id = id;
+		this.type = type;
+		String cs = null;
+		String enc = null;
+
+		if (src instanceof M3uFile) {
+			M3uFile m3u = (M3uFile) src;
+			cs = m3u.getCharacterEncoding();
+			enc = m3u.getContentEncoding();
+		}
+
+		charset = (cs == null) ? "" : cs;
+		encoding = (enc == null) ? "" : enc;
+		File local = src.getLocalFile();
+		long len;
+		long time;
+
+		if (local != null) {
+			len = local.length();
+			time = local.lastModified();
+		} else {
+			Long l = src.getLength().get(null);
+			Long t = src.getLastModified().get(null);
+			len = (l == null) ? 0 : l;
+			time = (t == null) ? 0 : t;
+		}
+
+		length = len;
+		mtime = time;
+		file = ((len > 0) && (time > 0)) ? getFile(src) : null;
+	}
+
+	/**
+	 * Delete the snapshot of the playlist, e.g. when the playlist is removed.
+	 */
+	public static void delete(VirtualFile src) {
+		File f = getFile(src);
+		if (f.isFile() && !f.delete()) Log.e("Failed to delete playlist cache ", f);
+	}
+
+	@Nullable
+	Playlist load() {
+		if ((file == null) || !file.isFile()) return null;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				 FileChannel ch = raf.getChannel()) {
+			MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if ((b.getInt() != MAGIC) || (b.getInt() != VERSION)) return null;
+			if (!id.equals(readString(b)) || (b.getLong() != length) || (b.getLong() != mtime)
+					|| (b.get() != type) || !charset.equals(readString(b))
+					|| !encoding.equals(readString(b))) {
+				return null;
+			}
+
+			String[] strings = new String[b.getInt()];
+			for (int i = 0; i < strings.length; i++) strings[i] = readString(b);
+
+			String name = str(strings, b.getInt());
+			String cover = str(strings, b.getInt());
+			String tvgUrl = str(strings, b.getInt());
+			int n = b.getInt();
+			List<Entry> entries = new ArrayList<>(n);
+
+			for (int i = 0; i < n; i++) {
+				entries.add(new Entry(str(strings, b.getInt()), str(strings, b.getInt()),
+						str(strings, b.getInt()), str(strings, b.getInt()), str(strings, b.getInt()),
+						str(strings, b.getInt()), str(strings, b.getInt()), str(strings, b.getInt()),
+						str(strings, b.getInt()), b.getLong(), b.get(), str(strings, b.getInt()),
+						str(strings, b.getInt()), str(strings, b.getInt())));
+			}
+
+			Log.d("Playlist loaded from cache: ", file, ". Entries: ", n);
+			return new Playlist(name, cover, tvgUrl, entries, true);
+		} catch (Exception ex) {
+			Log.e(ex, "Failed to load playlist cache ", file);
+			//noinspection ResultOfMethodCallIgnored
+			file.delete();
+			return null;
+		}
+	}
+
+	void save(Playlist pl) {
+		if (file == null) return;
+		Map<String, Integer> idx = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		index(pl.name, idx, strings);
+		index(pl.cover, idx, strings);
+		index(pl.tvgUrl, idx, strings);
+
+		for (Entry e : pl.entries) {
+			index(e.location, idx, strings);
+			index(e.name, idx, strings);
+			index(e.group, idx, strings);
+			index(e.album, idx, strings);
+			index(e.artist, idx, strings);
+			index(e.genre, idx, strings);
+			index(e.logo, idx, strings);
+			index(e.tvgId, idx, strings);
+			index(e.tvgName, idx, strings);
+			index(e.catchup, idx, strings);
+			index(e.catchupDays, idx, strings);
+			index(e.catchupSource, idx, strings);
+		}
+
+		File dir = file.getParentFile();
+		if (dir != null) //noinspection ResultOfMethodCallIgnored
+			dir.mkdirs();
+		File tmp = new File(file.getPath() + ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp), 65536))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, id);
+				out.writeLong(length);
+				out.writeLong(mtime);
+				out.writeByte(type);
+				writeString(out, charset);
+				writeString(out, encoding);
+				out.writeInt(strings.size());
+				for (String s : strings) writeString(out, s);
+
+				out.writeInt(ref(pl.name, idx));
+				out.writeInt(ref(pl.cover, idx));
+				out.writeInt(ref(pl.tvgUrl, idx));
+				out.writeInt(pl.entries.size());
+
+				for (Entry e : pl.entries) {
+					out.writeInt(ref(e.location, idx));
+					out.writeInt(ref(e.name, idx));
+					out.writeInt(ref(e.group, idx));
+					out.writeInt(ref(e.album, idx));
+					out.writeInt(ref(e.artist, idx));
+					out.writeInt(ref(e.genre, idx));
+					out.writeInt(ref(e.logo, idx));
+					out.writeInt(ref(e.tvgId, idx));
+					out.writeInt(ref(e.tvgName, idx));
+					out.writeLong(e.duration);
+					out.writeByte(e.type);
+					out.writeInt(ref(e.catchup, idx));
+					out.writeInt(ref(e.catchupDays, idx));
+					out.writeInt(ref(e.catchupSource, idx));
+				}
+			}
+
+			if (!tmp.renameTo(file)) throw new IOException("Failed to rename " + tmp + " to " + file);
+		} catch (Exception ex) {
+			Log.e(ex, "Failed to save playlist cache ", file);
+			//noinspection ResultOfMethodCallIgnored
+			tmp.delete();
+		}
+	}
+
+	private static File getFile(VirtualFile src) {
+		File cache = App.get().getExternalCacheDir();
+		if (cache == null) cache = App.get().getCacheDir();
+		String name = Integer.toHexString(src.getRid().toString().hashCode()) + ".bin";
+		return new File(new File(cache, "playlists"), name);
+	}
+
+	private static void index(@Nullable String s, Map<String, Integer> idx, List<String> strings) {
+		if ((s == null) || idx.containsKey(s)) return;
+		idx.put(s, strings.size());
+		strings.add(s);
+	}
+
+	private static int ref(@Nullable String s, Map<String, Integer> idx) {
+		if (s == null) return -1;
+		Integer i = idx.get(s);
+		return (i == null) ? -1 : i;
+	}
+
+	@Nullable
+	private static String str(String[] strings, int i) {
+		return (i < 0) ? null : strings[i];
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String readString(MappedByteBuffer b) {
+		byte[] bytes = new byte[b.getInt()];
+		b.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,55 @@
+package me.aap.fermata.media.lib;
+
+import static me.aap.utils.async.Completed.completedNull;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import me.aap.fermata.FermataApplication;
+import me.aap.utils.async.FutureSupplier;
+import me.aap.utils.log.Log;
+import me.aap.utils.vfs.VirtualResource;
+
+/**
+ * Persistent item id to resource id mapping. Restoring a folder or a file item by id requires
+ * resolving all the ancestors by name, that is a network round-trip per level for the remote
+ * file systems. With this mapping, the resources of all the levels are requested in parallel.
+ *
+ * @author Andrey Pavlenko
+ */
+final class RidCache {
+	private final SharedPreferences prefs;
+
+	RidCache(DefaultMediaLib lib) {
+		prefs = SqlitePreferences.open(lib.getContext(), "rids");
+	}
+
+	/**
+	 * Returns the resource with the specified name, or null if the id is unknown or the resource
+	 * could not be loaded.
+	 */
+	FutureSupplier<VirtualResource> get(String id, String name) {
+		String rid = prefs.getString(id, null);
+		if (rid == null) return completedNull();
+
+		return FermataApplication.get().getVfsManager().getResource(rid).ifFail(err -> {
+			Log.d(err, "Failed to load resource ", rid);
+			return null;
+		}).map(r -> {
+			if ((r != null) && name.equals(r.getName())) return r;
+			remove(id);
+			return null;
+		});
+	}
+
+	void put(String id, @Nullable VirtualResource r) {
+		if (r == null) return;
+		String rid = r.getRid().toString();
+		if (!rid.equals(prefs.getString(id, null))) prefs.edit().putString(id, rid).apply();
+	}
+
+	void remove(String id) {
+		if (prefs.contains(id)) prefs.edit().remove(id).apply();
+	}
+}
@@ -13,16 +13,20 @@ import static me.aap.utils.async.Completed.completedVoid;
 import static me.aap.utils.collection.NaturalOrderComparator.compareNatural;
 
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import me.aap.fermata.R;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Folders;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -47,14 +51,16 @@ public class SearchFolder extends BrowsableItemBase {
 			METADATA_KEY_DISPLAY_SUBTITLE
 	};
 	private final List<PlayableItem> itemsFound;
+	private final Map<Item, Integer> index;
 
-	private SearchFolder(String id, @NonNull BrowsableItem parent, List<Item> items) {
+	private SearchFolder(String id, @NonNull BrowsableItem parent, List<Item> items, boolean ranked) {
 		super(id, parent, null);
 		itemsFound = new ArrayList<>(items.size());
 		for (Item i : items) {
 			if (i instanceof PlayableItem) itemsFound.add((PlayableItem) i);
 		}
-		Collections.sort(itemsFound, (i1, i2) -> {
+		// Full text search results are already ordered by relevance
+		if (!ranked) Collections.sort(itemsFound, (i1, i2) -> {
 			MediaDescriptionCompat d1 = i1.getMediaDescription().peek();
 			MediaDescriptionCompat d2 = i2.getMediaDescription().peek();
 			CharSequence t1 = (d1 == null) ? null : d1.getTitle();
@@ -63,12 +69,20 @@ public class SearchFolder extends BrowsableItemBase {
 			String n2 = (t2 == null) ? i2.getName() : t2.toString();
 			return compareNatural(n1, n2, true);
 		});
+
+		index = new HashMap<>((int) (itemsFound.size() / 0.75f) + 1);
+		for (int i = itemsFound.size() - 1; i >= 0; i--) index.put(itemsFound.get(i), i);
 	}
 
 	private static SearchFolder create(String id, BrowsableItem parent, List<Item> items,
 																		 Function<List<PlayableItem>, BrowsableItem> parentSupplier) {
+		return create(id, parent, items, false, parentSupplier);
+	}
+
+	private static SearchFolder create(String id, BrowsableItem parent, List<Item> items, boolean ranked,
+																		 Function<List<PlayableItem>, BrowsableItem> parentSupplier) {
 		return (SearchFolder) parent.getLib()
-				.getOrCreateCachedItem(id, fid -> new SearchFolder(id, parent, items) {
+				.getOrCreateCachedItem(id, fid -> new SearchFolder(id, parent, items, ranked) {
 					@Override
 					public BrowsableItem getParent() {
 						if (parentSupplier == null) return parent;
@@ -94,15 +108,62 @@ public class SearchFolder extends BrowsableItemBase {
 					List<Item> items = new ArrayList<>(ids.size());
 					return Async.forEach(iid -> lib.getItem(iid)
 							.ifNotNull(items::add), ids).map(v ->
-							SearchFolder.create(id, parent, items, parentSupplier));
+							SearchFolder.create(id, parent, items, true, parentSupplier));
 				} else {
 					return recursiveSearch(id, q, parent, parentSupplier);
 				}
 			});
 		} else {
-			return App.get().execute(() -> recursiveSearch(id, q, parent, parentSupplier))
-					.map(FutureSupplier::peek);
+			return lib.getMetadataRetriever().queryIndex(q, 1000).then(ids -> {
+				if (ids.isEmpty()) return crawl(id, q, parent, parentSupplier);
+				List<Item> items = new ArrayList<>(ids.size());
+				return Async.forEach(iid -> lib.getItem(iid).ifNotNull(items::add), ids).then(v -> {
+					// Prefer the items of the current parent, as the recursive search does
+					List<Item> found = new ArrayList<>(items.size());
+					for (Item i : items) {
+						if (isDescendant(i, parent)) found.add(i);
+					}
+					return expand(found.isEmpty() ? items : found);
+				}).then(found -> found.isEmpty() ? crawl(id, q, parent, parentSupplier)
+						: completed(SearchFolder.create(id, parent, found, true, parentSupplier)));
+			});
+		}
+	}
+
+	private static FutureSupplier<SearchFolder> crawl(
+			String id, String q, BrowsableItem parent,
+			Function<List<PlayableItem>, BrowsableItem> parentSupplier) {
+		return App.get().execute(() -> recursiveSearch(id, q, parent, parentSupplier))
+				.map(FutureSupplier::peek);
+	}
+
+	/**
+	 * The index hits could be browsable, e.g. groups or playlists - replace them with
+	 * the playable children.
+	 */
+	private static FutureSupplier<List<Item>> expand(List<Item> items) {
+		Set<Item> playable = new LinkedHashSet<>();
+		return Async.forEach(i -> {
+			if (i instanceof PlayableItem) {
+				playable.add(i);
+				return completedVoid();
+			} else if (i instanceof BrowsableItem) {
+				return ((BrowsableItem) i).getUnsortedChildren().onSuccess(children -> {
+					for (Item c : children) {
+						if (c instanceof PlayableItem) playable.add(c);
+					}
+				});
+			} else {
+				return completedVoid();
+			}
+		}, items).map(v -> new ArrayList<>(playable));
+	}
+
+	private static boolean isDescendant(Item i, BrowsableItem parent) {
+		for (BrowsableItem p = i.getParent(); p != null; p = p.getParent()) {
+			if (p.equals(parent)) return true;
 		}
+		return false;
 	}
 
 	private static FutureSupplier<SearchFolder> recursiveSearch(
@@ -169,7 +230,7 @@ public class SearchFolder extends BrowsableItemBase {
 		}, items);
 	}
 
-	private static void match(PlayableItem i, MediaMetadataCompat d, Pattern p,
+	private static void match(PlayableItem i, MediaMeta d, Pattern p,
 														List<Pattern> words, Holder<Item> exact, List<Item> matches) {
 		for (String k : META_KEYS) {
 			String v = d.getString(k);
@@ -229,16 +290,26 @@ public class SearchFolder extends BrowsableItemBase {
 
 	@NonNull
 	public FutureSupplier<PlayableItem> getPrevPlayable(Item i) {
-		int idx = (i instanceof PlayableItem) ? itemsFound.indexOf(i) : -1;
+		int idx = indexOf(i);
 		return (idx > 0) ? completed(itemsFound.get(idx - 1)) : i.getPrevPlayable();
 	}
 
 	@NonNull
 	public FutureSupplier<PlayableItem> getNextPlayable(Item i) {
-		int idx = (i instanceof PlayableItem) ? itemsFound.indexOf(i) : -1;
+		int idx = indexOf(i);
 		return (idx < (itemsFound.size() - 1)) ? completed(itemsFound.get(idx + 1)) : i.getNextPlayable();
 	}
 
+	private int indexOf(Item i) {
+		Integer idx = (i instanceof PlayableItem) ? index.get(i) : null;
+		return (idx == null) ? -1 : idx;
+	}
+
+	@Override
+	protected boolean isChildrenIndexed() {
+		return false;
+	}
+
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	@Override
 	protected FutureSupplier<List<Item>> listChildren() {
@@ -0,0 +1,556 @@
+package me.aap.fermata.media.lib;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import me.aap.utils.app.App;
+import me.aap.utils.log.Log;
+import me.aap.utils.text.SharedTextBuilder;
+
+/**
+ * SharedPreferences, backed by an SQLite table. Unlike the XML based preferences, the items
+ * preferences are loaded lazily - a group of preferences, having the same key prefix
+ * (the item id), is loaded on the first access and cached in a bounded LRU. The changes are
+ * written to the cache immediately and flushed to the database in batches.
+ * <p>
+ * On the first open, the preferences are migrated from the XML preferences with the same name.
+ * The same happens, if the XML preferences are imported.
+ *
+ * @author Andrey Pavlenko
+ */
+final class SqlitePreferences implements SharedPreferences {
+	private static final String TABLE = "Prefs";
+	private static final String GLOBAL = "";
+	private static final long FLUSH_DELAY = 1000;
+	private static final int MAX_GROUPS = 512;
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_INT = 1;
+	private static final int TYPE_LONG = 2;
+	private static final int TYPE_FLOAT = 3;
+	private static final int TYPE_BOOLEAN = 4;
+	private static final int TYPE_STRING_SET = 5;
+	private static final char SET_SEPARATOR = '\u0000';
+	private static final Object REMOVED = new Object();
+	private final Context ctx;
+	private final String name;
+	private final SQLiteDatabase db;
+	private final Object writeLock = new Object();
+	private final Map<String, Object> global;
+	private final Map<String, Map<String, Object>> groups =
+			new LinkedHashMap<String, Map<String, Object>>(MAX_GROUPS, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+					return size() > MAX_GROUPS;
+				}
+			};
+	private final Set<OnSharedPreferenceChangeListener> listeners = new HashSet<>();
+	private Map<String, Object> pending = new HashMap<>();
+	private Map<String, Object> flushing;
+	private boolean clearPending;
+	private boolean clearing;
+	private boolean flushScheduled;
+	private SQLiteStatement insertStmt;
+	private SQLiteStatement deleteStmt;
+
+	private SqlitePreferences(Context ctx, String name, SQLiteDatabase db) {
+		this.ctx = ctx;
+		this.name = name;
+		this.db = db;
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (Key TEXT PRIMARY KEY, " +
+				"Grp TEXT NOT NULL, Type INTEGER NOT NULL, Value)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_Grp ON " + TABLE + " (Grp)");
+		migrate();
+		global = load(GLOBAL);
+	}
+
+	/**
+	 * Opens the preferences database. If the database could not be opened, the XML based
+	 * preferences are returned.
+	 */
+	static SharedPreferences open(Context ctx, String name) {
+		File dbFile = ctx.getDatabasePath(name + "-prefs.db");
+		File dir = dbFile.getParentFile();
+		if (dir != null) //noinspection ResultOfMethodCallIgnored
+			dir.mkdirs();
+
+		try {
+			SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+
+			try {
+				db.enableWriteAheadLogging();
+			} catch (Exception ex) {
+				Log.w(ex, "Failed to enable WAL: ", dbFile);
+			}
+
+			return new SqlitePreferences(ctx, name, db);
+		} catch (Exception ex) {
+			Log.e(ex, "Failed to open preferences database: ", dbFile,
+					". Falling back to shared preferences.");
+			return ctx.getSharedPreferences(name, Context.MODE_PRIVATE);
+		}
+	}
+
+	/**
+	 * Writes all the preferences to the XML preferences with the same name, so they could be
+	 * exported with the other shared preferences.
+	 */
+	void exportToXml() {
+		SharedPreferences.Editor e = xml().edit().clear();
+
+		for (Map.Entry<String, ?> v : getAll().entrySet()) {
+			put(e, v.getKey(), v.getValue());
+		}
+
+		e.commit();
+	}
+
+	/**
+	 * Clear the XML preferences, written by {@link #exportToXml()}.
+	 */
+	void clearXml() {
+		xml().edit().clear().commit();
+	}
+
+	/**
+	 * Returns all the keys without loading the values.
+	 */
+	Set<String> getKeys() {
+		Set<String> keys = new HashSet<>();
+
+		synchronized (this) {
+			if (!isCleared()) {
+				try (Cursor c = db.rawQuery("SELECT Key FROM " + TABLE, null)) {
+					while (c.moveToNext()) keys.add(c.getString(0));
+				}
+			}
+
+			overlayKeys(keys, flushing);
+			overlayKeys(keys, pending);
+		}
+
+		return keys;
+	}
+
+	@Override
+	public Map<String, ?> getAll() {
+		Map<String, Object> all = new HashMap<>();
+
+		synchronized (this) {
+			if (!isCleared()) {
+				try (Cursor c = db.rawQuery("SELECT Key, Type, Value FROM " + TABLE, null)) {
+					while (c.moveToNext()) all.put(c.getString(0), read(c, 1));
+				}
+			}
+
+			overlay(all, flushing, null);
+			overlay(all, pending, null);
+		}
+
+		return all;
+	}
+
+	@Nullable
+	@Override
+	public String getString(String key, @Nullable String defValue) {
+		Object v = get(key);
+		return (v instanceof String) ? (String) v : defValue;
+	}
+
+	@Nullable
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+		Object v = get(key);
+		return (v instanceof Set) ? (Set<String>) v : defValues;
+	}
+
+	@Override
+	public int getInt(String key, int defValue) {
+		Object v = get(key);
+		return (v instanceof Integer) ? (Integer) v : defValue;
+	}
+
+	@Override
+	public long getLong(String key, long defValue) {
+		Object v = get(key);
+		return (v instanceof Long) ? (Long) v : defValue;
+	}
+
+	@Override
+	public float getFloat(String key, float defValue) {
+		Object v = get(key);
+		return (v instanceof Float) ? (Float) v : defValue;
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defValue) {
+		Object v = get(key);
+		return (v instanceof Boolean) ? (Boolean) v : defValue;
+	}
+
+	@Override
+	public boolean contains(String key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public Editor edit() {
+		return new PrefsEditor();
+	}
+
+	@Override
+	public synchronized void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener l) {
+		listeners.add(l);
+	}
+
+	@Override
+	public synchronized void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener l) {
+		listeners.remove(l);
+	}
+
+	@Nullable
+	private synchronized Object get(String key) {
+		return getGroup(group(key)).get(key);
+	}
+
+	private Map<String, Object> getGroup(String group) {
+		if (group.isEmpty()) return global;
+		Map<String, Object> g = groups.get(group);
+		if (g == null) groups.put(group, g = load(group));
+		return g;
+	}
+
+	private Map<String, Object> load(String group) {
+		Map<String, Object> g = new HashMap<>();
+
+		if (!isCleared()) {
+			try (Cursor c = db.rawQuery("SELECT Key, Type, Value FROM " + TABLE + " WHERE Grp = ?",
+					new String[]{group})) {
+				while (c.moveToNext()) g.put(c.getString(0), read(c, 1));
+			} catch (Exception ex) {
+				Log.e(ex, "Failed to load preferences group ", group);
+			}
+		}
+
+		overlay(g, flushing, group);
+		overlay(g, pending, group);
+		return g;
+	}
+
+	private synchronized void apply(Map<String, Object> changes, boolean clear, boolean flush) {
+		if (clear) {
+			global.clear();
+			groups.clear();
+			pending.clear();
+			clearPending = true;
+		}
+
+		for (Map.Entry<String, Object> e : changes.entrySet()) {
+			String k = e.getKey();
+			Object v = e.getValue();
+			String group = group(k);
+			Map<String, Object> g = group.isEmpty() ? global : groups.get(group);
+
+			if (g != null) {
+				if (v == REMOVED) g.remove(k);
+				else g.put(k, v);
+			}
+
+			pending.put(k, v);
+		}
+
+		if (!listeners.isEmpty() && !changes.isEmpty()) {
+			List<OnSharedPreferenceChangeListener> ls = new ArrayList<>(listeners);
+			List<String> keys = new ArrayList<>(changes.keySet());
+			App.get().run(() -> {
+				for (OnSharedPreferenceChangeListener l : ls) {
+					for (String k : keys) l.onSharedPreferenceChanged(this, k);
+				}
+			});
+		}
+
+		if (flush || flushScheduled) return;
+		flushScheduled = true;
+		App.get().getScheduler().schedule(this::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	private boolean flush() {
+		synchronized (writeLock) {
+			Map<String, Object> changes;
+			boolean clear;
+
+			synchronized (this) {
+				flushScheduled = false;
+				if (pending.isEmpty() && !clearPending) return true;
+				changes = flushing = pending;
+				clear = clearing = clearPending;
+				clearPending = false;
+				pending = new HashMap<>();
+			}
+
+			try {
+				write(changes, clear);
+				return true;
+			} catch (Exception ex) {
+				Log.e(ex, "Failed to write preferences");
+				return false;
+			} finally {
+				synchronized (this) {
+					flushing = null;
+					clearing = false;
+				}
+			}
+		}
+	}
+
+	private void write(Map<String, Object> changes, boolean clear) {
+		db.beginTransaction();
+
+		try {
+			if (clear) db.delete(TABLE, null, null);
+
+			if (insertStmt == null) {
+				insertStmt = db.compileStatement("INSERT OR REPLACE INTO " + TABLE +
+						" (Key, Grp, Type, Value) VALUES (?, ?, ?, ?)");
+				deleteStmt = db.compileStatement("DELETE FROM " + TABLE + " WHERE Key = ?");
+			}
+
+			for (Map.Entry<String, Object> e : changes.entrySet()) {
+				String k = e.getKey();
+				Object v = e.getValue();
+
+				if (v == REMOVED) {
+					deleteStmt.bindString(1, k);
+					deleteStmt.executeUpdateDelete();
+				} else {
+					insertStmt.bindString(1, k);
+					insertStmt.bindString(2, group(k));
+					bind(insertStmt, v);
+					insertStmt.executeInsert();
+				}
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	private void migrate() {
+		SharedPreferences xml = xml();
+		Map<String, ?> all = xml.getAll();
+		if (all.isEmpty()) return;
+		Log.i("Migrating ", all.size(), " preferences from ", name, ".xml");
+		db.beginTransaction();
+
+		try {
+			db.delete(TABLE, null, null);
+			ContentValues values = new ContentValues(4);
+
+			for (Map.Entry<String, ?> e : all.entrySet()) {
+				Object v = e.getValue();
+				if (v == null) continue;
+				values.clear();
+				values.put("Key", e.getKey());
+				values.put("Grp", group(e.getKey()));
+				values.put("Type", type(v));
+				values.put("Value", (v instanceof Set) ? joinSet(v) : String.valueOf(v));
+				db.insert(TABLE, null, values);
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+
+		xml.edit().clear().commit();
+	}
+
+	private boolean isCleared() {
+		return clearPending || clearing;
+	}
+
+	private SharedPreferences xml() {
+		return ctx.getSharedPreferences(name, Context.MODE_PRIVATE);
+	}
+
+	private static String group(String key) {
+		int idx = key.lastIndexOf('#');
+		return (idx <= 0) ? GLOBAL : key.substring(0, idx);
+	}
+
+	private static void overlay(Map<String, Object> m, @Nullable Map<String, Object> changes,
+															@Nullable String group) {
+		if ((changes == null) || changes.isEmpty()) return;
+
+		for (Map.Entry<String, Object> e : changes.entrySet()) {
+			String k = e.getKey();
+			if ((group != null) && !group.equals(group(k))) continue;
+			Object v = e.getValue();
+			if (v == REMOVED) m.remove(k);
+			else m.put(k, v);
+		}
+	}
+
+	private static void overlayKeys(Set<String> keys, @Nullable Map<String, Object> changes) {
+		if (changes == null) return;
+
+		for (Map.Entry<String, Object> e : changes.entrySet()) {
+			if (e.getValue() == REMOVED) keys.remove(e.getKey());
+			else keys.add(e.getKey());
+		}
+	}
+
+	@Nullable
+	private static Object read(Cursor c, int idx) {
+		String v = c.getString(idx + 1);
+		if (v == null) return null;
+
+		switch (c.getInt(idx)) {
+			case TYPE_INT:
+				return Integer.valueOf(v);
+			case TYPE_LONG:
+				return Long.valueOf(v);
+			case TYPE_FLOAT:
+				return Float.valueOf(v);
+			case TYPE_BOOLEAN:
+				return Boolean.valueOf(v);
+			case TYPE_STRING_SET:
+				return splitSet(v);
+			default:
+				return v;
+		}
+	}
+
+	private static void bind(SQLiteStatement stmt, Object v) {
+		stmt.bindLong(3, type(v));
+		stmt.bindString(4, (v instanceof Set) ? joinSet(v) : String.valueOf(v));
+	}
+
+	private static int type(Object v) {
+		if (v instanceof Integer) return TYPE_INT;
+		if (v instanceof Long) return TYPE_LONG;
+		if (v instanceof Float) return TYPE_FLOAT;
+		if (v instanceof Boolean) return TYPE_BOOLEAN;
+		if (v instanceof Set) return TYPE_STRING_SET;
+		return TYPE_STRING;
+	}
+
+	private static String joinSet(Object set) {
+		try (SharedTextBuilder tb = SharedTextBuilder.get()) {
+			for (Object s : (Set<?>) set) {
+				if (tb.length() != 0) tb.append(SET_SEPARATOR);
+				tb.append(s);
+			}
+			return tb.toString();
+		}
+	}
+
+	private static Set<String> splitSet(String v) {
+		Set<String> set = new HashSet<>();
+		if (v.isEmpty()) return set;
+
+		for (int i = 0; ; ) {
+			int idx = v.indexOf(SET_SEPARATOR, i);
+
+			if (idx < 0) {
+				set.add(v.substring(i));
+				return set;
+			}
+
+			set.add(v.substring(i, idx));
+			i = idx + 1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void put(SharedPreferences.Editor e, String k, Object v) {
+		if (v instanceof Integer) e.putInt(k, (Integer) v);
+		else if (v instanceof Long) e.putLong(k, (Long) v);
+		else if (v instanceof Float) e.putFloat(k, (Float) v);
+		else if (v instanceof Boolean) e.putBoolean(k, (Boolean) v);
+		else if (v instanceof Set) e.putStringSet(k, (Set<String>) v);
+		else if (v != null) e.putString(k, v.toString());
+	}
+
+	private final class PrefsEditor implements Editor {
+		private final Map<String, Object> changes = new HashMap<>();
+		private boolean clear;
+
+		@Override
+		public Editor putString(String key, @Nullable String value) {
+			return set(key, value);
+		}
+
+		@Override
+		public Editor putStringSet(String key, @Nullable Set<String> values) {
+			return set(key, (values == null) ? null : Collections.unmodifiableSet(new HashSet<>(values)));
+		}
+
+		@Override
+		public Editor putInt(String key, int value) {
+			return set(key, value);
+		}
+
+		@Override
+		public Editor putLong(String key, long value) {
+			return set(key, value);
+		}
+
+		@Override
+		public Editor putFloat(String key, float value) {
+			return set(key, value);
+		}
+
+		@Override
+		public Editor putBoolean(String key, boolean value) {
+			return set(key, value);
+		}
+
+		@Override
+		public Editor remove(String key) {
+			return set(key, null);
+		}
+
+		@Override
+		public Editor clear() {
+			clear = true;
+			return this;
+		}
+
+		@Override
+		public boolean commit() {
+			SqlitePreferences.this.apply(changes, clear, true);
+			return flush();
+		}
+
+		@Override
+		public void apply() {
+			SqlitePreferences.this.apply(changes, clear, false);
+		}
+
+		@NonNull
+		private Editor set(String key, @Nullable Object value) {
+			changes.put(key, (value == null) ? REMOVED : value);
+			return this;
+		}
+	}
+}
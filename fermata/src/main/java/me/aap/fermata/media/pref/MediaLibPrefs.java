@@ -1,6 +1,7 @@
 package me.aap.fermata.media.pref;
 
 import me.aap.utils.function.BooleanSupplier;
+import me.aap.utils.function.IntSupplier;
 
 /**
  * @author Andrey Pavlenko
@@ -8,11 +9,28 @@ import me.aap.utils.function.BooleanSupplier;
 public interface MediaLibPrefs extends BrowsableItemPrefs {
 	Pref<BooleanSupplier> EXO_ENABLED = Pref.b("EXO_ENABLED", false).withInheritance(false);
 	Pref<BooleanSupplier> VLC_ENABLED = Pref.b("VLC_ENABLED", false).withInheritance(false);
+	Pref<IntSupplier> EXO_CACHE_SIZE = Pref.i("EXO_CACHE_SIZE", 0).withInheritance(false);
+	// Maximum buffer in seconds and the buffer, required to start the playback, in milliseconds
+	Pref<IntSupplier> BUF_LOCAL_MAX = Pref.i("BUF_LOCAL_MAX", 10).withInheritance(false);
+	Pref<IntSupplier> BUF_LOCAL_START = Pref.i("BUF_LOCAL_START", 500).withInheritance(false);
+	Pref<IntSupplier> BUF_LAN_MAX = Pref.i("BUF_LAN_MAX", 30).withInheritance(false);
+	Pref<IntSupplier> BUF_LAN_START = Pref.i("BUF_LAN_START", 1500).withInheritance(false);
+	Pref<IntSupplier> BUF_INTERNET_MAX = Pref.i("BUF_INTERNET_MAX", 60).withInheritance(false);
+	Pref<IntSupplier> BUF_INTERNET_START = Pref.i("BUF_INTERNET_START", 2500).withInheritance(false);
+	Pref<IntSupplier> BUF_STREAM_MAX = Pref.i("BUF_STREAM_MAX", 30).withInheritance(false);
+	Pref<IntSupplier> BUF_STREAM_START = Pref.i("BUF_STREAM_START", 3000).withInheritance(false);
 
 	default boolean getExoEnabledPref() {
 		return getBooleanPref(EXO_ENABLED);
 	}
 
+	/**
+	 * Size of the ExoPlayer network media cache in megabytes, 0 - disabled.
+	 */
+	default int getExoCacheSizePref() {
+		return getIntPref(EXO_CACHE_SIZE);
+	}
+
 	default boolean getVlcEnabledPref() {
 		return getBooleanPref(VLC_ENABLED);
 	}
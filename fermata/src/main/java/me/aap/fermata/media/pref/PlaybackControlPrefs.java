@@ -23,6 +23,7 @@ public interface PlaybackControlPrefs extends SharedPreferenceStore {
 	Pref<IntSupplier> PREV_NEXT_LONG_TIME = Pref.i("PREV_NEXT_LONG_TIME", 5);
 	Pref<IntSupplier> PREV_NEXT_LONG_TIME_UNIT = Pref.i("PREV_NEXT_LONG_TIME_UNIT", TIME_UNIT_PERCENT);
 	Pref<BooleanSupplier> PLAY_PAUSE_STOP = Pref.b("PLAY_PAUSE_STOP", true);
+	Pref<IntSupplier> PRELOAD_NEXT_TIME = Pref.i("PRELOAD_NEXT_TIME", 10);
 	Pref<IntSupplier> VIDEO_CONTROL_START_DELAY = Pref.i("VIDEO_CONTROL_START_DELAY", 0);
 	Pref<IntSupplier> VIDEO_CONTROL_TOUCH_DELAY = Pref.i("VIDEO_CONTROL_TOUCH_DELAY", 5);
 	Pref<IntSupplier> VIDEO_CONTROL_SEEK_DELAY = Pref.i("VIDEO_CONTROL_SEEK_DELAY", 3);
@@ -58,6 +59,10 @@ public interface PlaybackControlPrefs extends SharedPreferenceStore {
 		return getBooleanPref(PLAY_PAUSE_STOP);
 	}
 
+	default int getPreloadNextTimePref() {
+		return getIntPref(PRELOAD_NEXT_TIME);
+	}
+
 	default int getVideoControlStartDelayPref() {
 		return getIntPref(VIDEO_CONTROL_START_DELAY);
 	}
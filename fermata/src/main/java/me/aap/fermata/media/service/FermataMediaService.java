@@ -23,6 +23,7 @@ import android.os.Binder;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaBrowserCompat.MediaItem;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.MediaMetadataCompat;
@@ -187,6 +188,15 @@ public class FermataMediaService extends MediaBrowserServiceCompat implements Sh
 		getLib().getChildren(parentMediaId, result);
 	}
 
+	@Override
+	public void onLoadChildren(@NonNull String parentMediaId, @NonNull Result<List<MediaItem>> result,
+														 @NonNull Bundle options) {
+		int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+		int size = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+		if ((page < 0) || (size < 1)) getLib().getChildren(parentMediaId, result);
+		else getLib().getChildren(parentMediaId, page * size, size, result);
+	}
+
 	@Override
 	public void onLoadItem(String itemId, @NonNull Result<MediaItem> result) {
 		getLib().getItem(itemId, result);
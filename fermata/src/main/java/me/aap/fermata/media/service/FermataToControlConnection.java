@@ -1,5 +1,7 @@
 package me.aap.fermata.media.service;
 
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI;
 import static android.support.v4.media.session.PlaybackStateCompat.REPEAT_MODE_INVALID;
 import static android.support.v4.media.session.PlaybackStateCompat.SHUFFLE_MODE_INVALID;
 import static java.util.Objects.requireNonNull;
@@ -7,22 +9,35 @@ import static java.util.Objects.requireNonNull;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Parcelable;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat.QueueItem;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.Collections;
+import java.util.List;
 
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
+import me.aap.fermata.provider.FermataContentProvider;
+import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.log.Log;
 
 /**
  * @author Andrey Pavlenko
  */
 class FermataToControlConnection extends ControlServiceConnection {
+	// The last sent state, only the changes are sent
+	private MediaMetadataCompat lastMeta;
+	private List<QueueItem> lastQueue;
+	private int lastRepeat = REPEAT_MODE_INVALID;
+	private int lastShuffle = SHUFFLE_MODE_INVALID;
 
 	FermataToControlConnection(FermataMediaService service) {
 		super(service);
@@ -49,9 +64,15 @@ class FermataToControlConnection extends ControlServiceConnection {
 			case MSG_GET_CHILDREN:
 				b = msg.getData();
 				int arg = msg.arg1;
-				getService().getLib().getChildren(b.getString(KEY), (r, err) -> {
-					Message m = Message.obtain(this, MSG_GET_CHILDREN, arg, 0);
+				int off = b.getInt(KEY_OFFSET, 0);
+				int limit = b.getInt(KEY_LIMIT, Integer.MAX_VALUE);
+				// Request one more item to check if there are more pages
+				int n = (limit == Integer.MAX_VALUE) ? limit : limit + 1;
+				getService().getLib().getChildren(b.getString(KEY), off, n, (r, err) -> {
+					boolean more = (r != null) && (r.size() > limit);
+					Message m = Message.obtain(this, MSG_GET_CHILDREN, arg, more ? 1 : 0);
 					if (r != null) {
+						if (more) r = r.subList(0, limit);
 						Bundle d = new Bundle();
 						d.putParcelableArray(KEY, r.toArray(new Parcelable[0]));
 						m.setData(d);
@@ -116,7 +137,46 @@ class FermataToControlConnection extends ControlServiceConnection {
 		reconnect();
 	}
 
+	/**
+	 * Only the changed parts of the state are sent: the metadata and the queue are sent if
+	 * changed and the album art bitmap is replaced with a content URI.
+	 */
 	public void sendPlaybackState(MediaSessionState state) {
+		MediaMetadataCompat meta = state.meta;
+		List<QueueItem> queue = state.queue;
+		int repeat = state.repeat;
+		int shuffle = state.shuffle;
+
+		if (meta != null) {
+			if (meta == lastMeta) {
+				meta = null;
+			} else {
+				lastMeta = meta;
+				meta = toRemote(meta);
+			}
+		}
+		if (queue != null) {
+			if (isSameQueue(lastQueue, queue)) queue = null;
+			else lastQueue = queue;
+		}
+		if (repeat != REPEAT_MODE_INVALID) {
+			if (repeat == lastRepeat) repeat = REPEAT_MODE_INVALID;
+			else lastRepeat = repeat;
+		}
+		if (shuffle != SHUFFLE_MODE_INVALID) {
+			if (shuffle == lastShuffle) shuffle = SHUFFLE_MODE_INVALID;
+			else lastShuffle = shuffle;
+		}
+
+		if ((meta != state.meta) || (queue != state.queue) || (repeat != state.repeat)
+				|| (shuffle != state.shuffle)) {
+			state = new MediaSessionState(state.playbackState, meta, queue, repeat, shuffle);
+		}
+
+		send(state);
+	}
+
+	private void send(MediaSessionState state) {
 		Message m = Message.obtain(this, MSG_SESSION_STATE);
 		Bundle b = new Bundle();
 		b.putParcelable(KEY, state);
@@ -135,9 +195,62 @@ class FermataToControlConnection extends ControlServiceConnection {
 		}
 	}
 
+	private MediaMetadataCompat toRemote(MediaMetadataCompat meta) {
+		if (meta.getBitmap(METADATA_KEY_ALBUM_ART) == null) return meta;
+		MediaSessionCallback cb = getService().callback;
+		PlayableItem i = (cb == null) ? null : cb.getCurrentItem();
+		MediaMetadataCompat.Builder b = new MediaMetadataCompat.Builder(meta);
+		b.putBitmap(METADATA_KEY_ALBUM_ART, null);
+		if (i == null) return b.build();
+
+		FutureSupplier<Uri> f = i.getIconUri();
+
+		if (f.isDone()) {
+			setArtUri(b, f.peek());
+		} else {
+			MediaMetadataCompat orig = meta;
+			f.main().onSuccess(u -> {
+				if ((u == null) || (orig != lastMeta)) return;
+				MediaMetadataCompat.Builder ub = new MediaMetadataCompat.Builder(orig);
+				ub.putBitmap(METADATA_KEY_ALBUM_ART, null);
+				setArtUri(ub, u);
+				send(new MediaSessionState(null, ub.build(), null, REPEAT_MODE_INVALID,
+						SHUFFLE_MODE_INVALID));
+			});
+		}
+
+		return b.build();
+	}
+
+	private static void setArtUri(MediaMetadataCompat.Builder b, @Nullable Uri u) {
+		if ((u == null) || !FermataContentProvider.isSupportedFileScheme(u.getScheme())) return;
+		b.putString(METADATA_KEY_ALBUM_ART_URI, FermataContentProvider.toContentUri(u).toString());
+	}
+
+	private static boolean isSameQueue(@Nullable List<QueueItem> q1, List<QueueItem> q2) {
+		if (q1 == q2) return true;
+		if ((q1 == null) || (q1.size() != q2.size())) return false;
+
+		for (int i = 0, n = q1.size(); i < n; i++) {
+			QueueItem i1 = q1.get(i);
+			QueueItem i2 = q2.get(i);
+			if (i1.getQueueId() != i2.getQueueId()) return false;
+			if (!TextUtils.equals(i1.getDescription().getMediaId(), i2.getDescription().getMediaId())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	@Override
 	public void onServiceConnected(ComponentName name, IBinder remove) {
 		super.onServiceConnected(name, remove);
+		// The remote side has no state, send it in full
+		lastMeta = null;
+		lastQueue = null;
+		lastRepeat = REPEAT_MODE_INVALID;
+		lastShuffle = SHUFFLE_MODE_INVALID;
 		MediaSessionCallback cb = getService().callback;
 		if (cb != null) sendState(cb);
 	}
@@ -146,7 +259,7 @@ class FermataToControlConnection extends ControlServiceConnection {
 		PlayableItem i = cb.getCurrentItem();
 
 		if (i != null) {
-			i.getParent().getQueue().main().onSuccess(q -> {
+			i.getParent().getQueue(i).main().onSuccess(q -> {
 				if (i == cb.getCurrentItem()) {
 					sendPlaybackState(new MediaSessionState(getService().callback.getPlaybackState(),
 							cb.getMetadata(), q, REPEAT_MODE_INVALID, SHUFFLE_MODE_INVALID));
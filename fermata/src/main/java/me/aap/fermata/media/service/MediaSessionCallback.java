@@ -102,6 +102,7 @@ import me.aap.fermata.R;
 import me.aap.fermata.media.engine.AudioEffects;
 import me.aap.fermata.media.engine.MediaEngine;
 import me.aap.fermata.media.engine.MediaEngineManager;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.lib.MediaLib;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Favorites;
@@ -163,6 +164,13 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 	private Queue<Prioritized<VideoView>> videoView;
 	private Queue<Prioritized<MediaSessionCallbackAssistant>> assistants;
 	private FutureSupplier<?> playerTask = completedVoid();
+	// The item, that is preloaded for the gapless transition
+	@Nullable
+	private PlayableItem nextItem;
+	// The current queue window
+	private BrowsableItem queueParent;
+	private List<QueueItem> queue;
+	private Runnable preloader;
 
 	public MediaSessionCallback(FermataMediaService service, MediaSessionCompat session, MediaLib lib,
 															PlaybackControlPrefs playbackControlPrefs, Handler handler) {
@@ -553,6 +561,8 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 	}
 
 	private void onStop(MediaEngine eng, long pos) {
+		nextItem = null;
+
 		if (eng != null) {
 			if (pos != -1) {
 				PlayableItem i = eng.getSource();
@@ -576,6 +586,8 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		}
 
 		session.setQueue(null);
+		queueParent = null;
+		queue = null;
 		session.setActive(false);
 	}
 
@@ -712,6 +724,7 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		PlaybackStateCompat state = getPlaybackState();
 		List<PlaybackStateCompat.CustomAction> actions = state.getCustomActions();
 		i.getParent().getPrefs().setRepeatPref(enable);
+		resetNextItem();
 
 		if (enable) {
 			CollectionUtils.replace(actions, customRepeatEnable, customRepeatDisable);
@@ -729,6 +742,7 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		PlaybackStateCompat state = getPlaybackState();
 		List<PlaybackStateCompat.CustomAction> actions = state.getCustomActions();
 		i.getParent().getPrefs().setShufflePref(enable);
+		resetNextItem();
 
 		if (enable) {
 			CollectionUtils.replace(actions, customShuffleEnable, customShuffleDisable);
@@ -754,8 +768,10 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		else favorites.removeItem(i);
 
 		if (i.getParent() == favorites) {
-			favorites.getQueue().main().onSuccess(q -> {
+			favorites.getQueue(i).main().onSuccess(q -> {
 				if (i != getCurrentItem()) return;
+				queueParent = favorites;
+				queue = q;
 				session.setQueue(q);
 				String id = i.getId();
 
@@ -830,6 +846,8 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 				p.setRepeatPref(true);
 				break;
 		}
+
+		resetNextItem();
 	}
 
 	@Override
@@ -902,13 +920,14 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		Holder<MediaMetadataCompat> mdHolder = new Holder<>();
 		Holder<Consumer<MediaMetadataCompat>> update = new Holder<>(mdHolder::set);
 
-		FutureSupplier<Void> load = i.getMediaData().main().then(md1 -> {
+		FutureSupplier<Void> load = i.getMediaData().main().then(meta -> {
+			MediaMetadataCompat md1 = meta.toMediaMetadata();
 			update.get().accept(md1);
 
 			return getQid.then(qid -> i.getMediaDescription().main().then(dsc -> {
 						if (getCurrentItem() != i) return completedVoid();
 						MediaMetadataCompat.Builder b = new MediaMetadataCompat.Builder(md1);
-						FutureSupplier<MediaMetadataCompat> md2 = buildMetadata(b, md1, dsc);
+						FutureSupplier<MediaMetadataCompat> md2 = buildMetadata(b, meta, dsc);
 
 						if (md2.isDone()) {
 							update.get().accept(md2.get(b::build));
@@ -947,13 +966,13 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 	}
 
 	private FutureSupplier<MediaMetadataCompat> buildMetadata(MediaMetadataCompat.Builder b,
-																														MediaMetadataCompat meta,
+																														MediaMeta meta,
 																														MediaDescriptionCompat dsc) {
 		ifNotNull(dsc.getTitle(), t -> b.putString(METADATA_KEY_DISPLAY_TITLE, t.toString()));
 		ifNotNull(dsc.getSubtitle(), t -> b.putString(METADATA_KEY_DISPLAY_SUBTITLE, t.toString()));
-		if (meta.getBitmap(METADATA_KEY_ALBUM_ART) != null) return completed(b.build());
+		if (meta.getArt() != null) return completed(b.build());
 
-		String art = meta.getString(METADATA_KEY_ALBUM_ART_URI);
+		String art = meta.getImageUri();
 
 		if (art != null) {
 			b.putString(METADATA_KEY_ALBUM_ART_URI, null);
@@ -976,6 +995,27 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		return completed(b.build());
 	}
 
+	@Override
+	public void onEngineSourceChanged(MediaEngine engine, PlayableItem prev) {
+		if (engine != this.engine) return;
+		PlayableItem i = engine.getSource();
+		if (i == null) return;
+
+		nextItem = null;
+		if (prev.isVideo()) prev.getPrefs().setWatchedPref(true);
+		lib.setLastPlayed(i, 0);
+
+		float speed = getSpeed(i);
+		PlayableItemPrefs prefs = i.getPrefs();
+		BrowsableItemPrefs parentPrefs = i.getParent().getPrefs();
+		PlaybackControlPrefs playbackPrefs = getPlaybackControlPrefs();
+		engine.setSpeed(speed);
+		runWithRetry(() -> setAudiEffects(engine, prefs, parentPrefs, playbackPrefs));
+
+		updateQueue(i.getParent(), i);
+		setPlayingState(engine, true, 0, speed);
+	}
+
 	@Override
 	public void onEngineEnded(MediaEngine engine) {
 		playerTask.cancel();
@@ -1122,7 +1162,7 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 				if (pos != -1) eng.setPosition(pos);
 			} else {
 				lib.setLastPlayed(i, pos);
-				if (!p.equals(current.getParent())) updateQueue = true;
+				updateQueue = true;
 			}
 		} else {
 			updateQueue = true;
@@ -1139,15 +1179,41 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 			return;
 		}
 
+		nextItem = null;
 		eng.prepare(i);
+		if (updateQueue) updateQueue(p, i);
+	}
 
-		if (updateQueue) {
-			p.getQueue().main().onSuccess(q -> {
-				if ((engine == null) || (engine.getSource() != i)) return;
-				session.setQueue(q);
-				service.updateSessionState(null, null, q, REPEAT_MODE_INVALID, SHUFFLE_MODE_INVALID);
-			});
+	/**
+	 * The queue is a window around the current item. It's rebuilt only if the parent has changed
+	 * or the current item is close to the edge of the window.
+	 */
+	private void updateQueue(BrowsableItem p, PlayableItem i) {
+		if (p.equals(queueParent) && (queue != null)) {
+			FutureSupplier<Long> qid = i.getQueueId();
+			if (qid.isDone() && isInQueueWindow(p, qid.peek(-1L))) return;
 		}
+
+		p.getQueue(i).main().onSuccess(q -> {
+			if ((engine == null) || (engine.getSource() != i)) return;
+			queueParent = p;
+			queue = q;
+			session.setQueue(q);
+			service.updateSessionState(null, null, q, REPEAT_MODE_INVALID, SHUFFLE_MODE_INVALID);
+		});
+	}
+
+	private boolean isInQueueWindow(BrowsableItem p, long qid) {
+		List<QueueItem> q = queue;
+		if ((q == null) || q.isEmpty() || (qid < 0)) return false;
+		List<Item> children = p.getChildren().peek();
+		if (children == null) return false;
+		long first = q.get(0).getQueueId();
+		long last = q.get(q.size() - 1).getQueueId();
+		int margin = BrowsableItem.QUEUE_WINDOW / 4;
+		if ((qid < first) || (qid > last)) return false;
+		if ((first > 0) && (qid < first + margin)) return false;
+		return (last >= children.size() - 1) || (qid <= last - margin);
 	}
 
 	private PlaybackStateCompat createPlayingState(PlayableItem i, boolean pause, long qid,
@@ -1190,8 +1256,10 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 			}
 			PlayableItem i = engine.getSource();
 			if (i.isTimerRequired()) startTimer(i, state.getPosition(), state.getPlaybackSpeed());
+			schedulePreload(engine, i, state.getPlaybackSpeed());
 		} else {
 			stopTimer();
+			preloader = null;
 		}
 	}
 
@@ -1347,7 +1415,7 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 			timer = new Runnable() {
 				@Override
 				public void run() {
-					if (timer == this) onSkipToNext();
+					if (timer == this) onTimerEnd(i);
 				}
 			};
 
@@ -1360,6 +1428,77 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback implements
 		timer = null;
 	}
 
+	/**
+	 * If the next item is located in the same file and starts where the current one ends,
+	 * e.g. the next track of a cue sheet, the playback continues without re-preparing.
+	 */
+	private void onTimerEnd(PlayableItem i) {
+		MediaEngine eng = getEngine();
+		PlayableItem next = nextItem;
+
+		if ((eng != null) && (eng.getSource() == i) && (next != null) && isContiguous(i, next)
+				&& eng.continueWith(next)) {
+			onEngineSourceChanged(eng, i);
+		} else {
+			onSkipToNext();
+		}
+	}
+
+	private static boolean isContiguous(PlayableItem i, PlayableItem next) {
+		if (!i.getLocation().equals(next.getLocation())) return false;
+		Long dur = i.getDuration().peek();
+		return (dur != null) && (Math.abs(i.getOffset() + dur - next.getOffset()) < 1000);
+	}
+
+	private void schedulePreload(MediaEngine eng, PlayableItem i, float speed) {
+		preloader = null;
+		if ((nextItem != null) || i.isExternal() || (i instanceof StreamItem)) return;
+
+		int time = getPlaybackControlPrefs().getPreloadNextTimePref();
+		if (time <= 0) return;
+
+		Runnable r = preloader = new Runnable() {
+			@Override
+			public void run() {
+				if (preloader == this) preloadNext(eng, i);
+			}
+		};
+
+		i.getDuration().and(eng.getPosition()).main().onSuccess(h -> {
+			if ((preloader != r) || (h.value1 <= 0)) return;
+			long delay = (long) ((h.value1 - h.value2 - time * 1000L) / speed);
+			handler.postDelayed(r, Math.max(delay, 0));
+		});
+	}
+
+	private void preloadNext(MediaEngine eng, PlayableItem i) {
+		if ((engine != eng) || (eng.getSource() != i)) return;
+		if (!i.getParent().getPrefs().getPlayNextPref()) return;
+
+		getNextPlayable(i).then(this::prepareItem).main().onSuccess(next -> {
+			if ((next == null) || (engine != eng) || (eng.getSource() != i) || (nextItem != null)) return;
+			nextItem = next;
+
+			// The same file - switched by the timer
+			if (i.getLocation().equals(next.getLocation())) return;
+			if (next.isExternal() || (next instanceof StreamItem)) return;
+			if (!getEngineManager().isCurrentEngine(eng, next)) return;
+
+			if (eng.setNextSource(next)) Log.d("Next source preloaded: ", next);
+		});
+	}
+
+	private void resetNextItem() {
+		if (nextItem == null) return;
+		nextItem = null;
+		MediaEngine eng = getEngine();
+		if (eng == null) return;
+
+		eng.setNextSource(null);
+		PlayableItem i = eng.getSource();
+		if ((i != null) && isPlaying()) schedulePreload(eng, i, getPlaybackState().getPlaybackSpeed());
+	}
+
 	private Bitmap defaultImage;
 
 	private Bitmap getDefaultImage() {
@@ -44,6 +44,7 @@ import me.aap.fermata.R;
 import me.aap.fermata.addon.AddonInfo;
 import me.aap.fermata.addon.AddonManager;
 import me.aap.fermata.media.service.FermataMediaServiceConnection;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.collection.NaturalOrderComparator;
@@ -87,9 +88,11 @@ public class MainActivity extends SplitCompatActivityBase
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
+		StartupTracer.Span span = StartupTracer.begin("MainActivity.onCreate");
 		MainActivityDelegate.setTheme(this);
 		AddonManager.get().addBroadcastListener(this);
 		super.onCreate(savedInstanceState);
+		span.end();
 	}
 
 	@Override
@@ -50,6 +50,9 @@ import me.aap.fermata.R;
 import me.aap.fermata.addon.AddonInfo;
 import me.aap.fermata.addon.AddonManager;
 import me.aap.fermata.addon.FermataAddon;
+import me.aap.fermata.media.engine.BitmapCache;
+import me.aap.fermata.media.lib.DefaultMediaLib;
+import me.aap.fermata.media.lib.MediaLib;
 import me.aap.fermata.media.pref.BrowsableItemPrefs;
 import me.aap.fermata.media.pref.MediaLibPrefs;
 import me.aap.fermata.media.pref.MediaPrefs;
@@ -184,6 +187,27 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 		});
 	}
 
+	private static void addBufferingPrefs(PreferenceSet set, PreferenceStore store,
+																				@StringRes int title, Pref<IntSupplier> max,
+																				Pref<IntSupplier> start) {
+		PreferenceSet sub = set.subSet(o -> o.title = title);
+		sub.addIntPref(o -> {
+			o.store = store;
+			o.pref = max;
+			o.title = R.string.buffer_max;
+			o.seekMin = 1;
+			o.seekMax = 300;
+		});
+		sub.addIntPref(o -> {
+			o.store = store;
+			o.pref = start;
+			o.title = R.string.buffer_start;
+			o.seekMin = 100;
+			o.seekMax = 10000;
+			o.seekScale = 100;
+		});
+	}
+
 	public static void addAudioPrefs(PreferenceSet set, PreferenceStore store, boolean isCar) {
 		addDelayPrefs(set, store, MediaLibPrefs.AUDIO_DELAY, R.string.audio_delay, null);
 
@@ -336,6 +360,13 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 			o.pref = PlaybackControlPrefs.PLAY_PAUSE_STOP;
 			o.title = R.string.play_pause_stop;
 		});
+		sub1.addIntPref(o -> {
+			o.store = a.getPlaybackControlPrefs();
+			o.pref = PlaybackControlPrefs.PRELOAD_NEXT_TIME;
+			o.title = R.string.preload_next_time;
+			o.subtitle = R.string.preload_next_time_sub;
+			o.seekMax = 60;
+		});
 
 		sub2 = sub1.subSet(o -> o.title = R.string.video_control);
 		sub2.addIntPref(o -> {
@@ -385,6 +416,16 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 			o.pref = MediaLibPrefs.EXO_ENABLED;
 			o.title = R.string.enable_exoplayer;
 		});
+		sub1.addIntPref(o -> {
+			o.store = mediaPrefs;
+			o.pref = MediaLibPrefs.EXO_CACHE_SIZE;
+			o.title = R.string.exo_cache_size;
+			o.subtitle = R.string.exo_cache_size_sub;
+			o.seekMin = 0;
+			o.seekMax = 2000;
+			o.seekScale = 50;
+			o.visibility = exoCond;
+		});
 		sub1.addBooleanPref(o -> {
 			o.store = mediaPrefs;
 			o.removeDefault = false;
@@ -420,6 +461,18 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 			o.values = new int[]{R.string.preferred_media_scanner_default, R.string.preferred_media_scanner_system, R.string.engine_vlc_name};
 			o.valuesMap = new int[]{MEDIA_SCANNER_DEFAULT, MEDIA_SCANNER_SYSTEM, MEDIA_SCANNER_VLC};
 		});
+		sub2 = sub1.subSet(o -> {
+			o.title = R.string.buffering;
+			o.visibility = exoCond.or(vlcCond);
+		});
+		addBufferingPrefs(sub2, mediaPrefs, R.string.buffering_local,
+				MediaLibPrefs.BUF_LOCAL_MAX, MediaLibPrefs.BUF_LOCAL_START);
+		addBufferingPrefs(sub2, mediaPrefs, R.string.buffering_lan,
+				MediaLibPrefs.BUF_LAN_MAX, MediaLibPrefs.BUF_LAN_START);
+		addBufferingPrefs(sub2, mediaPrefs, R.string.buffering_internet,
+				MediaLibPrefs.BUF_INTERNET_MAX, MediaLibPrefs.BUF_INTERNET_START);
+		addBufferingPrefs(sub2, mediaPrefs, R.string.buffering_stream,
+				MediaLibPrefs.BUF_STREAM_MAX, MediaLibPrefs.BUF_STREAM_START);
 
 		sub1 = set.subSet(o -> o.title = R.string.video_settings);
 		sub1.addListPref(o -> {
@@ -546,6 +599,22 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 			o.pref = MainActivityPrefs.CHECK_UPDATES;
 			o.title = R.string.check_updates;
 		});
+		sub1.addIntPref(o -> {
+			o.store = FermataApplication.get().getPreferenceStore();
+			o.pref = BitmapCache.IMAGE_CACHE_SIZE;
+			o.title = R.string.image_cache_size;
+			o.seekMin = 50;
+			o.seekMax = 2000;
+			o.seekScale = 50;
+		});
+		sub1.addIntPref(o -> {
+			o.store = FermataApplication.get().getPreferenceStore();
+			o.pref = BitmapCache.IMAGE_QUALITY;
+			o.title = R.string.image_quality;
+			o.seekMin = 10;
+			o.seekMax = 100;
+			o.seekScale = 5;
+		});
 
 		return new PreferenceViewAdapter(set) {
 			@Override
@@ -676,6 +745,9 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 					Uri uri = d.getData();
 					if (uri == null) return;
 
+					MediaLib lib = a.getLib();
+					if (lib instanceof DefaultMediaLib) ((DefaultMediaLib) lib).exportPrefs();
+
 					try {
 						DocumentFile dir = DocumentFile.fromTreeUri(ctx, uri);
 						if (dir == null) return;
@@ -718,6 +790,8 @@ public class SettingsFragment extends MainActivityFragment implements MainActivi
 					} catch (Exception ex) {
 						Log.e(ex, "Failed to export preferences");
 						UiUtils.showAlert(ctx, ctx.getString(R.string.export_prefs_failed, ex));
+					} finally {
+						if (lib instanceof DefaultMediaLib) ((DefaultMediaLib) lib).exportPrefsDone();
 					}
 				});
 	}
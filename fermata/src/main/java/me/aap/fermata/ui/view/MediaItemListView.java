@@ -2,9 +2,14 @@ package me.aap.fermata.ui.view;
 
 import static java.util.Objects.requireNonNull;
 import static me.aap.utils.ui.UiUtils.isVisible;
+import static me.aap.utils.ui.UiUtils.toPx;
 
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.v4.media.MediaDescriptionCompat;
 import android.util.AttributeSet;
 import android.view.View;
 
@@ -14,7 +19,10 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import me.aap.fermata.media.lib.MediaLib;
 import me.aap.fermata.media.lib.MediaLib.Item;
@@ -23,6 +31,7 @@ import me.aap.fermata.ui.activity.MainActivityDelegate;
 import me.aap.fermata.ui.activity.MainActivityPrefs;
 import me.aap.fermata.ui.fragment.MediaLibFragment;
 import me.aap.utils.app.App;
+import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.pref.PreferenceStore;
 import me.aap.utils.ui.fragment.ActivityFragment;
 import me.aap.utils.ui.view.NavBarView;
@@ -32,12 +41,26 @@ import me.aap.utils.ui.view.ToolBarView;
  * @author Andrey Pavlenko
  */
 public class MediaItemListView extends RecyclerView implements PreferenceStore.Listener {
+	// The icons loading is paused, while scrolling faster than this, dp per second
+	private static final int PAUSE_SPEED = 4000;
+	private static final int RESUME_SPEED = 1500;
+	private static final int MAX_PREFETCH = 32;
+	private final int pauseSpeed;
+	private final int resumeSpeed;
+	private final Map<MediaItemWrapper, FutureSupplier<?>> prefetch = new HashMap<>();
+	private int prefetchFrom = -1;
+	private int prefetchTo = -1;
+	private int scrollDirection;
+	private long scrollTime;
+	private boolean iconLoadingPaused;
 	private boolean isSelectionActive;
 	private boolean grid;
 	private int focusReq;
 
 	public MediaItemListView(Context ctx, AttributeSet attrs) {
 		super(ctx, attrs);
+		pauseSpeed = (int) toPx(ctx, PAUSE_SPEED);
+		resumeSpeed = (int) toPx(ctx, RESUME_SPEED);
 		configure(ctx.getResources().getConfiguration());
 		setDescendantFocusability(FOCUS_AFTER_DESCENDANTS);
 	}
@@ -104,6 +127,132 @@ public class MediaItemListView extends RecyclerView implements PreferenceStore.L
 		}
 	}
 
+	@Override
+	public void onScrolled(int dx, int dy) {
+		super.onScrolled(dx, dy);
+		int d = (dy != 0) ? dy : dx;
+		if (d == 0) return;
+
+		long time = SystemClock.uptimeMillis();
+		long elapsed = Math.max(time - scrollTime, 16);
+		int speed = (int) (Math.abs(d) * 1000L / elapsed);
+		scrollTime = time;
+		scrollDirection = Integer.signum(d);
+
+		if (speed > pauseSpeed) setIconLoadingPaused(true);
+		else if (speed < resumeSpeed) setIconLoadingPaused(false);
+		updatePrefetch();
+	}
+
+	@Override
+	public void onScrollStateChanged(int state) {
+		super.onScrollStateChanged(state);
+		if (state != SCROLL_STATE_IDLE) return;
+		setIconLoadingPaused(false);
+		updatePrefetch();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		cancelPrefetch();
+	}
+
+	boolean isIconLoadingPaused() {
+		return iconLoadingPaused;
+	}
+
+	/**
+	 * While flinging, the views are recycled faster, than the icons are decoded, thus the loading
+	 * is paused and resumed for the visible views, when the scrolling is slowed down.
+	 */
+	private void setIconLoadingPaused(boolean paused) {
+		if (iconLoadingPaused == paused) return;
+		iconLoadingPaused = paused;
+
+		if (paused) {
+			cancelPrefetch();
+		} else {
+			for (int i = 0, n = getChildCount(); i < n; i++) {
+				((MediaItemView) getChildAt(i)).resumeIconLoading();
+			}
+		}
+	}
+
+	/**
+	 * Prefetch the icons of the next page in the scroll direction with a low priority.
+	 */
+	private void updatePrefetch() {
+		if (iconLoadingPaused || (scrollDirection == 0)) return;
+		if (!(getLayoutManager() instanceof LinearLayoutManager)) return;
+
+		LinearLayoutManager lm = (LinearLayoutManager) getLayoutManager();
+		int first = lm.findFirstVisibleItemPosition();
+		int last = lm.findLastVisibleItemPosition();
+		if ((first == NO_POSITION) || (last == NO_POSITION)) return;
+
+		List<MediaItemWrapper> list = getAdapter().getList();
+		int n = Math.min(last - first + 1, MAX_PREFETCH);
+		int from;
+		int to;
+
+		if (scrollDirection > 0) {
+			from = last + 1;
+			to = Math.min(last + n, list.size() - 1);
+		} else {
+			from = Math.max(first - n, 0);
+			to = Math.min(first, list.size()) - 1;
+		}
+
+		if ((from == prefetchFrom) && (to == prefetchTo)) return;
+		prefetchFrom = from;
+		prefetchTo = to;
+		Map<MediaItemWrapper, FutureSupplier<?>> old = new HashMap<>(prefetch);
+		prefetch.clear();
+
+		for (int i = from; i <= to; i++) {
+			MediaItemWrapper w = list.get(i);
+			FutureSupplier<?> f = old.remove(w);
+			if (f != null) prefetch.put(w, f);
+			else prefetch(w);
+		}
+
+		for (FutureSupplier<?> f : old.values()) {
+			f.cancel();
+		}
+	}
+
+	private void prefetch(MediaItemWrapper w) {
+		Item i = w.getItem();
+		FutureSupplier<MediaDescriptionCompat> load = i.getMediaDescription().main();
+		prefetch.put(w, load);
+		load.onSuccess(md -> {
+			if (prefetch.get(w) != load) return;
+			Uri uri = md.getIconUri();
+
+			if ((uri == null) || (i.getLib().getCachedBitmap(uri.toString(), true) != null)) {
+				prefetch.remove(w);
+				return;
+			}
+
+			FutureSupplier<Bitmap> f = i.getLib().getBitmap(uri.toString(), true, true, false).main();
+			prefetch.put(w, f);
+			f.onCompletion((bm, err) -> {
+				if (prefetch.get(w) == f) prefetch.remove(w);
+			});
+		});
+	}
+
+	void cancelPrefetch() {
+		prefetchFrom = prefetchTo = -1;
+		if (prefetch.isEmpty()) return;
+		List<FutureSupplier<?>> cancel = new ArrayList<>(prefetch.values());
+		prefetch.clear();
+		for (FutureSupplier<?> f : cancel) {
+			f.cancel();
+		}
+	}
+
 	@Override
 	public void smoothScrollToPosition(int position) {
 		scrollToPosition(position);
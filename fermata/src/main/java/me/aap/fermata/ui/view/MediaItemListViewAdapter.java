@@ -6,6 +6,7 @@ import static me.aap.utils.collection.CollectionUtils.filterMap;
 import static me.aap.utils.concurrent.ConcurrentUtils.ensureMainThread;
 import static me.aap.utils.function.ResultConsumer.Cancel.isCancellation;
 
+import android.app.Activity;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -25,6 +26,7 @@ import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
 import me.aap.fermata.media.lib.MediaLib.Item;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.fermata.ui.activity.MainActivityDelegate;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.collection.CollectionUtils;
@@ -102,6 +104,11 @@ public class MediaItemListViewAdapter extends MovableRecyclerViewAdapter<MediaIt
 		ensureMainThread(true);
 		list = filterMap(children, this::filter, (i, c, l) -> l.add(new MediaItemWrapper(c)), ArrayList::new);
 		notifyChanged();
+
+		if (!list.isEmpty() && StartupTracer.finish()
+				&& (activity.getAppActivity() instanceof Activity)) {
+			((Activity) activity.getAppActivity()).reportFullyDrawn();
+		}
 	}
 
 	public void setFilter(String filter) {
@@ -238,6 +245,7 @@ public class MediaItemListViewAdapter extends MovableRecyclerViewAdapter<MediaIt
 	}
 
 	private void notifyChanged() {
+		if (listView != null) listView.cancelPrefetch();
 		if ((listView != null) && listView.isComputingLayout())
 			App.get().getHandler().post(this::notifyDataSetChanged);
 		else notifyDataSetChanged();
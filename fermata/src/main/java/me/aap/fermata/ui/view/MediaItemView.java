@@ -87,6 +87,9 @@ public class MediaItemView extends ConstraintLayout implements OnLongClickListen
 	private VectorDrawableCompat watchingVideoDrawable;
 	private VectorDrawableCompat archiveLabelDrawable;
 	private FutureSupplier<MediaDescriptionCompat> loading;
+	// The icon, that is not loaded yet, and the pending request, if any
+	private Uri iconUri;
+	private FutureSupplier<Bitmap> loadingIcon;
 
 	public MediaItemView(Context ctx, AttributeSet attrs) {
 		super(ctx, attrs, R.attr.appMediaItemStyle);
@@ -182,11 +185,77 @@ public class MediaItemView extends ConstraintLayout implements OnLongClickListen
 	}
 
 	private void cancelLoading() {
+		cancelIconLoading();
+		iconUri = null;
 		if (loading == null) return;
 		loading.cancel();
 		loading = null;
 	}
 
+	private void cancelIconLoading() {
+		FutureSupplier<Bitmap> f = loadingIcon;
+		if (f == null) return;
+		loadingIcon = null;
+		f.cancel();
+	}
+
+	/**
+	 * Called when the holder is attached or the list scrolling is slowed down.
+	 */
+	void resumeIconLoading() {
+		Uri uri = iconUri;
+		MediaItemWrapper w = getItemWrapper();
+		if ((uri == null) || (loadingIcon != null) || (w == null)) return;
+		MediaItemViewHolder h = getHolder();
+		if ((h == null) || !h.isAttached() || h.getListView().isIconLoadingPaused()) return;
+
+		Item i = w.getItem();
+		FutureSupplier<Bitmap> f = i.getLib().getBitmap(uri.toString(), true, true, true).main();
+		loadingIcon = f;
+		f.onCompletion((bm, err) -> {
+			if (loadingIcon != f) return;
+			loadingIcon = null;
+			iconUri = null;
+			setIcon(i, bm);
+		});
+	}
+
+	/**
+	 * Called when the holder is detached, the request is resumed, if attached again.
+	 */
+	void suspendIconLoading() {
+		cancelIconLoading();
+	}
+
+	private void loadIcon(Item i, @Nullable Uri uri) {
+		if ((uri != null) && uri.equals(iconUri)) return;
+		cancelIconLoading();
+		iconUri = null;
+		Bitmap bm = (uri == null) ? null : i.getLib().getCachedBitmap(uri.toString(), true);
+
+		if ((uri == null) || (bm != null)) {
+			setIcon(i, bm);
+			return;
+		}
+
+		iconUri = uri;
+		resumeIconLoading();
+		if (iconUri != null) setIcon(i, null);
+	}
+
+	private void setIcon(Item i, @Nullable Bitmap bm) {
+		ImageView icon = getIcon();
+		icon.clearAnimation();
+
+		if (bm != null) {
+			icon.setImageTintList(null);
+			icon.setImageBitmap(bm);
+		} else {
+			icon.setImageTintList(iconTint);
+			icon.setImageResource(i.getIcon());
+		}
+	}
+
 	private FutureSupplier<MediaDescriptionCompat> load(MediaItemWrapper w, boolean showLoading) {
 		cancelLoading();
 		Item i = w.getItem();
@@ -219,41 +288,7 @@ public class MediaItemView extends ConstraintLayout implements OnLongClickListen
 						Bundle b = md.getExtras();
 						if (b != null) setProgress(i, b.getLong(STREAM_START_TIME), b.getLong(STREAM_END_TIME));
 					}
-					if ((p == PROGRESS_DONE) || (p == 4)) {
-						Uri uri = md.getIconUri();
-
-						if (uri != null) {
-							FutureSupplier<Bitmap> loadIcon = i.getLib().getBitmap(uri.toString(), true, true)
-									.main().onCompletion((bm, err) -> {
-										if (getItemWrapper() != w) return;
-
-										ImageView icon = getIcon();
-										icon.clearAnimation();
-										cancelLoading();
-
-										if (bm != null) {
-											icon.setImageTintList(null);
-											icon.setImageBitmap(bm);
-										} else {
-											icon.setImageTintList(iconTint);
-											icon.setImageResource(i.getIcon());
-										}
-									});
-
-							if (!loadIcon.isDone()) {
-								ImageView icon = getIcon();
-								icon.clearAnimation();
-								icon.setImageTintList(iconTint);
-								icon.setImageResource(i.getIcon());
-							}
-						} else {
-							ImageView icon = getIcon();
-							icon.clearAnimation();
-							icon.setImageTintList(iconTint);
-							icon.setImageResource(i.getIcon());
-							cancelLoading();
-						}
-					}
+					if ((p == PROGRESS_DONE) || (p == 4)) loadIcon(i, md.getIconUri());
 				});
 
 		if (!load.isDone()) setDefaults(i, showLoading);
@@ -48,11 +48,13 @@ public class MediaItemViewHolder extends RecyclerView.ViewHolder {
 
 	void attached() {
 		attached = true;
+		getItemView().resumeIconLoading();
 		getListView().holderAttached(this);
 	}
 
 	void detached() {
 		attached = false;
+		getItemView().suspendIconLoading();
 	}
 
 	void recycled() {
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.graphics.Color;
 import android.net.Uri;
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 import android.util.AttributeSet;
 
 import androidx.annotation.NonNull;
@@ -18,6 +17,7 @@ import com.google.android.material.textview.MaterialTextView;
 
 import me.aap.fermata.R;
 import me.aap.fermata.media.engine.MediaEngine;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.StreamEngine;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.fermata.media.lib.MediaLib.StreamItem;
@@ -74,12 +74,12 @@ public class VideInfoView extends ConstraintLayout
 		}
 
 		FutureSupplier<MediaDescriptionCompat> getDsc = newItem.getMediaDescription();
-		FutureSupplier<MediaMetadataCompat> getMd = newItem.getMediaData();
+		FutureSupplier<MediaMeta> getMd = newItem.getMediaData();
 		setData(newItem, getDsc, getMd);
 	}
 
 	public void setData(PlayableItem item, FutureSupplier<MediaDescriptionCompat> getDsc,
-											FutureSupplier<MediaMetadataCompat> getMd) {
+											FutureSupplier<MediaMeta> getMd) {
 		if (getDsc.isDone() && !getDsc.isFailed()) {
 			setDescription(item, getDsc.getOrThrow());
 
@@ -135,11 +135,11 @@ public class VideInfoView extends ConstraintLayout
 		}
 	}
 
-	public void setMetadata(PlayableItem item, MediaMetadataCompat md) {
+	public void setMetadata(PlayableItem item, MediaMeta md) {
 		if (md == null) return;
-		String i = md.getString(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI);
-		String s = md.getString(MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE);
-		String d = md.getString(MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION);
+		String i = md.getDisplayIconUri();
+		String s = md.getDisplaySubtitle();
+		String d = md.getDisplayDescription();
 		MaterialTextView sv = getSubtitleView();
 		MaterialTextView dv = getDescriptionView();
 		setIcon(item, i);
@@ -156,7 +156,7 @@ public class VideInfoView extends ConstraintLayout
 
 	private void setIcon(PlayableItem item, String icon) {
 		if (icon != null) {
-			item.getLib().getBitmap(icon, true, false).main().onSuccess(b -> {
+			item.getLib().getBitmap(icon, true, false, true).main().onSuccess(b -> {
 				if (b == null) return;
 				getActivity().onSuccess(a -> {
 					if (isCurrent(a, item)) {
@@ -0,0 +1,101 @@
+package me.aap.fermata.util;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.aap.utils.log.Log;
+
+/**
+ * Records named spans of the startup phases. The spans are dumped to the log, when the first
+ * list is shown, after that the tracing is disabled. The synchronous spans are also reported
+ * as systrace sections, thus they are visible in the benchmark and profiler traces.
+ *
+ * @author Andrey Pavlenko
+ */
+public final class StartupTracer {
+	private static final long START = SystemClock.uptimeMillis();
+	private static final List<Span> spans = new ArrayList<>();
+	private static final Span NONE = new Span(null, false);
+	private static volatile boolean enabled = true;
+
+	private StartupTracer() {
+	}
+
+	/**
+	 * Begin a span, that must be ended in the same thread.
+	 */
+	public static Span begin(String name) {
+		if (!enabled) return NONE;
+		Trace.beginSection(name);
+		return new Span(name, true);
+	}
+
+	/**
+	 * Begin a span, that could be ended in any thread.
+	 */
+	public static Span beginAsync(String name) {
+		return enabled ? new Span(name, false) : NONE;
+	}
+
+	/**
+	 * Called when the first list is shown. Returns true on the first call.
+	 */
+	public static boolean finish() {
+		List<Span> list;
+
+		synchronized (spans) {
+			if (!enabled) return false;
+			enabled = false;
+			list = new ArrayList<>(spans);
+			spans.clear();
+		}
+
+		StringBuilder tb = new StringBuilder(64 + list.size() * 80);
+		tb.append("Startup trace: first list shown in ").append(SystemClock.uptimeMillis() - START)
+				.append(" ms");
+
+		for (Span s : list) {
+			tb.append("\n  ").append(s.name).append(": start=").append(s.start - START)
+					.append(" ms, duration=").append(s.end - s.start).append(" ms, thread=")
+					.append(s.thread);
+		}
+
+		Log.i(tb);
+		return true;
+	}
+
+	public static final class Span implements AutoCloseable {
+		final String name;
+		final boolean sync;
+		final String thread;
+		final long start;
+		long end;
+
+		Span(String name, boolean sync) {
+			this.name = name;
+			this.sync = sync;
+			thread = Thread.currentThread().getName();
+			start = SystemClock.uptimeMillis();
+		}
+
+		public void end() {
+			if (name == null) return;
+
+			synchronized (spans) {
+				if (end != 0) return;
+				end = SystemClock.uptimeMillis();
+				if (enabled) spans.add(this);
+			}
+
+			if (sync) Trace.endSection();
+		}
+
+		@Override
+		public void close() {
+			end();
+		}
+	}
+}
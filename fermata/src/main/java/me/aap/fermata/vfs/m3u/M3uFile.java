@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 
+import me.aap.fermata.media.lib.PlaylistCache;
 import me.aap.utils.app.App;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.function.BooleanSupplier;
@@ -188,6 +189,7 @@ public class M3uFile implements VirtualFile {
 		edit.apply();
 		File f = getCacheFile();
 		if (f.isFile() && !f.delete()) Log.e("Failed to delete cache file ", f);
+		PlaylistCache.delete(this);
 	}
 
 	protected File getCacheDir() {
@@ -31,6 +31,10 @@ public abstract class ControlServiceConnection extends Handler implements Servic
 	protected static final byte MSG_CUSTOM_ACTION = 12;
 	protected static final byte MSG_PLAY_FROM_SEARCH = 13;
 	protected static final String KEY = "k";
+	protected static final String KEY_OFFSET = "o";
+	protected static final String KEY_LIMIT = "l";
+	// The children are transferred in pages to not exceed the Binder transaction limit
+	protected static final int CHILDREN_PAGE_SIZE = 100;
 	protected final Service service;
 	protected final Messenger localMessenger = new Messenger(this);
 	protected Messenger remoteMessenger;
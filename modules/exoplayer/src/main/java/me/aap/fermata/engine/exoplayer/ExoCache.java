@@ -0,0 +1,160 @@
+package me.aap.fermata.engine.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.aap.fermata.media.lib.MediaLib.PlayableItem;
+import me.aap.utils.app.App;
+import me.aap.utils.log.Log;
+
+/**
+ * Size limited LRU disk cache of the network media. The local network proxy is listening on
+ * a random port, thus the port is excluded from the cache keys of the loopback addresses.
+ * <p>
+ * Only one SimpleCache instance is allowed per directory, thus the cache is a process-wide
+ * singleton, shared by all the provider instances.
+ *
+ * @author Andrey Pavlenko
+ */
+final class ExoCache implements CacheDataSource.EventListener, TransferListener {
+	private static final long PREFETCH_SIZE = 1024 * 1024;
+	private static ExoCache instance;
+	private static boolean failed;
+	private final SimpleCache cache;
+	private final AtomicLong cacheBytes = new AtomicLong();
+	private final AtomicLong networkBytes = new AtomicLong();
+	private CacheWriter prefetch;
+
+	private ExoCache(Context ctx, long maxSize) {
+		File dir = ctx.getExternalCacheDir();
+		if (dir == null) dir = ctx.getCacheDir();
+		cache = new SimpleCache(new File(dir, "exoplayer"),
+				new LeastRecentlyUsedCacheEvictor(maxSize), new ExoDatabaseProvider(ctx));
+	}
+
+	/**
+	 * The cache is created on first use. The SimpleCache size can not be changed, thus the
+	 * size preference is applied on restart, but the cache can be disabled at any time.
+	 */
+	@Nullable
+	static synchronized ExoCache get(Context ctx, PlayableItem i) {
+		if (failed || !isCacheable(i)) return null;
+		int size = i.getLib().getPrefs().getExoCacheSizePref();
+		if (size <= 0) return null;
+		if (instance != null) return instance;
+
+		try {
+			return instance = new ExoCache(ctx.getApplicationContext(), size * 1024L * 1024L);
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to create ExoPlayer cache");
+			failed = true;
+			return null;
+		}
+	}
+
+	static boolean isCacheable(PlayableItem i) {
+		if (i.isStream()) return false;
+		String scheme = i.getLocation().getScheme();
+		return "http".equals(scheme) || "https".equals(scheme);
+	}
+
+	CacheDataSource.Factory createFactory(DataSource.Factory upstream) {
+		return new CacheDataSource.Factory().setCache(cache)
+				.setUpstreamDataSourceFactory(upstream)
+				.setCacheKeyFactory(KEY_FACTORY)
+				.setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+				.setEventListener(this);
+	}
+
+	/**
+	 * Download the beginning of the next item in background, the previous prefetch is cancelled.
+	 */
+	synchronized void prefetch(@Nullable Uri uri, DataSource.Factory upstream) {
+		if (prefetch != null) {
+			prefetch.cancel();
+			prefetch = null;
+		}
+
+		if (uri == null) return;
+		DataSpec spec = new DataSpec.Builder().setUri(uri).setLength(PREFETCH_SIZE).build();
+		CacheWriter w = new CacheWriter(createFactory(upstream).createDataSource(), spec, null, null);
+		prefetch = w;
+
+		App.get().execute(() -> {
+			try {
+				w.cache();
+				Log.d("Prefetched ", uri);
+			} catch (InterruptedException ignore) {
+			} catch (Exception ex) {
+				Log.d(ex, "Failed to prefetch ", uri);
+			}
+
+			synchronized (this) {
+				if (prefetch == w) prefetch = null;
+			}
+		});
+	}
+
+	void logStats() {
+		long c = cacheBytes.get();
+		long n = networkBytes.get();
+		long total = c + n;
+		Log.i("ExoPlayer cache: ", c, " bytes from cache, ", n, " bytes from network, hit rate ",
+				(total == 0) ? 0 : (c * 100 / total), "%, cache size ", cache.getCacheSpace());
+	}
+
+	@Override
+	public void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+		cacheBytes.addAndGet(cachedBytesRead);
+	}
+
+	@Override
+	public void onCacheIgnored(int reason) {
+	}
+
+	@Override
+	public void onTransferInitializing(@NonNull DataSource source, @NonNull DataSpec dataSpec,
+																		 boolean isNetwork) {
+	}
+
+	@Override
+	public void onTransferStart(@NonNull DataSource source, @NonNull DataSpec dataSpec,
+															boolean isNetwork) {
+	}
+
+	@Override
+	public void onBytesTransferred(@NonNull DataSource source, @NonNull DataSpec dataSpec,
+																 boolean isNetwork, int bytesTransferred) {
+		if (isNetwork) networkBytes.addAndGet(bytesTransferred);
+	}
+
+	@Override
+	public void onTransferEnd(@NonNull DataSource source, @NonNull DataSpec dataSpec,
+														boolean isNetwork) {
+	}
+
+	private static final CacheKeyFactory KEY_FACTORY = spec -> {
+		if (spec.key != null) return spec.key;
+		Uri u = spec.uri;
+		String host = u.getHost();
+		if (!"localhost".equals(host) && !"127.0.0.1".equals(host)) return u.toString();
+		String q = u.getEncodedQuery();
+		return (q == null) ? u.getEncodedPath() : u.getEncodedPath() + '?' + q;
+	};
+}
@@ -8,6 +8,7 @@ import android.content.Context;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
@@ -17,6 +18,7 @@ import com.google.android.exoplayer2.PlaybackException;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.hls.HlsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
@@ -26,33 +28,44 @@ import com.google.android.exoplayer2.video.VideoSize;
 
 import me.aap.fermata.BuildConfig;
 import me.aap.fermata.media.engine.AudioEffects;
+import me.aap.fermata.media.engine.BufferingProfile;
 import me.aap.fermata.media.engine.MediaEngine;
 import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 import me.aap.fermata.media.pref.MediaPrefs;
 import me.aap.fermata.ui.view.VideoView;
 import me.aap.utils.async.FutureSupplier;
+import me.aap.utils.log.Log;
 
 /**
  * @author Andrey Pavlenko
  */
 public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 	private final Context ctx;
+	private final ExoPlayerEngineProvider provider;
 	private final Listener listener;
 	private final SimpleExoPlayer player;
+	private final ProfileLoadControl loadControl = new ProfileLoadControl();
 	private final AudioEffects audioEffects;
 	private final DataSource.Factory dsFactory;
 	private ProgressiveMediaSource.Factory progressive;
+	private ProgressiveMediaSource.Factory cachedProgressive;
+	private ExoCache cache;
 	private HlsMediaSource.Factory hls;
 	private PlayableItem source;
+	private PlayableItem nextSource;
 	private boolean preparing;
 	private boolean buffering;
+	private boolean seeking;
+	private int rebuffers;
 	private boolean isHls;
 
-	public ExoPlayerEngine(Context ctx, Listener listener) {
+	public ExoPlayerEngine(Context ctx, ExoPlayerEngineProvider provider, Listener listener) {
 		this.ctx = ctx;
+		this.provider = provider;
 		this.listener = listener;
 		player = new SimpleExoPlayer.Builder(ctx, new DefaultRenderersFactory(ctx)
-				.setExtensionRendererMode(EXTENSION_RENDERER_MODE_PREFER)).build();
+				.setExtensionRendererMode(EXTENSION_RENDERER_MODE_PREFER))
+				.setLoadControl(loadControl).build();
 		player.addListener(this);
 		audioEffects = AudioEffects.create(0, player.getAudioSessionId());
 		dsFactory = new DefaultDataSourceFactory(ctx, "Fermata/" + BuildConfig.VERSION_NAME);
@@ -63,34 +76,95 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 		return MediaPrefs.MEDIA_ENG_EXO;
 	}
 
-	@SuppressLint("SwitchIntDef")
 	@Override
 	public void prepare(PlayableItem source) {
+		logRebuffers();
 		this.source = source;
+		nextSource = null;
 		preparing = true;
-		buffering = false;
+		buffering = seeking = false;
+		rebuffers = 0;
+		loadControl.setProfile(BufferingProfile.get(source));
 
 		Uri uri = source.getLocation();
-		MediaItem m = MediaItem.fromUri(uri);
 		int type = Util.inferContentType(uri, null);
+		MediaSource ms = createMediaSource(source, type);
+
+		if (ms == null) {
+			listener.onEngineError(this, new IllegalArgumentException("Unsupported type: " + type));
+		} else {
+			isHls = (type == C.TYPE_HLS);
+			player.setMediaSource(ms, false);
+		}
+
+		player.prepare();
+	}
+
+	/**
+	 * The next item is appended to the player's playlist, thus it's buffered before the end of
+	 * the current one and the transition is gapless. The items with offsets (i.e. cue tracks)
+	 * are not supported, because the playback must start at the offset. The items with a
+	 * different buffering profile are not appended either, because the load control is shared
+	 * by the whole playlist.
+	 */
+	@Override
+	public boolean setNextSource(@Nullable PlayableItem next) {
+		if (nextSource != null) {
+			nextSource = null;
+			int idx = player.getCurrentWindowIndex();
+			int count = player.getMediaItemCount();
+			if (count > idx + 1) player.removeMediaItems(idx + 1, count);
+		}
+
+		prefetch(next);
+		if ((next == null) || (source == null) || isHls || (next.getOffset() > 0)) return false;
+		if (!BufferingProfile.get(next).equals(loadControl.getProfile())) return false;
+
+		int type = Util.inferContentType(next.getLocation(), null);
+		if (type != C.TYPE_OTHER) return false;
+		MediaSource ms = createMediaSource(next, type);
+		if (ms == null) return false;
+
+		nextSource = next;
+		player.addMediaSource(ms);
+		return true;
+	}
+
+	@Override
+	public boolean continueWith(PlayableItem next) {
+		if ((source == null) || !source.getLocation().equals(next.getLocation())) return false;
+		source = next;
+		return true;
+	}
+
+	@SuppressLint("SwitchIntDef")
+	@Nullable
+	private MediaSource createMediaSource(PlayableItem source, int type) {
+		MediaItem m = MediaItem.fromUri(source.getLocation());
 
 		switch (type) {
 			case C.TYPE_HLS:
 				if (hls == null) hls = new HlsMediaSource.Factory(getDsFactory(source));
-				isHls = true;
-				player.setMediaSource(hls.createMediaSource(m), false);
-				break;
+				return hls.createMediaSource(m);
 			case C.TYPE_OTHER:
+				ExoCache c = provider.getCache(source);
+
+				if (c != null) {
+					if ((cachedProgressive == null) || (cache != c)) {
+						cache = c;
+						cachedProgressive = new ProgressiveMediaSource.Factory(
+								c.createFactory(getDsFactory(source, c)));
+					}
+
+					return cachedProgressive.createMediaSource(m);
+				}
+
 				if (progressive == null)
 					progressive = new ProgressiveMediaSource.Factory(getDsFactory(source));
-				isHls = false;
-				player.setMediaSource(progressive.createMediaSource(m), false);
-				break;
+				return progressive.createMediaSource(m);
 			default:
-				listener.onEngineError(this, new IllegalArgumentException("Unsupported type: " + type));
+				return null;
 		}
-
-		player.prepare();
 	}
 
 	private DataSource.Factory getDsFactory(PlayableItem source) {
@@ -98,6 +172,30 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 		return (agent == null) ? dsFactory : new DefaultDataSourceFactory(ctx, agent);
 	}
 
+	/**
+	 * The upstream factory, reporting the network traffic to the cache.
+	 */
+	private DataSource.Factory getDsFactory(PlayableItem source, ExoCache cache) {
+		String agent = source.getUserAgent();
+		if (agent == null) agent = "Fermata/" + BuildConfig.VERSION_NAME;
+		return new DefaultDataSourceFactory(ctx, agent, cache);
+	}
+
+	/**
+	 * Download the beginning of the next cacheable item, thus the transition is fast even if the
+	 * item is not appended to the player's playlist.
+	 */
+	private void prefetch(@Nullable PlayableItem next) {
+		ExoCache c = (next == null) ? null : provider.getCache(next);
+
+		if (c != null) {
+			if (Util.inferContentType(next.getLocation(), null) != C.TYPE_OTHER) return;
+			c.prefetch(next.getLocation(), getDsFactory(next, c));
+		} else if (cache != null) {
+			cache.prefetch(null, null);
+		}
+	}
+
 	@Override
 	public void start() {
 		player.setPlayWhenReady(true);
@@ -106,8 +204,11 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 
 	@Override
 	public void stop() {
+		logRebuffers();
+		rebuffers = 0;
 		player.stop();
 		source = null;
+		nextSource = null;
 	}
 
 	@Override
@@ -132,7 +233,9 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 
 	@Override
 	public void setPosition(long position) {
-		if (source != null) player.seekTo(source.getOffset() + position);
+		if (source == null) return;
+		seeking = true;
+		player.seekTo(source.getOffset() + position);
 	}
 
 	@Override
@@ -162,6 +265,17 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 		return (f == null) ? 0 : f.height;
 	}
 
+	@Override
+	public int getRebufferCount() {
+		return rebuffers;
+	}
+
+	private void logRebuffers() {
+		if (rebuffers > 0) {
+			Log.i("Playback rebuffered ", rebuffers, " times: ", source, ". ", loadControl.getProfile());
+		}
+	}
+
 	@Override
 	public AudioEffects getAudioEffects() {
 		return audioEffects;
@@ -172,6 +286,7 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 		stop();
 		player.release();
 		source = null;
+		if (cache != null) cache.logStats();
 
 		if (audioEffects != null) {
 			audioEffects.release();
@@ -181,9 +296,11 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 	@Override
 	public void onPlaybackStateChanged(int playbackState) {
 		if (playbackState == Player.STATE_BUFFERING) {
+			if (!preparing && !buffering && !seeking) rebuffers++;
 			buffering = true;
 			listener.onEngineBuffering(this, player.getBufferedPercentage());
 		} else if (playbackState == Player.STATE_READY) {
+			seeking = false;
 			if (buffering) {
 				buffering = false;
 				listener.onEngineBufferingCompleted(this);
@@ -191,7 +308,12 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 			if (preparing) {
 				preparing = false;
 				long off = source.getOffset();
-				if (off > 0) player.seekTo(off);
+
+				if (off > 0) {
+					seeking = true; // Not a rebuffer
+					player.seekTo(off);
+				}
+
 				listener.onEnginePrepared(this);
 			}
 		} else if (playbackState == Player.STATE_ENDED) {
@@ -199,6 +321,19 @@ public class ExoPlayerEngine implements MediaEngine, Player.Listener {
 		}
 	}
 
+	@Override
+	public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+		if ((reason != Player.MEDIA_ITEM_TRANSITION_REASON_AUTO) || (nextSource == null)) return;
+		logRebuffers();
+		rebuffers = 0;
+		PlayableItem prev = source;
+		source = nextSource;
+		nextSource = null;
+		int idx = player.getCurrentWindowIndex();
+		if (idx > 0) player.removeMediaItems(0, idx);
+		listener.onEngineSourceChanged(this, prev);
+	}
+
 	@Override
 	public void onVideoSizeChanged(VideoSize videoSize) {
 		listener.onVideoSizeChanged(this, videoSize.width, videoSize.height);
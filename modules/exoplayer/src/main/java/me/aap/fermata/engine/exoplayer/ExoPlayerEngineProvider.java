@@ -2,9 +2,12 @@ package me.aap.fermata.engine.exoplayer;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import me.aap.fermata.media.engine.MediaEngine;
 import me.aap.fermata.media.engine.MediaEngine.Listener;
 import me.aap.fermata.media.engine.MediaEngineProvider;
+import me.aap.fermata.media.lib.MediaLib.PlayableItem;
 
 /**
  * @author Andrey Pavlenko
@@ -20,6 +23,11 @@ public class ExoPlayerEngineProvider implements MediaEngineProvider {
 
 	@Override
 	public MediaEngine createEngine(Listener listener) {
-		return new ExoPlayerEngine(ctx, listener);
+		return new ExoPlayerEngine(ctx, this, listener);
+	}
+
+	@Nullable
+	ExoCache getCache(PlayableItem i) {
+		return ExoCache.get(ctx, i);
 	}
 }
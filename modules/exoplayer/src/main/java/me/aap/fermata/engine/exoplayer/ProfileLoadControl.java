@@ -0,0 +1,92 @@
+package me.aap.fermata.engine.exoplayer;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+import me.aap.fermata.media.engine.BufferingProfile;
+
+/**
+ * The LoadControl of a player is set on creation, but the engine is reused for different
+ * sources. Thus, this implementation delegates to a DefaultLoadControl, that is replaced when
+ * the buffering profile changes. The delegates share the same allocator.
+ *
+ * @author Andrey Pavlenko
+ */
+final class ProfileLoadControl implements LoadControl {
+	private final DefaultAllocator allocator = new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+	private BufferingProfile profile;
+	private volatile LoadControl delegate = new DefaultLoadControl.Builder().setAllocator(allocator).build();
+
+	/**
+	 * Must be called before the player is prepared.
+	 */
+	void setProfile(BufferingProfile p) {
+		if (p.equals(profile)) return;
+		profile = p;
+		delegate = new DefaultLoadControl.Builder().setAllocator(allocator)
+				.setBufferDurationsMs(p.minBufferMs, p.maxBufferMs, p.playbackBufferMs, p.rebufferMs)
+				.build();
+	}
+
+	BufferingProfile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public void onPrepared() {
+		delegate.onPrepared();
+	}
+
+	@Override
+	public void onTracksSelected(@NonNull Renderer[] renderers, @NonNull TrackGroupArray trackGroups,
+															 @NonNull ExoTrackSelection[] trackSelections) {
+		delegate.onTracksSelected(renderers, trackGroups, trackSelections);
+	}
+
+	@Override
+	public void onStopped() {
+		delegate.onStopped();
+	}
+
+	@Override
+	public void onReleased() {
+		delegate.onReleased();
+	}
+
+	@NonNull
+	@Override
+	public Allocator getAllocator() {
+		return allocator;
+	}
+
+	@Override
+	public long getBackBufferDurationUs() {
+		return delegate.getBackBufferDurationUs();
+	}
+
+	@Override
+	public boolean retainBackBufferFromKeyframe() {
+		return delegate.retainBackBufferFromKeyframe();
+	}
+
+	@Override
+	public boolean shouldContinueLoading(long playbackPositionUs, long bufferedDurationUs,
+																			 float playbackSpeed) {
+		return delegate.shouldContinueLoading(playbackPositionUs, bufferedDurationUs, playbackSpeed);
+	}
+
+	@Override
+	public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed,
+																		 boolean rebuffering, long targetLiveOffsetUs) {
+		return delegate.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering,
+				targetLiveOffsetUs);
+	}
+}
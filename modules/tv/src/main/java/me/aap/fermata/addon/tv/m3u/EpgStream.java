@@ -0,0 +1,279 @@
+package me.aap.fermata.addon.tv.m3u;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.text.format.Formatter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import me.aap.fermata.addon.tv.R;
+import me.aap.utils.app.App;
+import me.aap.utils.io.IoUtils;
+import me.aap.utils.log.Log;
+
+/**
+ * EPG download stream. The content is downloaded by a separate thread into a bounded queue of
+ * buffers, thus the download and parsing are performed in parallel. When the queue is full,
+ * the download is suspended until the parser consumes the buffered data.
+ * <p>
+ * Optionally, the content is also written to the EPG file, that is used by the subsequent
+ * updates.
+ * <p>
+ * While downloading, a status notification is shown, the same as for the regular EPG download.
+ *
+ * @author Andrey Pavlenko
+ */
+final class EpgStream extends InputStream {
+	private static final int BUF_SIZE = 64 * 1024;
+	private static final int MAX_BUFFERS = 32;
+	private static final byte[] EOF = new byte[0];
+	private final TvM3uFile file;
+	private final HttpURLConnection conn;
+	private final Notif notif;
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(MAX_BUFFERS);
+	@Nullable
+	private final File localFile;
+	private volatile Throwable error;
+	private volatile boolean closed;
+	private byte[] buf;
+	private int pos;
+
+	private EpgStream(TvM3uFile file, HttpURLConnection conn, Notif notif, @Nullable File localFile) {
+		this.file = file;
+		this.conn = conn;
+		this.notif = notif;
+		this.localFile = localFile;
+	}
+
+	static EpgStream open(TvM3uFile file) throws IOException {
+		String url = file.getEpgUrl();
+		if (url == null) throw new IOException("EPG URL is not set");
+		Notif notif = new Notif(url);
+		HttpURLConnection conn;
+		int code;
+
+		try {
+			conn = (HttpURLConnection) new URL(url).openConnection();
+			String agent = file.getUserAgent();
+			int timeout = file.getEpgRespTimeout() * 1000;
+			if (agent != null) conn.setRequestProperty("User-Agent", agent);
+			conn.setConnectTimeout(timeout);
+			conn.setReadTimeout(timeout);
+			conn.setInstanceFollowRedirects(true);
+			code = conn.getResponseCode();
+		} catch (IOException ex) {
+			notif.failed();
+			throw ex;
+		}
+
+		if (code != HttpURLConnection.HTTP_OK) {
+			conn.disconnect();
+			notif.failed();
+			throw new IOException("Failed to download EPG: " + url + ". Response code: " + code);
+		}
+
+		EpgStream s = new EpgStream(file, conn, notif,
+				file.isKeepEpgFile() ? file.getEpgFile() : null);
+		App.get().execute(s::download);
+		return s;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = next();
+		return (b == null) ? -1 : (b[pos++] & 0xFF);
+	}
+
+	@Override
+	public int read(@NonNull byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		byte[] src = next();
+		if (src == null) return -1;
+		int n = Math.min(len, src.length - pos);
+		System.arraycopy(src, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		byte[] b = buf;
+		return ((b == null) || (b == EOF)) ? 0 : b.length - pos;
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		queue.clear();
+		conn.disconnect();
+	}
+
+	@Nullable
+	private byte[] next() throws IOException {
+		if ((buf != null) && (pos < buf.length)) return buf;
+		if (buf == EOF) return null;
+
+		try {
+			buf = queue.take();
+			pos = 0;
+		} catch (InterruptedException ex) {
+			close();
+			throw new InterruptedIOException();
+		}
+
+		if (buf != EOF) return buf;
+		Throwable err = error;
+		if (err == null) return null;
+		throw (err instanceof IOException) ? (IOException) err : new IOException(err);
+	}
+
+	private Void download() {
+		File tmp = (localFile == null) ? null : new File(localFile.getPath() + ".tmp");
+		OutputStream out = null;
+		long len = conn.getContentLength();
+		long total = 0;
+		boolean ok = false;
+
+		try (InputStream in = conn.getInputStream()) {
+			if (tmp != null) out = new FileOutputStream(tmp);
+
+			for (; ; ) {
+				byte[] b = new byte[BUF_SIZE];
+				int n = readFully(in, b);
+				if (n <= 0) break;
+				if (n < b.length) b = copyOf(b, n);
+				if (out != null) out.write(b);
+				total += n;
+				notif.progress(total, len);
+				if (!put(b)) return null;
+			}
+
+			if (out != null) {
+				out.close();
+				out = null;
+
+				if (tmp.renameTo(localFile)) {
+					file.setEpgStamps(conn.getHeaderField("ETag"), System.currentTimeMillis());
+				} else {
+					Log.e("Failed to rename ", tmp, " to ", localFile);
+				}
+			}
+
+			Log.d("EPG downloaded: ", total, " bytes");
+			ok = true;
+		} catch (Throwable ex) {
+			Log.e(ex, "Failed to download EPG");
+			error = ex;
+		} finally {
+			IoUtils.close(out);
+			if ((tmp != null) && tmp.isFile()) //noinspection ResultOfMethodCallIgnored
+				tmp.delete();
+			if (ok || closed) notif.done();
+			else notif.failed();
+			put(EOF);
+		}
+
+		return null;
+	}
+
+	private boolean put(byte[] b) {
+		try {
+			while (!closed) {
+				if (queue.offer(b, 1, TimeUnit.SECONDS)) return true;
+			}
+		} catch (InterruptedException ex) {
+			Log.d("EPG download interrupted");
+		}
+
+		return false;
+	}
+
+	private static int readFully(InputStream in, byte[] b) throws IOException {
+		int off = 0;
+
+		for (int n = in.read(b); n != -1; n = in.read(b, off, b.length - off)) {
+			off += n;
+			if (off == b.length) break;
+		}
+
+		return off;
+	}
+
+	private static final class Notif {
+		private static final String CHANNEL_ID = "fermata.tv.epg";
+		private final Context ctx = App.get();
+		private final NotificationManagerCompat mgr = NotificationManagerCompat.from(ctx);
+		private final NotificationCompat.Builder builder;
+		private final String url;
+		private final int id;
+		private long lastUpdate;
+
+		Notif(String url) {
+			this.url = url;
+			id = url.hashCode();
+			String title = ctx.getString(me.aap.fermata.R.string.downloading, url);
+
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+				NotificationManager nm = (NotificationManager) ctx.getSystemService(Context.NOTIFICATION_SERVICE);
+				if (nm != null) nm.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+						ctx.getString(R.string.epg_download), NotificationManager.IMPORTANCE_LOW));
+			}
+
+			builder = new NotificationCompat.Builder(ctx, CHANNEL_ID)
+					.setSmallIcon(me.aap.fermata.R.drawable.ic_notification)
+					.setContentTitle(title)
+					.setOnlyAlertOnce(true)
+					.setOngoing(true)
+					.setProgress(0, 0, true);
+			mgr.notify(id, builder.build());
+		}
+
+		void progress(long downloaded, long total) {
+			long time = System.currentTimeMillis();
+			if ((time - lastUpdate) < 1000) return;
+			lastUpdate = time;
+
+			if (total > 0) {
+				builder.setProgress(100, (int) (downloaded * 100 / total), false);
+			} else {
+				builder.setContentText(Formatter.formatShortFileSize(ctx, downloaded));
+			}
+
+			mgr.notify(id, builder.build());
+		}
+
+		void done() {
+			mgr.cancel(id);
+		}
+
+		void failed() {
+			builder.setContentTitle(ctx.getString(me.aap.fermata.R.string.err_failed_to_download, url))
+					.setContentText(null).setProgress(0, 0, false).setOngoing(false);
+			mgr.notify(id, builder.build());
+		}
+	}
+
+	private static byte[] copyOf(byte[] b, int len) {
+		byte[] c = new byte[len];
+		System.arraycopy(b, 0, c, 0, len);
+		return c;
+	}
+}
@@ -1,12 +1,14 @@
 package me.aap.fermata.addon.tv.m3u;
 
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_DURATION;
+import static android.support.v4.media.MediaMetadataCompat.METADATA_KEY_TITLE;
 import static me.aap.utils.async.Completed.completed;
 import static me.aap.utils.async.Completed.completedNull;
 
-import android.support.v4.media.MediaMetadataCompat;
-
 import androidx.annotation.NonNull;
 
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.MediaLib;
 import me.aap.fermata.media.lib.MediaLib.ArchiveItem;
@@ -19,7 +21,7 @@ import me.aap.utils.async.FutureSupplier;
  * @author Andrey Pavlenko
  */
 class TvM3uArchiveItem extends TvM3uEpgItem implements ArchiveItem, PlayableItemPrefs {
-	private FutureSupplier<MediaMetadataCompat> md;
+	private FutureSupplier<MediaMeta> md;
 
 	TvM3uArchiveItem(String id, @NonNull TvM3uTrackItem track, long start, long end,
 									 String title, String description, String icon) {
@@ -44,13 +46,13 @@ class TvM3uArchiveItem extends TvM3uEpgItem implements ArchiveItem, PlayableItem
 
 	@NonNull
 	@Override
-	public FutureSupplier<MediaMetadataCompat> getMediaData() {
-		FutureSupplier<MediaMetadataCompat> md = this.md;
+	public FutureSupplier<MediaMeta> getMediaData() {
+		FutureSupplier<MediaMeta> md = this.md;
 		if (md != null) return md;
 		MetadataBuilder b = new MetadataBuilder();
-		b.putString(MediaMetadataCompat.METADATA_KEY_TITLE, title);
-		b.putString(MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE, descr);
-		b.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, end - start);
+		b.putString(METADATA_KEY_TITLE, title);
+		b.putString(METADATA_KEY_DISPLAY_SUBTITLE, descr);
+		b.putLong(METADATA_KEY_DURATION, end - start);
 		if (icon != null) b.setImageUri(icon);
 		return this.md = completed(b.build());
 	}
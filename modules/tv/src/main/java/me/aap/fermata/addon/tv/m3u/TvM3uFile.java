@@ -51,6 +51,7 @@ public class TvM3uFile extends M3uFile {
 	public static final Pref<IntSupplier> CATCHUP_DAYS = Pref.i("CATCHUP_DAYS", 0);
 	public static final Pref<Supplier<String>> LOGO_URL = Pref.s("LOGO_URL");
 	public static final Pref<BooleanSupplier> LOGO_PREFER_EPG = Pref.b("LOGO_PREFER_EPG", true);
+	public static final Pref<BooleanSupplier> EPG_KEEP_FILE = Pref.b("EPG_KEEP_FILE", true);
 
 	public TvM3uFile(Rid rid) {
 		super(rid);
@@ -118,6 +119,14 @@ public class TvM3uFile extends M3uFile {
 		getPrefs().applyBooleanPref(LOGO_PREFER_EPG, prefer);
 	}
 
+	public boolean isKeepEpgFile() {
+		return getPrefs().getBooleanPref(EPG_KEEP_FILE);
+	}
+
+	public void setKeepEpgFile(boolean keep) {
+		getPrefs().applyBooleanPref(EPG_KEEP_FILE, keep);
+	}
+
 	public long getEpgTimeStamp() {
 		return getPrefs().getLongPref(EpgPrefs.EPG_TIMESTAMP);
 	}
@@ -131,6 +140,18 @@ public class TvM3uFile extends M3uFile {
 		}
 	}
 
+	void setEpgStamps(String etag, long timestamp) {
+		try (PreferenceStore.Edit e = getPrefs().editPreferenceStore()) {
+			if (etag == null) e.removePref(EpgPrefs.EPG_ETAG);
+			else e.setStringPref(EpgPrefs.EPG_ETAG, etag);
+			e.setLongPref(EpgPrefs.EPG_TIMESTAMP, timestamp);
+		}
+	}
+
+	public int getEpgRespTimeout() {
+		return getPrefs().getIntPref(EpgPrefs.EPG_RESP_TIMEOUT);
+	}
+
 	public int getEpgMaxAge() {
 		return getPrefs().getIntPref(EpgPrefs.EPG_MAX_AGE);
 	}
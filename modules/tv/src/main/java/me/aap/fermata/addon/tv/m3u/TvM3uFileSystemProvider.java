@@ -7,6 +7,7 @@ import static me.aap.fermata.addon.tv.m3u.TvM3uFile.CATCHUP_TYPE_APPEND;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.CATCHUP_TYPE_AUTO;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.CATCHUP_TYPE_DEFAULT;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.EPG_FILE_AGE;
+import static me.aap.fermata.addon.tv.m3u.TvM3uFile.EPG_KEEP_FILE;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.EPG_SHIFT;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.EPG_URL;
 import static me.aap.fermata.addon.tv.m3u.TvM3uFile.LOGO_PREFER_EPG;
@@ -61,6 +62,7 @@ public class TvM3uFileSystemProvider extends M3uFileSystemProvider {
 			e.setStringPref(LOGO_URL, f.getLogoUrl());
 			e.setBooleanPref(LOGO_PREFER_EPG, f.isPreferEpgLogo());
 			e.setFloatPref(EPG_SHIFT, f.getEpgShift());
+			e.setBooleanPref(EPG_KEEP_FILE, f.isKeepEpgFile());
 			e.setStringPref(CATCHUP_QUERY, f.getCatchupQuery());
 			e.setIntPref(CATCHUP_TYPE, f.getCatchupType());
 			e.setIntPref(CATCHUP_DAYS, f.getCatchupDays());
@@ -118,6 +120,12 @@ public class TvM3uFileSystemProvider extends M3uFileSystemProvider {
 			o.seekMax = 12;
 			o.title = R.string.epg_time_shift;
 		});
+		sub.addBooleanPref(o -> {
+			o.store = ps;
+			o.pref = EPG_KEEP_FILE;
+			o.title = R.string.epg_keep_file;
+			o.subtitle = R.string.epg_keep_file_sub;
+		});
 
 		sub = prefs.subSet(o -> o.title = R.string.catchup);
 		sub.addListPref(o -> {
@@ -200,6 +208,7 @@ public class TvM3uFileSystemProvider extends M3uFileSystemProvider {
 		f.setVideo(true);
 		f.setEpgUrl(ps.getStringPref(EPG_URL));
 		f.setEpgShift(ps.getFloatPref(EPG_SHIFT));
+		f.setKeepEpgFile(ps.getBooleanPref(EPG_KEEP_FILE));
 		f.setCatchupQuery(ps.getStringPref(CATCHUP_QUERY));
 		f.setCatchupType(ps.getIntPref(CATCHUP_TYPE));
 		f.setCatchupDays(ps.getIntPref(CATCHUP_DAYS));
@@ -21,6 +21,7 @@ import me.aap.fermata.media.lib.M3uItem;
 import me.aap.fermata.media.lib.M3uTrackItem;
 import me.aap.fermata.media.lib.MediaLib;
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
+import me.aap.fermata.util.StartupTracer;
 import me.aap.utils.async.FutureRef;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.log.Log;
@@ -37,12 +38,13 @@ public class TvM3uItem extends M3uItem implements TvItem {
 	private final FutureRef<XmlTv> xmlTv = new FutureRef<XmlTv>() {
 		@Override
 		protected FutureSupplier<XmlTv> create() {
+			StartupTracer.Span span = StartupTracer.beginAsync("XmlTv.create");
 			return getData().get()
 					.then(d -> XmlTv.create(TvM3uItem.this))
 					.ifFail(err -> {
 						Log.e(err, "Failed to load XMLTV: ", getEpgUrl());
 						return null;
-					});
+					}).onCompletion((r, f) -> span.end());
 		}
 	};
 
@@ -21,7 +21,6 @@ import static me.aap.utils.text.TextUtils.isNullOrBlank;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.media.MediaDescriptionCompat;
-import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -36,6 +35,7 @@ import java.util.regex.Pattern;
 import me.aap.fermata.BuildConfig;
 import me.aap.fermata.addon.tv.TvItem;
 import me.aap.fermata.addon.tv.TvRootItem;
+import me.aap.fermata.media.engine.MediaMeta;
 import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.DefaultMediaLib;
 import me.aap.fermata.media.lib.M3uTrackItem;
@@ -125,9 +125,9 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 		if (f.isDone()) {
 			XmlTv xml = f.peek();
 			if ((xml == null) || xml.isClosed()) return epg = completedEmptyList();
-			xml.getEpg(this).thenReplaceOrClear(EPG, this, load);
+			loadEpg(xml).thenReplaceOrClear(EPG, this, load);
 		} else {
-			f.then(xml -> ((xml == null) || xml.isClosed()) ? completedEmptyList() : xml.getEpg(this))
+			f.then(xml -> ((xml == null) || xml.isClosed()) ? completedEmptyList() : loadEpg(xml))
 					.thenReplaceOrClear(EPG, this, load);
 		}
 
@@ -135,6 +135,12 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 		return (l != null) ? l : load;
 	}
 
+	private FutureSupplier<List<TvM3uEpgItem>> loadEpg(XmlTv xml) {
+		// The past programmes are only needed for catch up
+		long from = System.currentTimeMillis() - Math.max(getCatchUpDays(), 1) * 86400000L;
+		return xml.getEpg(this, from, Long.MAX_VALUE, 0, 0);
+	}
+
 	@NonNull
 	@Override
 	public StreamItemPrefs getPrefs() {
@@ -148,13 +154,13 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> loadMeta() {
+	protected FutureSupplier<MediaMeta> loadMeta() {
 		return buildMeta(new MetadataBuilder());
 	}
 
 	@NonNull
 	@Override
-	protected FutureSupplier<MediaMetadataCompat> buildMeta(MetadataBuilder b) {
+	protected FutureSupplier<MediaMeta> buildMeta(MetadataBuilder b) {
 		FutureSupplier<XmlTv> f = getM3uItem().getXmlTv();
 		FutureSupplier<Void> u;
 
@@ -169,7 +175,7 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 			});
 		}
 
-		FutureSupplier<MediaMetadataCompat> m = u.main().map(v -> build(new MetadataBuilder()));
+		FutureSupplier<MediaMeta> m = u.main().map(v -> build(new MetadataBuilder()));
 		if (m.isDone()) return m;
 
 		m.onSuccess(meta -> {
@@ -180,7 +186,7 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 		return completed(build(b));
 	}
 
-	private MediaMetadataCompat build(MetadataBuilder b) {
+	private MediaMeta build(MetadataBuilder b) {
 		String logo = getLogo();
 		String desc = getEpgDesc();
 		String icon = getEpgProgIcon();
@@ -210,8 +216,8 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 	}
 
 	@Override
-	protected String buildSubtitle(MediaMetadataCompat md, SharedTextBuilder tb) {
-		String t = md.getString(METADATA_KEY_DISPLAY_SUBTITLE);
+	protected String buildSubtitle(MediaMeta md, SharedTextBuilder tb) {
+		String t = md.getDisplaySubtitle();
 		return (t != null) ? t : buildSubtitle(tb);
 	}
 
@@ -236,7 +242,7 @@ public class TvM3uTrackItem extends M3uTrackItem implements StreamItem, StreamIt
 	}
 
 	@Override
-	protected boolean isMediaDataValid(FutureSupplier<MediaMetadataCompat> d) {
+	protected boolean isMediaDataValid(FutureSupplier<MediaMeta> d) {
 		return validate(d);
 	}
 
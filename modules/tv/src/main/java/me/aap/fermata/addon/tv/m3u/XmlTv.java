@@ -20,6 +20,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,7 +28,6 @@ import java.text.Normalizer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +43,7 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import me.aap.fermata.media.lib.MediaLib.BrowsableItem;
+import me.aap.utils.app.App;
 import me.aap.utils.async.Async;
 import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.db.SQLite;
@@ -60,6 +61,9 @@ public class XmlTv implements Closeable {
 	private static final String TABLE_NAME_TO_ID = "NameToId";
 	private static final String TABLE_NAME_TO_ICON = "NameToIcon";
 	private static final String IDX_PROG_CH = "ProgChIdx";
+	private static final String IDX_PROG_CH_START = "ProgChStartIdx";
+	private static final int SCHEMA_VERSION = 2;
+	private static final int BATCH_SIZE = 2000;
 	private static final String COL_ID = "Id";
 	private static final String COL_EPG_ID = "EpgId";
 	private static final String COL_NAME = "Name";
@@ -69,6 +73,7 @@ public class XmlTv implements Closeable {
 	private static final String COL_STOP = "Stop";
 	private static final String COL_TITLE = "Title";
 	private static final String COL_DSC = "Dsc";
+	private static final String COL_GEN = "Gen";
 	private static final String[] Q_COL_ID_ICON = new String[]{COL_ID, COL_ICON};
 	private static final String[] Q_COL_CH_ID = new String[]{COL_CH_ID};
 	private static final String[] Q_COL_ICON = new String[]{COL_ICON};
@@ -77,10 +82,17 @@ public class XmlTv implements Closeable {
 	private static final String Q_SEL_EPG_ID = COL_EPG_ID + " = ?";
 	private static final String Q_SEL_NAME = COL_NAME + " = ?";
 	private static final String Q_SEL_NAME_OR = COL_NAME + " = ? or " + COL_NAME + " = ?";
-	private static final String Q_SEL_CH_ID = COL_CH_ID + " = ? ";
-	private static final String Q_SEL_CH_ID_TIME = COL_CH_ID + " = ? AND " +
-			COL_START + " <= ? AND " + COL_STOP + " > ?";
+	private static final String Q_SEL_CH_ID_START = COL_CH_ID + " = ? AND " + COL_START + " <= ?";
+	// Starting from the programme, that is playing at the specified time
+	private static final String Q_SEL_CH_ID_RANGE = COL_CH_ID + " = ? AND " + COL_START +
+			" >= COALESCE((SELECT MAX(" + COL_START + ") FROM " + TABLE_PROG + " WHERE " + COL_CH_ID +
+			" = ? AND " + COL_START + " <= ?), ?) AND " + COL_START + " < ?";
+	private static final String Q_ORDER_START = COL_START;
+	private static final String Q_ORDER_START_DESC = COL_START + " DESC";
+	private static final int MAX_BATCH_CHANNELS = 500;
 	private final SQLite sql;
+	private final List<TvM3uTrackItem> pendingUpdates = new ArrayList<>();
+	private FutureSupplier<Void> pendingUpdate;
 
 	private XmlTv(SQLite sql) {
 		this.sql = sql;
@@ -107,7 +119,7 @@ public class XmlTv implements Closeable {
 		try {
 			XmlTv xml = new XmlTv(SQLite.get(item.getResource().getEpgDbFile()));
 			return xml.sql.query(db -> {
-				if (hasIndex(db)) {
+				if (isLoaded(db)) {
 					xml.load(item, true);
 					return completed(xml);
 				} else {
@@ -129,13 +141,99 @@ public class XmlTv implements Closeable {
 			Log.d("Database is closed: ", sql);
 		}
 
-		return sql.execute(db -> {
-			try {
-				updateTrack(db, track);
-			} catch (Throwable ex) {
-				Log.e(ex, "Failed to update channel: ", track.getName());
+		synchronized (pendingUpdates) {
+			pendingUpdates.add(track);
+			if (pendingUpdate != null) return pendingUpdate.fork();
+
+			// The tracks, requested while the task is pending, are updated in one batch
+			pendingUpdate = sql.execute(db -> {
+				List<TvM3uTrackItem> tracks;
+
+				synchronized (pendingUpdates) {
+					tracks = new ArrayList<>(pendingUpdates);
+					pendingUpdates.clear();
+					pendingUpdate = null;
+				}
+
+				updateTracks(db, tracks);
+			});
+
+			FutureSupplier<Void> u = pendingUpdate;
+
+			if (u.isDone()) { // Failed or executed synchronously
+				pendingUpdates.clear();
+				pendingUpdate = null;
 			}
-		});
+
+			return u.fork();
+		}
+	}
+
+	private static void updateTracks(SQLiteDatabase db, List<TvM3uTrackItem> tracks) {
+		Map<Integer, List<TvM3uTrackItem>> byId = new HashMap<>();
+
+		for (TvM3uTrackItem t : tracks) {
+			int id = t.getEpgId();
+			if (id == EPG_ID_NOT_FOUND) continue;
+
+			if (id == EPG_ID_UNKNOWN) {
+				try {
+					updateTrack(db, t);
+				} catch (Throwable ex) {
+					Log.e(ex, "Failed to update channel: ", t.getName());
+				}
+			} else {
+				computeIfAbsent(byId, id, k -> new ArrayList<>(1)).add(t);
+			}
+		}
+
+		if (byId.isEmpty()) return;
+		String time = String.valueOf(System.currentTimeMillis());
+		List<Integer> ids = new ArrayList<>(byId.keySet());
+
+		for (int off = 0, n = ids.size(); off < n; off += MAX_BATCH_CHANNELS) {
+			try (SharedTextBuilder tb = SharedTextBuilder.get()) {
+				tb.append("SELECT p.").append(COL_CH_ID).append(", p.").append(COL_START)
+						.append(", p.").append(COL_STOP).append(", p.").append(COL_TITLE)
+						.append(", p.").append(COL_DSC).append(", p.").append(COL_ICON)
+						.append(" FROM ").append(TABLE_CH).append(" c JOIN ").append(TABLE_PROG)
+						.append(" p ON p.").append(COL_CH_ID).append(" = c.").append(COL_ID)
+						.append(" AND p.").append(COL_START).append(" = (SELECT MAX(").append(COL_START)
+						.append(") FROM ").append(TABLE_PROG).append(" WHERE ").append(COL_CH_ID)
+						.append(" = c.").append(COL_ID).append(" AND ").append(COL_START)
+						.append(" <= ?) WHERE p.").append(COL_STOP).append(" > ? AND c.").append(COL_ID)
+						.append(" IN (");
+
+				for (int i = off, end = Math.min(n, off + MAX_BATCH_CHANNELS); i < end; i++) {
+					if (i != off) tb.append(", ");
+					tb.append(ids.get(i).intValue());
+				}
+
+				tb.append(')');
+
+				try (Cursor c = db.rawQuery(tb.toString(), new String[]{time, time})) {
+					while (c.moveToNext()) {
+						int id = c.getInt(0);
+						List<TvM3uTrackItem> l = byId.remove(id);
+						if (l == null) continue;
+
+						for (TvM3uTrackItem t : l) {
+							t.update(id, t.getEpgChIcon(), c.getLong(1), c.getLong(2), c.getString(3),
+									c.getString(4), c.getString(5), false);
+						}
+					}
+				} catch (Throwable ex) {
+					Log.e(ex, "Failed to update channels");
+				}
+			}
+		}
+
+		// No current programme
+		for (Map.Entry<Integer, List<TvM3uTrackItem>> e : byId.entrySet()) {
+			for (TvM3uTrackItem t : e.getValue()) {
+				t.update(e.getKey(), t.getEpgChIcon(), 0, 0, null, null, null, false);
+			}
+		}
 	}
 
 	private static int updateTrack(SQLiteDatabase db, TvM3uTrackItem track) {
@@ -202,11 +300,12 @@ public class XmlTv implements Closeable {
 			return EPG_ID_UNKNOWN;
 		}
 
-		String time = String.valueOf(System.currentTimeMillis());
+		long time = System.currentTimeMillis();
 
-		try (Cursor c = db.query(TABLE_PROG, Q_COL_EPG, Q_SEL_CH_ID_TIME,
-				new String[]{String.valueOf(id), time, time}, null, null, null)) {
-			if (c.moveToFirst()) {
+		try (Cursor c = db.query(TABLE_PROG, Q_COL_EPG, Q_SEL_CH_ID_START,
+				new String[]{String.valueOf(id), String.valueOf(time)}, null, null,
+				Q_ORDER_START_DESC, "1")) {
+			if (c.moveToFirst() && (c.getLong(1) > time)) {
 				track.update(id, icon, c.getLong(0), c.getLong(1), c.getString(2),
 						c.getString(3), c.getString(4), false);
 			} else {
@@ -218,9 +317,21 @@ public class XmlTv implements Closeable {
 	}
 
 	public FutureSupplier<List<TvM3uEpgItem>> getEpg(TvM3uTrackItem track) {
+		return getEpg(track, 0, Long.MAX_VALUE, 0, 0);
+	}
+
+	/**
+	 * Returns the programmes, ordered by the start time, that are playing at or after the
+	 * {@code from} time and start before the {@code to} time.
+	 *
+	 * @param offset the number of programmes to skip
+	 * @param limit  the maximum number of programmes to return or 0 for no limit
+	 */
+	public FutureSupplier<List<TvM3uEpgItem>> getEpg(TvM3uTrackItem track, long from, long to,
+																									 int offset, int limit) {
 		return sql.query(db -> {
 			try {
-				return getEpg(db, track);
+				return getEpg(db, track, from, to, offset, limit);
 			} catch (Throwable ex) {
 				Log.e(ex, "Failed to load epg for channel: ", track.getName());
 				return emptyList();
@@ -228,7 +339,8 @@ public class XmlTv implements Closeable {
 		});
 	}
 
-	private List<TvM3uEpgItem> getEpg(SQLiteDatabase db, TvM3uTrackItem track) {
+	private List<TvM3uEpgItem> getEpg(SQLiteDatabase db, TvM3uTrackItem track, long from, long to,
+																		int offset, int limit) {
 		int id = track.getEpgId();
 
 		if (id == EPG_ID_UNKNOWN) {
@@ -236,8 +348,12 @@ public class XmlTv implements Closeable {
 			if (id == EPG_ID_UNKNOWN) return emptyList();
 		}
 
-		try (Cursor c = db.query(TABLE_PROG, Q_COL_EPG, Q_SEL_CH_ID,
-				new String[]{String.valueOf(id)}, null, null, null)) {
+		String chId = String.valueOf(id);
+		String f = String.valueOf(from);
+		String lim = (limit > 0) ? (offset + ", " + limit) : (offset > 0) ? (offset + ", -1") : null;
+
+		try (Cursor c = db.query(TABLE_PROG, Q_COL_EPG, Q_SEL_CH_ID_RANGE,
+				new String[]{chId, chId, f, f, String.valueOf(to)}, null, null, Q_ORDER_START, lim)) {
 			int cnt = c.getCount();
 			if (cnt == 0) return emptyList();
 			List<TvM3uEpgItem> l = new ArrayList<>(cnt);
@@ -246,7 +362,6 @@ public class XmlTv implements Closeable {
 						c.getString(3), c.getString(4)));
 			}
 			if (l.isEmpty()) return emptyList();
-			Collections.sort(l);
 			for (int i = 1, s = l.size(); i < s; i++) {
 				TvM3uEpgItem cur = l.get(i);
 				TvM3uEpgItem prev = l.get(i - 1);
@@ -260,28 +375,26 @@ public class XmlTv implements Closeable {
 	}
 
 	private FutureSupplier<?> load(TvM3uItem item) {
-		return sql.query(db -> load(item, hasIndex(db)));
+		return sql.query(db -> load(item, isLoaded(db)));
 	}
 
-	private FutureSupplier<XmlTv> load(TvM3uItem item, boolean hasIndex) {
+	private FutureSupplier<XmlTv> load(TvM3uItem item, boolean loaded) {
 		BooleanHolder noUpdate = new BooleanHolder();
-		return item.getResource().downloadEpg().then(status -> {
-			if ((status.bytesDownloaded() == 0) && hasIndex) {
+		FutureSupplier<XmlTv> load = loaded ? item.getResource().downloadEpg().then(status -> {
+			if (status.bytesDownloaded() == 0) {
 				Log.i("XMLTV is up to date: ", status.getUrl());
 				return completed(this);
 			}
 
-			if (hasIndex) {
-				noUpdate.value = true;
-				Log.i("Scheduling XMLTV update in 30 seconds: ", status.getUrl());
-				Async.schedule(() -> load(item, status), 30000);
-				return completed(this);
-			} else {
-				return load(item, status);
-			}
-		}).onFailure(err -> {
+			noUpdate.value = true;
+			Log.i("Scheduling XMLTV update in 30 seconds: ", status.getUrl());
+			Async.schedule(() -> load(item, status), 30000);
+			return completed(this);
+		}) : loadStream(item);
+
+		return load.onFailure(err -> {
 			String url = item.getResource().getEpgUrl();
-			if (hasIndex) {
+			if (loaded) {
 				Log.e(err, "Failed to load XMLTV: ", url, ". Retrying in 5 minutes.");
 				Async.schedule(() -> load(item), 5 * 60000);
 			} else {
@@ -304,10 +417,34 @@ public class XmlTv implements Closeable {
 	}
 
 	private FutureSupplier<XmlTv> load(TvM3uItem item, Status status) {
+		return load(item, status.getUrl(), () -> {
+			InputStream fis = status.getFileStream(true);
+			return (status.getLocalFile().getName().endsWith(".gz")) ? new GZIPInputStream(fis) : fis;
+		});
+	}
+
+	/**
+	 * Parse the XMLTV while downloading. Used for the initial load, when there is no guide yet,
+	 * thus the first programmes become available before the download is completed.
+	 */
+	private FutureSupplier<XmlTv> loadStream(TvM3uItem item) {
+		TvM3uFile file = item.getResource();
+		return load(item, file.getEpgUrl(), () -> {
+			InputStream in = new BufferedInputStream(EpgStream.open(file), 64 * 1024);
+			in.mark(2);
+			boolean gzip = (in.read() == 0x1f) && (in.read() == 0x8b);
+			in.reset();
+			return gzip ? new GZIPInputStream(in, 64 * 1024) : in;
+		});
+	}
+
+	private FutureSupplier<XmlTv> load(TvM3uItem item, String url, XmlSource src) {
 		Map<String, List<TvM3uTrackItem>> idToTrack = new HashMap<>();
 		Map<String, List<TvM3uTrackItem>> nameToTrack = new HashMap<>();
 		return loadChannels(item, idToTrack, nameToTrack)
-				.then(v -> sql.query(db -> loadXml(item, status, db, idToTrack, nameToTrack)));
+				.then(v -> sql.query(XmlTv::loadChannelIds))
+				.then(ids -> App.get().execute(() ->
+						loadXml(item, url, src, ids, idToTrack, nameToTrack)));
 	}
 
 	private FutureSupplier<Void> loadChannels(BrowsableItem item,
@@ -330,6 +467,7 @@ public class XmlTv implements Closeable {
 	}
 
 	private static String normalizeName(String name) {
+		if (isAscii(name)) return name.toLowerCase(Locale.ROOT);
 		name = Normalizer.normalize(name, Normalizer.Form.NFD);
 		try (SharedTextBuilder b = SharedTextBuilder.get()) {
 			for (int i = 0, s = name.length(); i < s; i++) {
@@ -340,89 +478,119 @@ public class XmlTv implements Closeable {
 		}
 	}
 
-	private XmlTv loadXml(TvM3uItem item, Status status, SQLiteDatabase db,
+	private static boolean isAscii(String s) {
+		for (int i = 0, n = s.length(); i < n; i++) {
+			if (s.charAt(i) > 0x7F) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The XMLTV is parsed on a worker thread and the programmes are written to the database in
+	 * batches, each batch in a separate transaction. The existing rows are updated in place,
+	 * thus the readers, executed between the batches, never see an empty guide. The programmes,
+	 * that are not present in the new guide (expired or superseded), are deleted at the end.
+	 */
+	private XmlTv loadXml(TvM3uItem item, String url, XmlSource src, Map<String, Integer> channelIds,
 												Map<String, List<TvM3uTrackItem>> idToTrack,
 												Map<String, List<TvM3uTrackItem>> nameToTrack)
 			throws ParserConfigurationException, SAXException, IOException {
-		Log.i("Loading XMLTV: ", status.getUrl());
+		Log.i("Loading XMLTV: ", url);
 		long time = System.currentTimeMillis();
 		SAXParserFactory factory = SAXParserFactory.newInstance();
 		SAXParser parser = factory.newSAXParser();
 
-		try (InputStream fis = status.getFileStream(true)) {
-			InputStream in = (status.getLocalFile().getName().endsWith(".gz")) ? new GZIPInputStream(fis) : fis;
-			createTables(db);
-			db.beginTransaction();
-			parser.parse(in, new XmlHandler(db, idToTrack, nameToTrack, item.getResource().getEpgShift()));
-			db.setTransactionSuccessful();
-		} finally {
-			db.endTransaction();
+		try (InputStream in = src.open()) {
+			parser.parse(in, new XmlHandler(sql, channelIds, idToTrack, nameToTrack,
+					item.getResource().getEpgShift(), time));
 		}
 
 		Log.i("XMLTV has been successfully loaded in ", (System.currentTimeMillis() - time),
-				" milliseconds: ", status.getUrl());
+				" milliseconds: ", url);
 		return this;
 	}
 
+	private static Map<String, Integer> loadChannelIds(SQLiteDatabase db) {
+		createTables(db);
+		Map<String, Integer> ids = new HashMap<>();
+
+		try (Cursor c = db.query(TABLE_CH, new String[]{COL_EPG_ID, COL_ID}, null, null,
+				null, null, null)) {
+			while (c.moveToNext()) ids.put(c.getString(0), c.getInt(1));
+		}
+
+		return ids;
+	}
+
 	private static void createTables(SQLiteDatabase db) {
-		db.execSQL("DROP INDEX IF EXISTS " + IDX_PROG_CH);
-		db.execSQL("DROP TABLE IF EXISTS " + TABLE_CH);
-		db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROG);
-		db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME_TO_ID);
-		db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME_TO_ICON);
+		if (db.getVersion() != SCHEMA_VERSION) {
+			db.execSQL("DROP INDEX IF EXISTS " + IDX_PROG_CH);
+			db.execSQL("DROP INDEX IF EXISTS " + IDX_PROG_CH_START);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_CH);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROG);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME_TO_ID);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME_TO_ICON);
+		}
 
-		db.execSQL("CREATE TABLE " + TABLE_CH + '(' +
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CH + '(' +
 				COL_ID + " INTEGER PRIMARY KEY, " +
 				COL_EPG_ID + " VARCHAR UNIQUE, " +
 				COL_ICON + " VARCHAR" +
 				");"
 		);
-		db.execSQL("CREATE TABLE " + TABLE_PROG + '(' +
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PROG + '(' +
 				COL_CH_ID + " INTEGER, " +
 				COL_START + " INTEGER, " +
 				COL_STOP + " INTEGER, " +
 				COL_TITLE + " VARCHAR, " +
 				COL_DSC + " VARCHAR, " +
-				COL_ICON + " VARCHAR" +
+				COL_ICON + " VARCHAR, " +
+				COL_GEN + " INTEGER" +
 				");"
 		);
-		db.execSQL("CREATE TABLE " + TABLE_NAME_TO_ID + '(' +
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME_TO_ID + '(' +
 				COL_NAME + " VARCHAR PRIMARY KEY, " +
 				COL_CH_ID + " INTEGER" +
 				");"
 		);
-		db.execSQL("CREATE TABLE " + TABLE_NAME_TO_ICON + '(' +
+		db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME_TO_ICON + '(' +
 				COL_NAME + " VARCHAR PRIMARY KEY, " +
 				COL_ICON + " VARCHAR NOT NULL" +
 				");"
 		);
+		db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + IDX_PROG_CH_START + " ON " + TABLE_PROG +
+				'(' + COL_CH_ID + ", " + COL_START + ");");
 	}
 
-	private static boolean hasIndex(SQLiteDatabase db) {
-		try (Cursor c = db.rawQuery("SELECT count(*) FROM sqlite_master WHERE type='index' AND name=?;",
-				new String[]{IDX_PROG_CH})) {
-			return c.moveToFirst() && (c.getInt(0) != 0);
+	/**
+	 * The schema version is set after the first successful load.
+	 */
+	private static boolean isLoaded(SQLiteDatabase db) {
+		try {
+			return db.getVersion() == SCHEMA_VERSION;
 		} catch (Throwable ex) {
-			Log.d(ex, "Failed to get index");
+			Log.d(ex, "Failed to get database version");
 			return false;
 		}
 	}
 
+	private interface XmlSource {
+		InputStream open() throws IOException;
+	}
+
 	private static final class XmlHandler extends DefaultHandler {
-		private final SimpleDateFormat TIME = new SimpleDateFormat("yyyyMMddHHmmss Z", Locale.getDefault());
-		private final long time = System.currentTimeMillis();
-		private final SQLiteDatabase db;
+		private SimpleDateFormat TIME;
+		private final SQLite sql;
+		private final long time;
+		private final Map<String, Integer> channelIds;
 		private final Map<String, List<TvM3uTrackItem>> idToTrack;
 		private final Map<String, List<TvM3uTrackItem>> nameToTrack;
 		private final long epgShift;
 		private final Map<String, ChannelInfo> channels;
 		private final Map<String, InfoIcon> channelNames;
 		private final String localLang = Locale.getDefault().getLanguage();
-		private final SQLiteStatement chStmt;
-		private final SQLiteStatement progStmt;
-		private final SQLiteStatement nameToIdStmt;
-		private final SQLiteStatement nameToIconStmt;
 		private final Set<String> names = new HashSet<>();
+		private final List<Prog> batch = new ArrayList<>(BATCH_SIZE);
 		private final StringBuilder sb = new StringBuilder(1024);
 		private String epgId;
 		private String icon;
@@ -433,15 +601,20 @@ public class XmlTv implements Closeable {
 		private String desc;
 		private String altDesc;
 		private Tag tag = Tag.IGNORE;
+		private ChannelInfo prog;
+		private boolean skip;
 		private int counter;
-
-		XmlHandler(SQLiteDatabase db, Map<String, List<TvM3uTrackItem>> idToTrack,
-							 Map<String, List<TvM3uTrackItem>> nameToTrack, float epgShift) {
-			chStmt = db.compileStatement("INSERT INTO " + TABLE_CH + " VALUES(?, ?, ?)");
-			progStmt = db.compileStatement("INSERT INTO " + TABLE_PROG + " VALUES(?, ?, ?, ?, ?, ?)");
-			nameToIdStmt = db.compileStatement("INSERT INTO " + TABLE_NAME_TO_ID + " VALUES(?, ?)");
-			nameToIconStmt = db.compileStatement("INSERT INTO " + TABLE_NAME_TO_ICON + " VALUES(?, ?)");
-			this.db = db;
+		private boolean channelsChanged;
+		private int updated;
+		private int inserted;
+
+		XmlHandler(SQLite sql, Map<String, Integer> channelIds,
+							 Map<String, List<TvM3uTrackItem>> idToTrack,
+							 Map<String, List<TvM3uTrackItem>> nameToTrack, float epgShift, long time) {
+			this.sql = sql;
+			this.time = time;
+			this.channelIds = channelIds;
+			for (Integer id : channelIds.values()) counter = Math.max(counter, id + 1);
 			this.idToTrack = idToTrack;
 			this.nameToTrack = nameToTrack;
 			this.epgShift = (long) (60 * 60000 * epgShift);
@@ -462,19 +635,31 @@ public class XmlTv implements Closeable {
 					break;
 				case "icon":
 					tag = Tag.IGNORE;
-					icon = attrs.getValue("src");
+					if (!skip) icon = attrs.getValue("src");
 					break;
 				case "programme":
 					tag = Tag.IGNORE;
-					epgId = attrs.getValue("channel");
-					start = attrs.getValue("start");
-					stop = attrs.getValue("stop");
+					String ch = attrs.getValue("channel");
+					prog = (ch == null) ? null : channels.get(ch);
+
+					if (prog == null) {
+						// Skip the programmes of the channels, that have no tracks
+						skip = true;
+					} else {
+						start = attrs.getValue("start");
+						stop = attrs.getValue("stop");
+					}
+
 					break;
 				case "title":
-					tag = localLang.equals(attrs.getValue("lang")) ? Tag.TITLE : Tag.TITLE_ALT;
+					if (skip) tag = Tag.IGNORE;
+					else if (localLang.equals(attrs.getValue("lang"))) tag = Tag.TITLE;
+					else tag = ((title == null) && (altTile == null)) ? Tag.TITLE_ALT : Tag.IGNORE;
 					break;
 				case "desc":
-					tag = localLang.equals(attrs.getValue("lang")) ? Tag.DESC : Tag.DESC_ALT;
+					if (skip) tag = Tag.IGNORE;
+					else if (localLang.equals(attrs.getValue("lang"))) tag = Tag.DESC;
+					else tag = ((desc == null) && (altDesc == null)) ? Tag.DESC_ALT : Tag.IGNORE;
 					break;
 			}
 		}
@@ -505,19 +690,19 @@ public class XmlTv implements Closeable {
 
 			switch (tag) {
 				case DISPLAY_NAME:
-					names.add(normalizeName(sb.toString().trim()));
+					names.add(normalizeName(trim(sb)));
 					break;
 				case TITLE:
-					title = sb.toString().trim();
+					title = trim(sb);
 					break;
 				case TITLE_ALT:
-					altTile = sb.toString().trim();
+					altTile = trim(sb);
 					break;
 				case DESC:
-					desc = sb.toString().trim();
+					desc = trim(sb);
 					break;
 				case DESC_ALT:
-					altDesc = sb.toString().trim();
+					altDesc = trim(sb);
 					break;
 			}
 
@@ -525,44 +710,126 @@ public class XmlTv implements Closeable {
 			sb.setLength(0);
 		}
 
+		private static String trim(StringBuilder sb) {
+			int s = 0;
+			int e = sb.length();
+			while ((s < e) && (sb.charAt(s) <= ' ')) s++;
+			while ((e > s) && (sb.charAt(e - 1) <= ' ')) e--;
+			return sb.substring(s, e);
+		}
+
 		@Override
 		public void endDocument() {
-			Log.d("Inserting ", channels.size(), " channels");
-			for (Map.Entry<String, ChannelInfo> e : channels.entrySet()) {
+			flush(true);
+			Log.i("XMLTV programmes updated: ", updated, ", inserted: ", inserted);
+		}
+
+		private void flush(boolean last) {
+			List<Prog> progs = new ArrayList<>(batch);
+			boolean writeChannels = channelsChanged;
+			batch.clear();
+			channelsChanged = false;
+			sql.execute(db -> {
+				db.beginTransaction();
+
 				try {
-					ChannelInfo i = e.getValue();
-					chStmt.clearBindings();
-					chStmt.bindLong(1, i.id);
-					bindString(chStmt, 2, e.getKey());
-					bindString(chStmt, 3, i.icon);
-					chStmt.execute();
-				} catch (Exception ex) {
-					Log.e(ex, "Failed to insert channel: ", e.getKey());
+					if (writeChannels) writeChannels(db);
+					writeProgs(db, progs);
+
+					if (last) {
+						int n = db.delete(TABLE_PROG, COL_GEN + " <> ?", new String[]{String.valueOf(time)});
+						Log.d("Deleted ", n, " expired or superseded programmes");
+						db.setVersion(SCHEMA_VERSION);
+					}
+
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
 				}
-			}
+			}).getOrThrow();
+		}
 
-			Log.d("Inserting ", channelNames.size(), " channel names");
-			for (Map.Entry<String, InfoIcon> e : channelNames.entrySet()) {
-				try {
-					InfoIcon i = e.getValue();
-					nameToIdStmt.clearBindings();
-					nameToIdStmt.bindString(1, e.getKey());
-					nameToIdStmt.bindLong(2, i.info.id);
-					nameToIdStmt.execute();
-
-					if ((i.icon != null) && !i.icon.equals(i.info.icon)) {
-						nameToIconStmt.clearBindings();
-						nameToIconStmt.bindString(1, e.getKey());
-						nameToIconStmt.bindString(2, i.icon);
-						nameToIconStmt.execute();
+		private void writeChannels(SQLiteDatabase db) {
+			Log.d("Writing ", channels.size(), " channels");
+			db.delete(TABLE_NAME_TO_ID, null, null);
+			db.delete(TABLE_NAME_TO_ICON, null, null);
+
+			try (SQLiteStatement chStmt = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_CH + " VALUES(?, ?, ?)");
+					 SQLiteStatement nameToIdStmt = db.compileStatement("INSERT INTO " + TABLE_NAME_TO_ID + " VALUES(?, ?)");
+					 SQLiteStatement nameToIconStmt = db.compileStatement("INSERT INTO " + TABLE_NAME_TO_ICON + " VALUES(?, ?)")) {
+				for (Map.Entry<String, ChannelInfo> e : channels.entrySet()) {
+					try {
+						ChannelInfo i = e.getValue();
+						chStmt.clearBindings();
+						chStmt.bindLong(1, i.id);
+						bindString(chStmt, 2, e.getKey());
+						bindString(chStmt, 3, i.icon);
+						chStmt.execute();
+					} catch (Exception ex) {
+						Log.e(ex, "Failed to insert channel: ", e.getKey());
+					}
+				}
+
+				for (Map.Entry<String, InfoIcon> e : channelNames.entrySet()) {
+					try {
+						InfoIcon i = e.getValue();
+						nameToIdStmt.clearBindings();
+						nameToIdStmt.bindString(1, e.getKey());
+						nameToIdStmt.bindLong(2, i.info.id);
+						nameToIdStmt.execute();
+
+						if ((i.icon != null) && !i.icon.equals(i.info.icon)) {
+							nameToIconStmt.clearBindings();
+							nameToIconStmt.bindString(1, e.getKey());
+							nameToIconStmt.bindString(2, i.icon);
+							nameToIconStmt.execute();
+						}
+					} catch (Exception ex) {
+						Log.e(ex, "Failed to insert channel name: ", e.getKey());
 					}
-				} catch (Exception ex) {
-					Log.e(ex, "Failed to insert channel name: ", e.getKey());
 				}
 			}
+		}
+
+		private void writeProgs(SQLiteDatabase db, List<Prog> progs) {
+			if (progs.isEmpty()) return;
+
+			try (SQLiteStatement updStmt = db.compileStatement("UPDATE " + TABLE_PROG + " SET " +
+					COL_STOP + " = ?, " + COL_TITLE + " = ?, " + COL_DSC + " = ?, " + COL_ICON + " = ?, " +
+					COL_GEN + " = ? WHERE " + COL_CH_ID + " = ? AND " + COL_START + " = ?");
+					 SQLiteStatement insStmt = db.compileStatement("INSERT INTO " + TABLE_PROG +
+							 " VALUES(?, ?, ?, ?, ?, ?, ?)")) {
+				for (Prog p : progs) {
+					try {
+						updStmt.clearBindings();
+						updStmt.bindLong(1, p.stop);
+						bindString(updStmt, 2, p.title);
+						bindString(updStmt, 3, p.desc);
+						bindString(updStmt, 4, p.icon);
+						updStmt.bindLong(5, time);
+						updStmt.bindLong(6, p.chId);
+						updStmt.bindLong(7, p.start);
+
+						if (updStmt.executeUpdateDelete() != 0) {
+							updated++;
+							continue;
+						}
 
-			Log.i("Creating XMLTV index");
-			db.execSQL("CREATE INDEX " + IDX_PROG_CH + " ON " + TABLE_PROG + '(' + COL_CH_ID + ");");
+						insStmt.clearBindings();
+						insStmt.bindLong(1, p.chId);
+						insStmt.bindLong(2, p.start);
+						insStmt.bindLong(3, p.stop);
+						bindString(insStmt, 4, p.title);
+						bindString(insStmt, 5, p.desc);
+						bindString(insStmt, 6, p.icon);
+						insStmt.bindLong(7, time);
+						insStmt.executeInsert();
+						inserted++;
+					} catch (Exception ex) {
+						Log.e(ex, "Failed to insert programme: ", p.chId);
+					}
+				}
+			}
 		}
 
 		private void addChannel() {
@@ -578,6 +845,7 @@ public class XmlTv implements Closeable {
 					else info.addTracks(tracks);
 					ChannelInfo i = info;
 					compute(channelNames, name, (k, v) -> {
+						channelsChanged = true;
 						if (v == null) return new InfoIcon(i, icon);
 						else if (v.icon == null) v.icon = icon;
 						return v;
@@ -598,8 +866,14 @@ public class XmlTv implements Closeable {
 
 		private ChannelInfo createChannel(List<TvM3uTrackItem> tracks) {
 			ChannelInfo info = compute(channels, epgId, (k, v) -> {
-				if (v == null) return new ChannelInfo(counter++, icon);
-				else if (v.icon == null) v.icon = icon;
+				if (v == null) {
+					Integer id = channelIds.get(k);
+					channelsChanged = true;
+					return new ChannelInfo((id != null) ? id : counter++, icon);
+				} else if (v.icon == null) {
+					v.icon = icon;
+					channelsChanged = true;
+				}
 				return v;
 			});
 			assert info != null;
@@ -608,26 +882,16 @@ public class XmlTv implements Closeable {
 		}
 
 		private void addProg() {
-			ChannelInfo info;
+			ChannelInfo info = prog;
 
-			if (!isEmpty(epgId) && ((info = channels.get(epgId)) != null)) {
+			if (info != null) {
 				long start = toTime(this.start);
 				long stop = toTime(this.stop);
 				String t = (title != null) ? title : altTile;
 				String d = (desc != null) ? desc : altDesc;
 
-				try {
-					progStmt.clearBindings();
-					progStmt.bindLong(1, info.id);
-					progStmt.bindLong(2, start);
-					progStmt.bindLong(3, stop);
-					bindString(progStmt, 4, t);
-					bindString(progStmt, 5, d);
-					bindString(progStmt, 6, icon);
-					progStmt.execute();
-				} catch (Exception ex) {
-					Log.e(ex, "Failed to insert programme: ", epgId);
-				}
+				batch.add(new Prog(info.id, start, stop, t, d, icon));
+				if (batch.size() == BATCH_SIZE) flush(false);
 
 				if ((start <= time) && (stop > time)) {
 					for (TvM3uTrackItem tr : info.tracks) {
@@ -636,7 +900,9 @@ public class XmlTv implements Closeable {
 				}
 			}
 
-			epgId = start = stop = icon = title = altTile = desc = altDesc = null;
+			start = stop = icon = title = altTile = desc = altDesc = null;
+			prog = null;
+			skip = false;
 		}
 
 		private void bindString(SQLiteStatement stmt, int index, String value) {
@@ -646,8 +912,11 @@ public class XmlTv implements Closeable {
 
 		private long toTime(String time) {
 			if (time == null) return 0;
+			long t = parseTime(time);
+			if (t != Long.MIN_VALUE) return t + epgShift;
 
 			try {
+				if (TIME == null) TIME = new SimpleDateFormat("yyyyMMddHHmmss Z", Locale.getDefault());
 				Date d = TIME.parse(time);
 				return (d != null) ? (d.getTime() + epgShift) : 0;
 			} catch (ParseException ex) {
@@ -656,6 +925,72 @@ public class XmlTv implements Closeable {
 			}
 		}
 
+		/**
+		 * Parses the time in the XMLTV format - {@code yyyyMMddHHmmss +HHMM}, without any allocation.
+		 * The seconds and the zone offset are optional, if the offset is not specified, the time is
+		 * in UTC. Returns Long.MIN_VALUE, if the format is not recognized.
+		 */
+		static long parseTime(String s) {
+			int len = s.length();
+			if (len < 12) return Long.MIN_VALUE;
+			int year = digits(s, 0, 4);
+			int month = digits(s, 4, 2);
+			int day = digits(s, 6, 2);
+			int hour = digits(s, 8, 2);
+			int min = digits(s, 10, 2);
+			int sec = 0;
+			int i = 12;
+
+			if ((len >= 14) && (s.charAt(12) != ' ')) {
+				sec = digits(s, 12, 2);
+				i = 14;
+			}
+
+			if ((year | month | day | hour | min | sec) < 0) return Long.MIN_VALUE;
+			if ((month < 1) || (month > 12) || (day < 1) || (day > 31)) return Long.MIN_VALUE;
+			while ((i < len) && (s.charAt(i) == ' ')) i++;
+			long offset = 0;
+
+			if (i < len) {
+				char c = s.charAt(i);
+
+				if (((c == '+') || (c == '-')) && (len - i >= 5)) {
+					int oh = digits(s, i + 1, 2);
+					int om = digits(s, i + 3, 2);
+					if ((oh | om) < 0) return Long.MIN_VALUE;
+					offset = (oh * 60 + om) * 60000L;
+					if (c == '-') offset = -offset;
+				} else if (c != 'Z') {
+					return Long.MIN_VALUE;
+				}
+			}
+
+			return daysFromCivil(year, month, day) * 86400000L + hour * 3600000L + min * 60000L
+					+ sec * 1000L - offset;
+		}
+
+		private static int digits(String s, int off, int len) {
+			int v = 0;
+
+			for (int i = off, end = off + len; i < end; i++) {
+				int d = s.charAt(i) - '0';
+				if ((d < 0) || (d > 9)) return -1;
+				v = v * 10 + d;
+			}
+
+			return v;
+		}
+
+		// Number of days since 1970-01-01 in the proleptic Gregorian calendar
+		private static long daysFromCivil(int y, int m, int d) {
+			if (m <= 2) y--;
+			int era = ((y >= 0) ? y : y - 399) / 400;
+			int yoe = y - era * 400;
+			int doy = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5 + d - 1;
+			int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+			return era * 146097L + doe - 719468;
+		}
+
 		private boolean isEmpty(String s) {
 			return (s == null) || s.isEmpty();
 		}
@@ -686,6 +1021,24 @@ public class XmlTv implements Closeable {
 			}
 		}
 
+		private static final class Prog {
+			final int chId;
+			final long start;
+			final long stop;
+			final String title;
+			final String desc;
+			final String icon;
+
+			Prog(int chId, long start, long stop, String title, String desc, String icon) {
+				this.chId = chId;
+				this.start = start;
+				this.stop = stop;
+				this.title = title;
+				this.desc = desc;
+				this.icon = icon;
+			}
+		}
+
 		private static final class InfoIcon {
 			final ChannelInfo info;
 			String icon;
@@ -17,6 +17,7 @@ import android.view.ViewGroup;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.videolan.libvlc.LibVLC;
 import org.videolan.libvlc.Media;
@@ -29,13 +30,16 @@ import org.videolan.libvlc.interfaces.IMedia.VideoTrack;
 import org.videolan.libvlc.interfaces.IVLCVout;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.aap.fermata.media.engine.AudioEffects;
 import me.aap.fermata.media.engine.AudioStreamInfo;
+import me.aap.fermata.media.engine.BufferingProfile;
 import me.aap.fermata.media.engine.MediaEngine;
 import me.aap.fermata.media.engine.MediaEngineException;
 import me.aap.fermata.media.engine.MediaStreamInfo;
@@ -48,6 +52,7 @@ import me.aap.utils.async.FutureSupplier;
 import me.aap.utils.collection.CollectionUtils;
 import me.aap.utils.function.Supplier;
 import me.aap.utils.io.IoUtils;
+import me.aap.utils.log.Log;
 import me.aap.utils.text.TextUtils;
 
 /**
@@ -63,8 +68,13 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 	private final Listener listener;
 	@NonNull
 	private Source source = Source.NULL;
+	@Nullable
+	private PendingSource nextSource;
 	private VideoView videoView;
 	private boolean playing;
+	private boolean buffering;
+	private boolean seeking;
+	private int rebuffers;
 	private long pendingPosition = -1;
 
 	public VlcEngine(VlcEngineProvider provider, Listener listener) {
@@ -85,8 +95,87 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 
 	@Override
 	public void prepare(PlayableItem source) {
+		logRebuffers();
 		this.source.close();
 		this.source = Source.NULL;
+		PendingSource pending = nextSource;
+		nextSource = null;
+
+		if ((pending != null) && (pending.getItem() != source)) {
+			pending.close();
+			pending = null;
+		}
+
+		try {
+			if (pending == null) pending = createSource(source);
+			this.source = pending;
+			IMedia media = pending.getMedia();
+
+			if (media.isParsed()) {
+				prepared(pending);
+			} else {
+				// The listener is installed before the second check, thus the parsing end is not missed
+				PendingSource p = pending;
+				AtomicBoolean done = new AtomicBoolean();
+				media.setEventListener(e -> {
+					if (media.isParsed()) parsed(media, p, done);
+				});
+				if (media.isParsed()) parsed(media, p, done);
+				else if (!pending.parsing) media.parseAsync();
+			}
+		} catch (Throwable ex) {
+			if (this.source == Source.NULL) this.source = new Source(source, null);
+			else this.source.close();
+			listener.onEngineError(this, ex);
+		}
+	}
+
+	/**
+	 * LibVLC 3 does not support gapless transition between media, thus the next item is only
+	 * opened and parsed in advance to reduce the gap.
+	 */
+	@Override
+	public boolean setNextSource(@Nullable PlayableItem next) {
+		if (nextSource != null) {
+			nextSource.close();
+			nextSource = null;
+		}
+
+		if (next == null) return false;
+
+		try {
+			PendingSource src = createSource(next);
+			IMedia media = src.getMedia();
+
+			if (!media.isParsed()) {
+				src.parsing = true;
+				media.parseAsync();
+			}
+
+			nextSource = src;
+		} catch (Throwable ex) {
+			Log.d(ex, "Failed to preload next source: ", next);
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean continueWith(PlayableItem next) {
+		Source src = source;
+		if (!(src instanceof PreparedSource)) return false;
+		if (!src.getItem().getLocation().equals(next.getLocation())) return false;
+
+		PreparedSource prepared = (PreparedSource) src;
+		ParcelFileDescriptor fd = prepared.fd;
+		prepared.fd = null; // Transferred to the new source
+		source = next.isVideo()
+				? new VideoSource(next, fd, prepared.getDuration(), prepared.isSeekable())
+				: new PreparedSource(next, fd, prepared.getDuration(), prepared.isSeekable());
+		return true;
+	}
+
+	private PendingSource createSource(PlayableItem source) throws IOException {
 		Media media = null;
 		ParcelFileDescriptor fd = null;
 
@@ -107,31 +196,30 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 				}
 			}
 
-			PendingSource pending = new PendingSource(source, media, fd);
-			this.source = pending;
-			media.addOption(":input-fast-seek");
-
-			if (media.isParsed()) {
-				prepared(pending);
+			BufferingProfile bp = BufferingProfile.get(source);
+			if (bp.type == BufferingProfile.TYPE_LOCAL) {
+				media.addOption(":file-caching=" + bp.playbackBufferMs);
 			} else {
-				Media m = media;
-				m.setEventListener(e -> {
-					if (m.isParsed()) {
-						m.setEventListener(null);
-						prepared(pending);
-					}
-				});
-				m.parseAsync();
+				media.addOption(":network-caching=" + bp.playbackBufferMs);
+				if (bp.type == BufferingProfile.TYPE_STREAM)
+					media.addOption(":live-caching=" + bp.playbackBufferMs);
 			}
+
+			media.addOption(":input-fast-seek");
+			return new PendingSource(source, media, fd);
 		} catch (Throwable ex) {
 			IoUtils.close(fd);
 			if (media != null) media.release();
-			if (this.source == Source.NULL) this.source = new Source(source, null);
-			else this.source.close();
-			listener.onEngineError(this, ex);
+			throw ex;
 		}
 	}
 
+	private void parsed(IMedia media, PendingSource source, AtomicBoolean done) {
+		if (!done.compareAndSet(false, true)) return;
+		media.setEventListener(null);
+		prepared(source);
+	}
+
 	private void prepared(PendingSource source) {
 		if (source != this.source) {
 			source.close();
@@ -141,7 +229,8 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 		IMedia media = source.getMedia();
 		long off = source.getItem().getOffset();
 		this.source = source.prepare();
-		playing = false;
+		playing = buffering = seeking = false;
+		rebuffers = 0;
 		pendingPosition = -1;
 		player.setMedia(media);
 		source.release();
@@ -156,7 +245,14 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 
 	@Override
 	public void stop() {
+		if (nextSource != null) {
+			nextSource.close();
+			nextSource = null;
+		}
+
+		logRebuffers();
 		playing = false;
+		rebuffers = 0;
 		pendingPosition = -1;
 		player.stop();
 		player.detachViews();
@@ -208,8 +304,12 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 		Source src = source;
 
 		if (src != Source.NULL) {
-			if (playing) player.setTime(src.getItem().getOffset() + position);
-			else pendingPosition = position;
+			if (playing) {
+				seeking = true;
+				player.setTime(src.getItem().getOffset() + position);
+			} else {
+				pendingPosition = position;
+			}
 		}
 	}
 
@@ -371,8 +471,16 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 		switch (event.type) {
 			case MediaPlayer.Event.Buffering:
 				float percent = event.getBuffering();
-				if (percent == 100F) listener.onEngineBufferingCompleted(this);
-				else listener.onEngineBuffering(this, (int) percent);
+
+				if (percent == 100F) {
+					buffering = seeking = false;
+					listener.onEngineBufferingCompleted(this);
+				} else {
+					if (playing && !buffering && !seeking) rebuffers++;
+					buffering = true;
+					listener.onEngineBuffering(this, (int) percent);
+				}
+
 				break;
 			case MediaPlayer.Event.Playing:
 				startPlaying();
@@ -549,6 +657,15 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 		}
 	}
 
+	@Override
+	public int getRebufferCount() {
+		return rebuffers;
+	}
+
+	private void logRebuffers() {
+		if (rebuffers > 0) Log.i("Playback rebuffered ", rebuffers, " times: ", source.getItem());
+	}
+
 	private void startPlaying() {
 		playing = true;
 
@@ -699,6 +816,7 @@ public class VlcEngine implements MediaEngine, MediaPlayer.EventListener,
 
 	private static class PendingSource extends Source {
 		IMedia media;
+		boolean parsing;
 
 		public PendingSource(PlayableItem item, IMedia media, ParcelFileDescriptor fd) {
 			super(item, fd);
@@ -7,7 +7,6 @@ import static me.aap.utils.async.Completed.completed;
 import android.content.Context;
 import android.content.res.Resources;
 import android.media.AudioManager;
-import android.media.MediaMetadata;
 import android.support.v4.media.MediaMetadataCompat;
 
 import androidx.annotation.NonNull;
@@ -21,6 +20,8 @@ import me.aap.fermata.BuildConfig;
 import me.aap.fermata.addon.web.R;
 import me.aap.fermata.addon.web.yt.YoutubeAddon.VideoScale;
 import me.aap.fermata.media.engine.MediaEngine;
+import me.aap.fermata.media.engine.MediaMeta;
+import me.aap.fermata.media.engine.MetadataBuilder;
 import me.aap.fermata.media.lib.ExtPlayable;
 import me.aap.fermata.media.lib.ExtRoot;
 import me.aap.fermata.media.lib.MediaLib;
@@ -289,7 +290,7 @@ class YoutubeMediaEngine implements MediaEngine, OverlayMenu.SelectionHandler {
 		}
 
 		@Override
-		protected String buildSubtitle(MediaMetadataCompat md, SharedTextBuilder tb) {
+		protected String buildSubtitle(MediaMeta md, SharedTextBuilder tb) {
 			return null;
 		}
 	}
@@ -302,12 +303,12 @@ class YoutubeMediaEngine implements MediaEngine, OverlayMenu.SelectionHandler {
 
 		@NonNull
 		@Override
-		protected FutureSupplier<MediaMetadataCompat> loadMeta() {
+		protected FutureSupplier<MediaMeta> loadMeta() {
 			FutureSupplier<String> getTitle = web.getVideoTitle();
 			return web.getDuration().then(dur -> getTitle.map(title -> {
-				MediaMetadataCompat.Builder b = new MediaMetadataCompat.Builder();
+				MetadataBuilder b = new MetadataBuilder();
 				b.putString(MediaMetadataCompat.METADATA_KEY_TITLE, title);
-				b.putLong(MediaMetadata.METADATA_KEY_DURATION, dur);
+				b.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, dur);
 				return b.build();
 			}));
 		}